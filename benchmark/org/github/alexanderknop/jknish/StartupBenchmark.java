@@ -0,0 +1,88 @@
+package org.github.alexanderknop.jknish;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures the time from launching a new JVM running jknish to the first statement
+ * of a script, the first statement prints the wall clock of the child JVM.
+ * <p>
+ * Usage: {@code StartupBenchmark [runs]}; the classpath of the benchmark
+ * must contain the compiled interpreter.
+ */
+public final class StartupBenchmark {
+    private static final int DEFAULT_RUNS = 20;
+
+    private static final String SCRIPT =
+            "System.print(System.clock);\n" +
+            "class Point {\n" +
+            "    construct new(x, y) {\n" +
+            "        _x = x;\n" +
+            "        _y = y;\n" +
+            "    }\n" +
+            "    x {\n" +
+            "        return _x;\n" +
+            "    }\n" +
+            "}\n" +
+            "System.print(Point.new(1, 2).x + 1);\n";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_RUNS;
+
+        Path script = Files.createTempFile("startup", ".knish");
+        try {
+            Files.writeString(script, SCRIPT);
+
+            // the first launch warms up the file system caches
+            timeToFirstStatement(script);
+
+            List<Long> times = new ArrayList<>();
+            for (int i = 0; i < runs; i++) {
+                times.add(timeToFirstStatement(script));
+            }
+            Collections.sort(times);
+
+            System.out.println("time to first statement, ms: " +
+                    "min " + times.get(0) +
+                    ", median " + times.get(times.size() / 2) +
+                    ", max " + times.get(times.size() - 1));
+        } finally {
+            Files.deleteIfExists(script);
+        }
+    }
+
+    private static long timeToFirstStatement(Path script) throws IOException, InterruptedException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder builder = new ProcessBuilder(
+                java, "-cp", System.getProperty("java.class.path"),
+                Knish.class.getName(), script.toString());
+        builder.redirectErrorStream(true);
+
+        long start = System.currentTimeMillis();
+        Process process = builder.start();
+        String firstLine;
+        try (BufferedReader output = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), Charset.defaultCharset()))) {
+            firstLine = output.readLine();
+            while (output.readLine() != null) {
+                // the rest of the output is not measured
+            }
+        }
+        if (process.waitFor() != 0 || firstLine == null) {
+            throw new IllegalStateException("The script failed: " + firstLine);
+        }
+        return Long.parseLong(firstLine) - start;
+    }
+
+    private StartupBenchmark() {
+
+    }
+}
@@ -0,0 +1,118 @@
+package org.github.alexanderknop.jknish;
+
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Compiles many files at once on a fork/join pool. The modules the files import are checked in
+ * parallel, every module after the modules it imports, and then the scripts are checked in parallel.
+ * A file that contains only imports and classes is checked as a module.
+ * <p>
+ * Every file has its own errors, so the results do not depend on the order the files are checked in.
+ */
+public final class BatchCompiler {
+    // the number of files checked by one task
+    private static final int FILES_PER_TASK = 4;
+
+    private final ForkJoinPool pool;
+    private final ModuleCache modules;
+
+    public BatchCompiler(ForkJoinPool pool, ModuleCache modules) {
+        this.pool = pool;
+        this.modules = modules;
+    }
+
+    /**
+     * @return the results in the order of the files.
+     */
+    public List<Result> compile(List<Path> files) {
+        List<Path> absoluteFiles = new ArrayList<>();
+        files.forEach(file -> absoluteFiles.add(file.toAbsolutePath().normalize()));
+
+        List<ModuleCache.LoadedFile> loaded = modules.load(absoluteFiles, pool);
+        Result[] results = new Result[files.size()];
+        pool.invoke(new Compilation(files, loaded, results, 0, files.size()));
+        return Arrays.asList(results);
+    }
+
+    public static final class Result {
+        private final Path file;
+        private final CompiledScript script;
+        private final String errors;
+
+        private Result(Path file, CompiledScript script, String errors) {
+            this.file = file;
+            this.script = script;
+            this.errors = errors;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * @return the compiled script or null if the file is a module or contains errors.
+         */
+        public CompiledScript getScript() {
+            return script;
+        }
+
+        /**
+         * @return the errors of the file in the format of {@link KnishErrorReporter}.
+         */
+        public String getErrors() {
+            return errors;
+        }
+
+        public boolean hadError() {
+            return !errors.isEmpty();
+        }
+    }
+
+    // checks the files from start inclusive to end exclusive; the task is never serialized
+    @SuppressWarnings("serial")
+    private final class Compilation extends RecursiveAction {
+        private final List<Path> files;
+        private final List<ModuleCache.LoadedFile> loaded;
+        private final Result[] results;
+        private final int start;
+        private final int end;
+
+        private Compilation(List<Path> files, List<ModuleCache.LoadedFile> loaded,
+                            Result[] results, int start, int end) {
+            this.files = files;
+            this.loaded = loaded;
+            this.results = results;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > FILES_PER_TASK) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new Compilation(files, loaded, results, start, middle),
+                        new Compilation(files, loaded, results, middle, end));
+                return;
+            }
+
+            for (int i = start; i < end; i++) {
+                ModuleCache.LoadedFile file = loaded.get(i);
+                StringWriter errors = new StringWriter();
+                KnishErrorReporter reporter = new KnishErrorReporter(errors);
+                reporter.replay(file.errors);
+
+                CompiledScript script = null;
+                if (file.script != null) {
+                    script = Knish.check(file.script, file.imports, reporter, modules.summaries());
+                }
+                results[i] = new Result(files.get(i), script, errors.toString());
+            }
+        }
+    }
+}
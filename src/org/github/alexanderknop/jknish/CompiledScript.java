@@ -0,0 +1,98 @@
+package org.github.alexanderknop.jknish;
+
+import org.github.alexanderknop.jknish.interpreter.CallSiteProfiles;
+import org.github.alexanderknop.jknish.interpreter.Checkpoint;
+import org.github.alexanderknop.jknish.interpreter.HeapSnapshot;
+import org.github.alexanderknop.jknish.interpreter.Interpreter;
+import org.github.alexanderknop.jknish.interpreter.RuntimeContext;
+import org.github.alexanderknop.jknish.knc.KncReader;
+import org.github.alexanderknop.jknish.knc.KncWriter;
+import org.github.alexanderknop.jknish.objects.KnishStandardModule;
+import org.github.alexanderknop.jknish.resolver.ResolvedScript;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A script that passed all the checks; it can be executed any number of times,
+ * every execution starts with fresh runtime state.
+ */
+public final class CompiledScript {
+    private final ResolvedScript script;
+
+    CompiledScript(ResolvedScript script) {
+        this.script = script;
+    }
+
+    /**
+     * Loads a script saved in the .knc format; the script is not checked again
+     * and its methods are decoded only when they are used for the first time.
+     */
+    public static CompiledScript load(Path path) throws IOException {
+        return new CompiledScript(KncReader.read(path));
+    }
+
+    /**
+     * Loads a script saved in the .knc format, the bodies of its methods are checked for damage
+     * before the script is returned.
+     */
+    static CompiledScript loadVerified(Path path) throws IOException {
+        return new CompiledScript(KncReader.read(path, true));
+    }
+
+    public void save(OutputStream output) throws IOException {
+        KncWriter.write(script, output);
+    }
+
+    public void save(Path path) throws IOException {
+        try (OutputStream output = Files.newOutputStream(path)) {
+            save(output);
+        }
+    }
+
+    ResolvedScript getResolvedScript() {
+        return script;
+    }
+
+    public void execute(Writer output, KnishErrorReporter reporter) {
+        execute(output, reporter, null);
+    }
+
+    /**
+     * Executes the script; if profiles are given, the call sites start in the state
+     * recorded by the profiles and the profiles are updated when the script finishes.
+     */
+    public void execute(Writer output, KnishErrorReporter reporter, CallSiteProfiles profiles) {
+        Interpreter.interpret(script, reporter, profiles, new KnishStandardModule(output));
+    }
+
+    /**
+     * Executes the script; if the snapshot is not empty, the script continues from the state
+     * saved in the snapshot, otherwise the state is saved in the snapshot when the script
+     * reaches {@code System.checkpoint}.
+     */
+    public void execute(Writer output, KnishErrorReporter reporter,
+                        CallSiteProfiles profiles, HeapSnapshot snapshot) {
+        Checkpoint checkpoint = new Checkpoint();
+        Interpreter.interpret(script, reporter, profiles,
+                new RuntimeContext(new KnishStandardModule(output, checkpoint)),
+                checkpoint, snapshot);
+    }
+
+    /**
+     * Executes the script in a context acquired from an {@link ExecutionContextPool},
+     * the output goes to the writer the context was acquired with.
+     */
+    public void execute(ExecutionContext context, KnishErrorReporter reporter, CallSiteProfiles profiles) {
+        execute(context, reporter, profiles, null);
+    }
+
+    public void execute(ExecutionContext context, KnishErrorReporter reporter,
+                        CallSiteProfiles profiles, HeapSnapshot snapshot) {
+        Interpreter.interpret(script, reporter, profiles, context.getRuntime(),
+                context.getCheckpoint(), snapshot);
+    }
+}
@@ -0,0 +1,211 @@
+package org.github.alexanderknop.jknish;
+
+import org.github.alexanderknop.jknish.typechecker.TypeSummaries;
+
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of compiled scripts keyed by the hash of the source and the set of
+ * modules the script is compiled against. Lookups do not take any global lock and
+ * concurrent compilations of the same source are done only once; when the cache is
+ * full, the least recently used script is evicted.
+ * <p>
+ * Scripts with errors are cached as well, their errors are reported again on every lookup.
+ * The scripts that are not in the cache share the summaries of their classes, so a changed
+ * script is checked again only in the classes that changed.
+ */
+public final class CompiledScriptCache {
+    // scripts are compiled only against the standard module
+    private static final String MODULES = "standard";
+    // the summaries kept for every script in the cache
+    private static final int CLASSES_PER_SCRIPT = 16;
+
+    private final int maximumSize;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Object evictionLock = new Object();
+    private final AtomicLong clock = new AtomicLong();
+    private final TypeSummaries summaries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CompiledScriptCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("The maximum size must be positive.");
+        }
+        this.maximumSize = maximumSize;
+        this.summaries = new TypeSummaries((int) Math.min(Integer.MAX_VALUE, (long) CLASSES_PER_SCRIPT * maximumSize));
+    }
+
+    /**
+     * Works as {@link Knish#compile(String, KnishErrorReporter)}, but compiles
+     * every source only once while it stays in the cache.
+     */
+    public CompiledScript compile(String source, KnishErrorReporter reporter) {
+        Key key = new Key(SourceHash.of(source), MODULES);
+
+        Entry created = null;
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            created = new Entry();
+            entry = entries.putIfAbsent(key, created);
+            if (entry == null) {
+                entry = created;
+            } else {
+                created = null;
+            }
+        }
+        entry.lastAccess = clock.incrementAndGet();
+
+        if (created != null) {
+            misses.increment();
+            compile(key, created, source);
+        } else {
+            hits.increment();
+        }
+
+        Compilation compilation;
+        try {
+            compilation = entry.compilation.join();
+        } catch (CompletionException e) {
+            // the compiler throws only unchecked exceptions and errors
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        reporter.replay(compilation.errors);
+        return compilation.script;
+    }
+
+    private void compile(Key key, Entry entry, String source) {
+        try {
+            StringWriter errors = new StringWriter();
+            CompiledScript script = Knish.compile(source, new KnishErrorReporter(errors), summaries);
+            entry.compilation.complete(new Compilation(script, errors.toString()));
+        } catch (Throwable e) {
+            // nothing is cached if the compiler failed, the waiting compilations fail as well
+            entries.remove(key, entry);
+            entry.compilation.completeExceptionally(e);
+            return;
+        }
+        evict();
+    }
+
+    private void evict() {
+        synchronized (evictionLock) {
+            while (entries.size() > maximumSize) {
+                Map.Entry<Key, Entry> leastRecentlyUsed = null;
+                for (Map.Entry<Key, Entry> candidate : entries.entrySet()) {
+                    if (leastRecentlyUsed == null ||
+                            candidate.getValue().lastAccess < leastRecentlyUsed.getValue().lastAccess) {
+                        leastRecentlyUsed = candidate;
+                    }
+                }
+                if (leastRecentlyUsed != null &&
+                        entries.remove(leastRecentlyUsed.getKey(), leastRecentlyUsed.getValue())) {
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    public Statistics statistics() {
+        return new Statistics(hits.sum(), misses.sum(), evictions.sum(), entries.size());
+    }
+
+    public void clear() {
+        entries.clear();
+        summaries.clear();
+    }
+
+    public static final class Statistics {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int size;
+
+        private Statistics(long hits, long misses, long evictions, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{" +
+                    "hits=" + hits +
+                    ", misses=" + misses +
+                    ", evictions=" + evictions +
+                    ", size=" + size +
+                    '}';
+        }
+    }
+
+    private static final class Key {
+        private final String sourceHash;
+        private final String modules;
+
+        private Key(String sourceHash, String modules) {
+            this.sourceHash = sourceHash;
+            this.modules = modules;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return sourceHash.equals(key.sourceHash) &&
+                    modules.equals(key.modules);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sourceHash, modules);
+        }
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<Compilation> compilation = new CompletableFuture<>();
+        private volatile long lastAccess = 0;
+    }
+
+    private static final class Compilation {
+        private final CompiledScript script;
+        private final String errors;
+
+        private Compilation(CompiledScript script, String errors) {
+            this.script = script;
+            this.errors = errors;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.github.alexanderknop.jknish;
+
+import org.github.alexanderknop.jknish.knc.KncWriter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A directory with the compiled scripts in the .knc format, the file of a script
+ * is named after the hash of its source and the version of the format. If the source
+ * of a script has not changed, the script is loaded from the directory and
+ * the front end is skipped.
+ * <p>
+ * The cache is only an optimization: a file that cannot be read is recompiled,
+ * and a file that cannot be written is silently skipped.
+ */
+public final class DiskCompilationCache {
+    private final Path directory;
+
+    public DiskCompilationCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Works as {@link Knish#compile(String, KnishErrorReporter)}, but loads the compiled
+     * script from the cache if possible and stores it in the cache otherwise.
+     */
+    public CompiledScript compile(String source, KnishErrorReporter reporter) {
+        Path file = directory.resolve(SourceHash.of(source) + "-" + KncWriter.version() + ".knc");
+
+        CompiledScript cached = load(file);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompiledScript script = Knish.compile(source, reporter);
+        if (script != null) {
+            save(file, script);
+        }
+        return script;
+    }
+
+    private static CompiledScript load(Path file) {
+        try {
+            // a damaged method must be compiled again rather than fail when it is called
+            return CompiledScript.loadVerified(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            // the file is damaged or written by an incompatible version of jKnish
+            return null;
+        }
+    }
+
+    private void save(Path file, CompiledScript script) {
+        try {
+            Files.createDirectories(directory);
+            // concurrent runs must never see a partially written file
+            Path temporary = Files.createTempFile(directory, "compilation", ".tmp");
+            script.save(temporary);
+            Files.move(temporary, file,
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the script will be compiled again next time
+        }
+    }
+}
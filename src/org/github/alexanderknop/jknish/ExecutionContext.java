@@ -0,0 +1,68 @@
+package org.github.alexanderknop.jknish;
+
+import org.github.alexanderknop.jknish.interpreter.Checkpoint;
+import org.github.alexanderknop.jknish.interpreter.RuntimeContext;
+import org.github.alexanderknop.jknish.objects.KnishStandardModule;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A runtime with the standard module already initialized; the output of the
+ * scripts is redirected to the writer given when the context is acquired.
+ * <p>
+ * A context is used by one execution at a time, closing the context returns it to its pool.
+ */
+public final class ExecutionContext implements AutoCloseable {
+    private final ExecutionContextPool pool;
+    private final RedirectedWriter output = new RedirectedWriter();
+    private final Checkpoint checkpoint = new Checkpoint();
+    private final RuntimeContext runtime =
+            new RuntimeContext(new KnishStandardModule(output, checkpoint));
+
+    ExecutionContext(ExecutionContextPool pool) {
+        this.pool = pool;
+    }
+
+    RuntimeContext getRuntime() {
+        return runtime;
+    }
+
+    Checkpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    void redirect(Writer target) {
+        output.target = target;
+    }
+
+    @Override
+    public void close() {
+        redirect(Writer.nullWriter());
+        pool.release(this);
+    }
+
+    private static final class RedirectedWriter extends Writer {
+        private Writer target = Writer.nullWriter();
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            target.write(buffer, offset, length);
+        }
+
+        @Override
+        public void write(String string) throws IOException {
+            target.write(string);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+        }
+
+        @Override
+        public void close() {
+            // the target belongs to the caller
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.github.alexanderknop.jknish;
+
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A pool of execution contexts initialized in advance, so that executing a compiled
+ * script only runs the interpreter.
+ * <p>
+ * A context is created on demand when all the contexts are in use, and contexts returned
+ * to a full pool are dropped. The pool can be used from any number of threads.
+ */
+public final class ExecutionContextPool {
+    private final BlockingQueue<ExecutionContext> idle;
+
+    public ExecutionContextPool(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("The size of the pool must be positive.");
+        }
+
+        idle = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            idle.add(new ExecutionContext(this));
+        }
+    }
+
+    /**
+     * @return a context writing the output of the scripts into the given writer;
+     * the context must be closed when the execution finishes.
+     */
+    public ExecutionContext acquire(Writer output) {
+        ExecutionContext context = idle.poll();
+        if (context == null) {
+            context = new ExecutionContext(this);
+        }
+        context.redirect(output);
+        return context;
+    }
+
+    /**
+     * @return the number of contexts ready to be acquired.
+     */
+    public int available() {
+        return idle.size();
+    }
+
+    void release(ExecutionContext context) {
+        idle.offer(context);
+    }
+}
@@ -1,80 +1,390 @@
 package org.github.alexanderknop.jknish;
 
+import org.github.alexanderknop.jknish.daemon.KnishDaemon;
+import org.github.alexanderknop.jknish.daemon.KnishDaemonClient;
 import org.github.alexanderknop.jknish.initializationchecker.InitializationChecker;
-import org.github.alexanderknop.jknish.interpreter.Interpreter;
+import org.github.alexanderknop.jknish.interpreter.CallSiteProfiles;
+import org.github.alexanderknop.jknish.interpreter.HeapSnapshot;
 import org.github.alexanderknop.jknish.objects.KnishCore;
 import org.github.alexanderknop.jknish.objects.KnishStandardModule;
 import org.github.alexanderknop.jknish.parser.Parser;
 import org.github.alexanderknop.jknish.parser.Statement;
+import org.github.alexanderknop.jknish.purity.PurityChecker;
 import org.github.alexanderknop.jknish.resolver.ResolvedScript;
+import org.github.alexanderknop.jknish.resolver.ResolvedStatement;
 import org.github.alexanderknop.jknish.resolver.Resolver;
 import org.github.alexanderknop.jknish.returnchecker.ReturnChecker;
 import org.github.alexanderknop.jknish.scanner.Scanner;
 import org.github.alexanderknop.jknish.scanner.Token;
 import org.github.alexanderknop.jknish.typechecker.TypeChecker;
+import org.github.alexanderknop.jknish.typechecker.TypeSummaries;
 
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class Knish {
+    // the checks of the shorter scripts run in one thread, handing them off would cost more than it saves
+    private static final int PARALLEL_CHECKS_LINES = 500;
+
+    // the checks need only the declarations of the standard module, the output is bound on execution;
+    // the module is shared by all the checks, so the type checker translates its types once
+    private static final class Declarations {
+        private static final KnishStandardModule MODULE = new KnishStandardModule(Writer.nullWriter());
+    }
+
     public static void run(
             String source,
             Writer output,
             KnishErrorReporter reporter) {
+        run(source, output, reporter, null);
+    }
+
+    /**
+     * Runs the script; if profiles are given, the call sites start in the state
+     * recorded by the profiles and the profiles are updated when the script finishes.
+     */
+    public static void run(
+            String source,
+            Writer output,
+            KnishErrorReporter reporter,
+            CallSiteProfiles profiles) {
+        CompiledScript compiledScript = compile(source, reporter);
+        if (compiledScript != null) {
+            compiledScript.execute(output, reporter, profiles);
+        }
+    }
+
+    /**
+     * Scans, parses, resolves and checks the script.
+     *
+     * @return the script ready to be executed or null if the script contains errors.
+     */
+    public static CompiledScript compile(
+            String source,
+            KnishErrorReporter reporter) {
+        return compile(source, reporter, null);
+    }
+
+    /**
+     * Works as {@link #compile(String, KnishErrorReporter)}, but the type checker reuses the summaries
+     * of the classes that did not change since they were summarized.
+     *
+     * @param summaries the summaries of the classes or null if the classes are always checked.
+     */
+    public static CompiledScript compile(
+            String source,
+            KnishErrorReporter reporter,
+            TypeSummaries summaries) {
+        Statement.Block script = parse(source, reporter);
+        if (script == null) {
+            return null;
+        }
+
+        for (Statement statement : script.statements) {
+            if (statement instanceof Statement.Import) {
+                reporter.error(statement.line, "Cannot import \"" + ((Statement.Import) statement).path +
+                        "\", only the scripts compiled from files can import modules.");
+            }
+        }
 
+        return check(script, Collections.emptyMap(), reporter, summaries);
+    }
+
+    /**
+     * Works as {@link #compile(String, KnishErrorReporter)}, but the script can import modules.
+     *
+     * @param directory the directory the paths of the imported modules are resolved against.
+     * @param modules   the cache the imported modules are loaded through.
+     */
+    public static CompiledScript compile(
+            String source,
+            Path directory,
+            ModuleCache modules,
+            KnishErrorReporter reporter) {
+        Statement.Block script = parse(source, reporter);
+        if (script == null) {
+            return null;
+        }
+
+        Map<String, List<Statement.Class>> imports = modules.load(script, directory, reporter);
+        return check(script, imports, reporter, modules.summaries());
+    }
+
+    /**
+     * @return the parsed source or null if the source contains errors.
+     */
+    static Statement.Block parse(String source, KnishErrorReporter reporter) {
         KnishCore core = KnishCore.core();
 
         List<Token> tokens = Scanner.tokens(source, reporter);
         if (reporter.hadError()) {
-            return;
+            return null;
         }
 
 
         Statement.Block script = Parser.parse(tokens, reporter);
         if (reporter.hadError()) {
-            return;
+            return null;
         }
+        return script;
+    }
 
-        KnishStandardModule standardModule = new KnishStandardModule(output);
+    static CompiledScript check(Statement.Block script,
+                                Map<String, List<Statement.Class>> imports,
+                                KnishErrorReporter reporter,
+                                TypeSummaries summaries) {
+        ResolvedScript resolvedScript = Resolver.resolve(script, reporter, imports, Declarations.MODULE);
 
-        ResolvedScript resolvedScript = Resolver.resolve(script, reporter, standardModule);
+        check(resolvedScript, reporter, summaries);
+        if (reporter.hadError()) {
+            return null;
+        }
 
-        InitializationChecker.check(resolvedScript, reporter);
-        ReturnChecker.check(resolvedScript, reporter);
+        return new CompiledScript(resolvedScript);
+    }
 
-        TypeChecker.check(resolvedScript, reporter, standardModule);
-        if (reporter.hadError()) {
-            return;
+    /**
+     * Resolves and checks a module; its classes are exported, so they can be left unused.
+     */
+    static void checkModule(Statement.Block module,
+                            Map<String, List<Statement.Class>> imports,
+                            KnishErrorReporter reporter,
+                            TypeSummaries summaries) {
+        check(Resolver.resolveModule(module, reporter, imports, Declarations.MODULE), reporter, summaries);
+    }
+
+    /**
+     * Runs the checks of the script; the checks of a large script run in parallel. Every check keeps
+     * its errors apart, and then the errors are reported in the order of their lines, so they do not
+     * depend on whether the checks ran in parallel.
+     */
+    private static void check(ResolvedScript resolvedScript, KnishErrorReporter reporter,
+                              TypeSummaries summaries) {
+        List<Consumer<KnishErrorReporter>> checks = List.of(
+                checkReporter -> InitializationChecker.check(resolvedScript, checkReporter),
+                checkReporter -> ReturnChecker.check(resolvedScript, checkReporter),
+                checkReporter -> PurityChecker.check(resolvedScript, checkReporter, Declarations.MODULE),
+                checkReporter -> TypeChecker.check(resolvedScript, checkReporter, summaries, Declarations.MODULE)
+        );
+
+        List<KnishErrorReporter> reporters = new ArrayList<>();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (Consumer<KnishErrorReporter> check : checks) {
+            KnishErrorReporter checkReporter = KnishErrorReporter.buffered();
+            reporters.add(checkReporter);
+            tasks.add(ForkJoinTask.adapt(() -> check.accept(checkReporter)));
         }
 
-        Interpreter.interpret(resolvedScript, reporter, standardModule);
+        if (lines(resolvedScript) < PARALLEL_CHECKS_LINES) {
+            tasks.forEach(ForkJoinTask::invoke);
+        } else if (ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            ForkJoinPool.commonPool().invoke(ForkJoinTask.adapt(() -> {
+                ForkJoinTask.invokeAll(tasks);
+            }));
+        }
+        reporter.merge(reporters);
+    }
+
+    // the line of the last top-level statement or method of the script
+    private static int lines(ResolvedScript resolvedScript) {
+        int lines = 0;
+        for (ResolvedStatement statement : resolvedScript.code.resolvedStatements) {
+            lines = Math.max(lines, statement.line);
+        }
+        for (ResolvedStatement.Class klass : resolvedScript.code.classes.values()) {
+            lines = Stream.of(klass.staticMethods, klass.constructors, klass.methods)
+                    .flatMap(methods -> methods.values().stream())
+                    .mapToInt(method -> method.line)
+                    .reduce(lines, Math::max);
+        }
+        return lines;
     }
 
-    private static void runFile(String path) throws IOException {
-        KnishErrorReporter reporter = new KnishErrorReporter(new OutputStreamWriter(System.err));
+    private static int runFile(Path path, String profilePath, String cachePath, String snapshotPath,
+                               CompiledScriptCache memoryCache, ExecutionContextPool contexts,
+                               Writer output, Writer errors) throws IOException {
+        KnishErrorReporter reporter = new KnishErrorReporter(errors);
 
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()),
-                new OutputStreamWriter(System.out),
-                reporter);
+        CompiledScript script;
+        String source;
+        if (path.toString().endsWith(".knc")) {
+            script = CompiledScript.load(path);
+            // the profiles of a compiled script are bound to the contents of the file,
+            // the file is read as a whole only if they are used
+            source = profilePath == null && snapshotPath == null ? null :
+                    new String(Files.readAllBytes(path), StandardCharsets.ISO_8859_1);
+        } else {
+            source = new String(Files.readAllBytes(path), Charset.defaultCharset());
+            if (cachePath != null) {
+                script = new DiskCompilationCache(Paths.get(cachePath)).compile(source, reporter);
+            } else if (memoryCache != null) {
+                script = memoryCache.compile(source, reporter);
+            } else {
+                script = compile(source, path.toAbsolutePath().getParent(), new ModuleCache(), reporter);
+            }
+        }
 
-        if (reporter.hadError()) {
-            System.exit(65);
+        CallSiteProfiles profiles = profilePath == null ? null :
+                CallSiteProfiles.load(Paths.get(profilePath), source);
+        HeapSnapshot snapshot = snapshotPath == null ? null :
+                HeapSnapshot.load(Paths.get(snapshotPath), source);
+        boolean restored = snapshot != null && !snapshot.isEmpty();
+        if (script != null && contexts != null) {
+            try (ExecutionContext context = contexts.acquire(output)) {
+                script.execute(context, reporter, profiles, snapshot);
+            }
+        } else if (script != null) {
+            script.execute(output, reporter, profiles, snapshot);
         }
+
+        if (profiles != null) {
+            profiles.save(Paths.get(profilePath));
+        }
+        if (snapshot != null && !restored && !snapshot.isEmpty()) {
+            snapshot.save(Paths.get(snapshotPath));
+        }
+
+        return reporter.hadError() ? 65 : 0;
     }
 
+    private static int compileFile(Path path, Path outputPath, Writer errors) throws IOException {
+        KnishErrorReporter reporter = new KnishErrorReporter(errors);
+
+        byte[] bytes = Files.readAllBytes(path);
+        CompiledScript script = compile(new String(bytes, Charset.defaultCharset()),
+                path.toAbsolutePath().getParent(), new ModuleCache(), reporter);
+        if (script == null) {
+            return 65;
+        }
+        script.save(outputPath);
+        return 0;
+    }
+
+    // checks the files in parallel and reports the errors of every file after its name
+    private static int checkFiles(String[] files, Path workingDirectory, Writer errors) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        for (String file : files) {
+            paths.add(workingDirectory.resolve(file));
+        }
+
+        List<BatchCompiler.Result> results =
+                new BatchCompiler(ForkJoinPool.commonPool(), new ModuleCache()).compile(paths);
+        int exitCode = 0;
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i).hadError()) {
+                errors.write(files[i] + ":\n" + results.get(i).getErrors());
+                exitCode = 65;
+            }
+        }
+        errors.flush();
+        return exitCode;
+    }
+
+    /**
+     * Executes the command line of jknish.
+     *
+     * @param workingDirectory the directory the relative paths are resolved against.
+     * @param memoryCache      the cache of the compiled scripts or null if scripts are always compiled.
+     * @return the exit code of jknish.
+     */
+    public static int commandLine(String[] args, Path workingDirectory,
+                                  CompiledScriptCache memoryCache, ExecutionContextPool contexts,
+                                  Writer output, Writer errors) throws IOException {
+        if (args.length >= 2 && args[0].equals("--check")) {
+            return checkFiles(Arrays.copyOfRange(args, 1, args.length), workingDirectory, errors);
+        }
+
+        String profilePath = null;
+        String cachePath = null;
+        String snapshotPath = null;
+        String outputPath = null;
+        int i = 0;
+        while (i < args.length - 1) {
+            if (args[i].equals("--profile")) {
+                profilePath = args[i + 1];
+            } else if (args[i].equals("--cache")) {
+                cachePath = args[i + 1];
+            } else if (args[i].equals("--snapshot")) {
+                snapshotPath = args[i + 1];
+            } else if (args[i].equals("--output")) {
+                outputPath = args[i + 1];
+            } else {
+                return usage(output);
+            }
+            i += 2;
+        }
+
+        // an option without its value, e.g. a lone --cache, is not a script
+        if (i != args.length - 1 || args[i].startsWith("--")) {
+            return usage(output);
+        }
+
+        Path path = workingDirectory.resolve(args[i]);
+        if (outputPath != null) {
+            return compileFile(path, workingDirectory.resolve(outputPath), errors);
+        } else {
+            return runFile(path,
+                    profilePath == null ? null : workingDirectory.resolve(profilePath).toString(),
+                    cachePath == null ? null : workingDirectory.resolve(cachePath).toString(),
+                    snapshotPath == null ? null : workingDirectory.resolve(snapshotPath).toString(),
+                    memoryCache, contexts,
+                    output, errors);
+        }
+    }
+
+    private static int usage(Writer output) throws IOException {
+        output.write("Usage: jknish [--profile profile] [--cache directory] [--snapshot snapshot]\n" +
+                "              [--output file.knc] [script]\n" +
+                "       jknish --check script...\n" +
+                "       jknish --daemon directory\n" +
+                "       jknish --client directory [arguments]\n");
+        output.flush();
+        return 64;
+    }
 
     public static void main(String[] args) throws IOException {
-        if (args.length != 1) {
-            System.out.println("Usage: jknish [script]");
-            System.exit(64);
+        int exitCode;
+        if (args.length == 2 && args[0].equals("--daemon")) {
+            KnishDaemon daemon = KnishDaemon.start(Paths.get(args[1]));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    daemon.close();
+                } catch (IOException e) {
+                    // nothing can be done while the JVM shuts down
+                }
+            }));
+            return;
+        } else if (args.length >= 2 && args[0].equals("--client")) {
+            exitCode = KnishDaemonClient.run(Paths.get(args[1]),
+                    Arrays.copyOfRange(args, 2, args.length),
+                    Paths.get(""), System.out, System.err);
         } else {
-            runFile(args[0]);
+            Writer output = new OutputStreamWriter(System.out);
+            Writer errors = new OutputStreamWriter(System.err);
+            exitCode = commandLine(args, Paths.get("").toAbsolutePath(), null, null, output, errors);
+            output.flush();
+            errors.flush();
+        }
+
+        if (exitCode != 0) {
+            System.exit(exitCode);
         }
     }
 }
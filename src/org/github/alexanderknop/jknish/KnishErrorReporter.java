@@ -5,13 +5,43 @@ import org.github.alexanderknop.jknish.scanner.TokenType;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
 public final class KnishErrorReporter {
     private boolean errors;
     private final Writer writer;
+    // the errors kept by a buffered reporter, null if the errors are written right away
+    private final List<Report> reports;
 
     public KnishErrorReporter(Writer writer) {
         this.writer = writer;
+        this.reports = null;
+    }
+
+    private KnishErrorReporter() {
+        this.writer = null;
+        this.reports = new ArrayList<>();
+    }
+
+    /**
+     * @return a reporter that keeps the errors until they are merged into another reporter;
+     * the reporter is used by one pass and is not shared between threads.
+     */
+    public static KnishErrorReporter buffered() {
+        return new KnishErrorReporter();
+    }
+
+    /**
+     * Reports the errors kept by the buffered reporters in the order of their lines; the errors on
+     * the same line are reported in the order of the reporters and then in the order they were reported.
+     */
+    public void merge(List<KnishErrorReporter> buffered) {
+        List<Report> merged = new ArrayList<>();
+        buffered.forEach(reporter -> merged.addAll(reporter.reports));
+        merged.sort(Comparator.comparingInt(report -> report.line));
+        merged.forEach(report -> write(report.line, report.text));
     }
 
     public void error(Token token, String message) {
@@ -26,19 +56,50 @@ public final class KnishErrorReporter {
         report(line, "", message);
     }
 
+    /**
+     * Reports again the errors written by another reporter.
+     *
+     * @param reported the output of the other reporter.
+     */
+    public void replay(String reported) {
+        if (reported.isEmpty()) {
+            return;
+        }
+
+        // a buffered reporter keeps the replayed errors after the errors reported before them
+        write(reports == null || reports.isEmpty() ? 0 : reports.get(reports.size() - 1).line, reported);
+    }
+
     public boolean hadError() {
         return errors;
     }
 
     private void report(int line, String where, String message) {
-        try {
-            writer.write(
-                    "[line " + line + "] Error" + where + ": " + message + "\n");
-            writer.flush();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        write(line, "[line " + line + "] Error" + where + ": " + message + "\n");
+    }
+
+    private void write(int line, String text) {
+        if (reports != null) {
+            reports.add(new Report(line, text));
+        } else {
+            try {
+                writer.write(text);
+                writer.flush();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
         }
 
         errors = true;
     }
+
+    private static final class Report {
+        private final int line;
+        private final String text;
+
+        private Report(int line, String text) {
+            this.line = line;
+            this.text = text;
+        }
+    }
 }
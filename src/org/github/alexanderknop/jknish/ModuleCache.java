@@ -0,0 +1,446 @@
+package org.github.alexanderknop.jknish;
+
+import org.github.alexanderknop.jknish.parser.Statement;
+import org.github.alexanderknop.jknish.typechecker.TypeSummaries;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The modules imported by scripts with {@code import "path";}. A module is a file that contains
+ * only imports and classes; its classes, together with the classes of the modules it imports,
+ * are declared in the scope of every importer.
+ * <p>
+ * A module is parsed and checked once. The type checker shares the summaries of the classes of
+ * the modules between all the importers, so the importers check only their own code. A module is
+ * loaded again when its file or a module it imports changes.
+ * <p>
+ * The modules are loaded on a fork/join pool: first all the imported files are read and parsed
+ * in parallel, then the modules are checked in parallel, every module after the modules it imports.
+ */
+public final class ModuleCache {
+    // the summaries of the classes of the modules and of the importers
+    private static final int SUMMARIES = 1 << 12;
+
+    // the modules are replaced by the checks running in parallel
+    private final Map<Path, Module> modules = new ConcurrentHashMap<>();
+    private final TypeSummaries summaries = new TypeSummaries(SUMMARIES);
+
+    TypeSummaries summaries() {
+        return summaries;
+    }
+
+    /**
+     * Loads the modules imported by the script and reports the errors of the modules
+     * that cannot be imported.
+     *
+     * @param directory the directory the paths of the modules are resolved against.
+     * @return the classes of the modules by the paths in the import statements,
+     * without the modules that cannot be imported.
+     */
+    synchronized Map<String, List<Statement.Class>> load(Statement.Block script, Path directory,
+                                                         KnishErrorReporter reporter) {
+        List<Path> files = importedFiles(script, directory);
+        Map<Path, Module> loaded = new Loading(ForkJoinPool.commonPool()).load(files);
+        return imports(script, modules(files, loaded), reporter);
+    }
+
+    /**
+     * Reads the files and loads the modules they import. The files that contain only imports
+     * and classes, and the files that cannot be parsed, are loaded as modules themselves.
+     *
+     * @param files the absolute paths of the files.
+     * @return the loaded files in the order of the paths.
+     */
+    synchronized List<LoadedFile> load(List<Path> files, ForkJoinPool pool) {
+        Loading loading = new Loading(pool);
+        loading.discover(files);
+
+        List<Path> roots = new ArrayList<>();
+        for (Path file : files) {
+            Source source = loading.sources.get(file);
+            if (source.isScript()) {
+                roots.addAll(source.imports);
+            } else {
+                roots.add(file);
+            }
+        }
+        Map<Path, Module> loaded = loading.check(roots);
+
+        List<LoadedFile> loadedFiles = new ArrayList<>();
+        for (Path file : files) {
+            Source source = loading.sources.get(file);
+            if (source.isScript()) {
+                StringWriter errors = new StringWriter();
+                Map<String, List<Statement.Class>> imports = imports(source.block,
+                        modules(source.imports, loaded), new KnishErrorReporter(errors));
+                loadedFiles.add(new LoadedFile(source.block, imports, errors.toString()));
+            } else {
+                loadedFiles.add(new LoadedFile(null, Collections.emptyMap(), loaded.get(file).errors));
+            }
+        }
+        return loadedFiles;
+    }
+
+    public synchronized void clear() {
+        modules.clear();
+        summaries.clear();
+    }
+
+    private static List<Path> importedFiles(Statement.Block script, Path directory) {
+        List<Path> files = new ArrayList<>();
+        for (Statement statement : script.statements) {
+            if (statement instanceof Statement.Import) {
+                files.add(directory.resolve(((Statement.Import) statement).path).toAbsolutePath().normalize());
+            }
+        }
+        return files;
+    }
+
+    private static List<Module> modules(List<Path> files, Map<Path, Module> loaded) {
+        List<Module> modules = new ArrayList<>();
+        for (Path file : files) {
+            modules.add(loaded.get(file));
+        }
+        return modules;
+    }
+
+    /**
+     * Reports the errors of the modules that cannot be imported.
+     *
+     * @param imported the modules loaded for the import statements, in the same order.
+     * @return the classes of the modules by the paths in the import statements.
+     */
+    private static Map<String, List<Statement.Class>> imports(Statement.Block script, List<Module> imported,
+                                                              KnishErrorReporter reporter) {
+        Map<String, List<Statement.Class>> imports = new HashMap<>();
+        int i = 0;
+        for (Statement statement : script.statements) {
+            if (!(statement instanceof Statement.Import)) {
+                continue;
+            }
+
+            Statement.Import anImport = (Statement.Import) statement;
+            Module module = imported.get(i++);
+            if (module.errors.isEmpty()) {
+                imports.put(anImport.path, module.classes);
+            } else {
+                reporter.error(anImport.line,
+                        "Cannot import \"" + anImport.path + "\", it contains errors:");
+                reporter.replay(module.errors);
+            }
+        }
+        return imports;
+    }
+
+    private Module compile(Source source, List<Module> imported) {
+        StringWriter errors = new StringWriter();
+        KnishErrorReporter reporter = new KnishErrorReporter(errors);
+        // the classes of the modules imported by several modules are declared once
+        Set<Statement.Class> classes = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Statement.Class> exported = new ArrayList<>();
+
+        Statement.Block module = source.block != null ? source.block : Knish.parse(source.text, reporter);
+        if (module != null) {
+            Map<String, List<Statement.Class>> imports = imports(module, imported, reporter);
+            imported.stream()
+                    .filter(importedModule -> importedModule.errors.isEmpty())
+                    .forEach(importedModule -> importedModule.classes.forEach(klass -> {
+                        if (classes.add(klass)) {
+                            exported.add(klass);
+                        }
+                    }));
+
+            for (Statement statement : module.statements) {
+                if (statement instanceof Statement.Class) {
+                    exported.add((Statement.Class) statement);
+                } else if (!(statement instanceof Statement.Import)) {
+                    reporter.error(statement.line, "A module can contain only imports and classes.");
+                }
+            }
+
+            if (!reporter.hadError()) {
+                Knish.checkModule(module, imports, reporter, summaries);
+            }
+        }
+
+        return new Module(source.file, source.hash, Collections.unmodifiableList(exported),
+                imported, errors.toString());
+    }
+
+    // the state of one call of load
+    private final class Loading {
+        private final ForkJoinPool pool;
+        private final Set<Path> discovered = ConcurrentHashMap.newKeySet();
+        private final Map<Path, Source> sources = new ConcurrentHashMap<>();
+
+        private Loading(ForkJoinPool pool) {
+            this.pool = pool;
+        }
+
+        private Map<Path, Module> load(List<Path> files) {
+            discover(files);
+            return check(files);
+        }
+
+        // reads the files and the files they import
+        private void discover(List<Path> files) {
+            List<Discovery> discoveries = new ArrayList<>();
+            for (Path file : files) {
+                if (discovered.add(file)) {
+                    discoveries.add(new Discovery(file));
+                }
+            }
+            pool.invoke(ForkJoinTask.adapt(() -> {
+                ForkJoinTask.invokeAll(discoveries);
+            }));
+        }
+
+        // checks the discovered modules imported by the roots and returns them by their files
+        private Map<Path, Module> check(List<Path> roots) {
+            List<Source> sorted = new ArrayList<>();
+            // the modules being sorted in the order of the imports between them
+            Set<Path> visiting = new LinkedHashSet<>();
+            Set<Path> visited = new HashSet<>();
+            for (Path root : roots) {
+                if (!visited.contains(root)) {
+                    sort(root, visiting, visited, sorted);
+                }
+            }
+
+            Map<Path, ForkJoinTask<Module>> checks = new HashMap<>();
+            pool.invoke(ForkJoinTask.adapt(() -> {
+                // the checks of the imported modules are forked before the checks of their importers
+                for (Source source : sorted) {
+                    List<ForkJoinTask<Module>> imports = new ArrayList<>();
+                    for (int i = 0; i < source.imports.size(); i++) {
+                        imports.add(source.cycles[i] != null ? null : checks.get(source.imports.get(i)));
+                    }
+                    checks.put(source.file, new Check(source, imports).fork());
+                }
+                checks.values().forEach(ForkJoinTask::join);
+            }));
+
+            Map<Path, Module> loaded = new HashMap<>();
+            checks.forEach((file, check) -> loaded.put(file, check.join()));
+            return loaded;
+        }
+
+        // sorts the modules so that a module follows the modules it imports and marks the cyclic imports
+        private void sort(Path file, Set<Path> visiting, Set<Path> visited, List<Source> sorted) {
+            Source source = sources.get(file);
+            visiting.add(file);
+            visited.add(file);
+            for (int i = 0; i < source.imports.size(); i++) {
+                Path imported = source.imports.get(i);
+                if (visiting.contains(imported)) {
+                    source.cycles[i] = cycle(visiting, imported);
+                } else if (!visited.contains(imported)) {
+                    sort(imported, visiting, visited, sorted);
+                }
+            }
+            visiting.remove(file);
+            sorted.add(source);
+        }
+
+        // the chain of the imports from the imported module to itself
+        private String cycle(Set<Path> visiting, Path imported) {
+            StringJoiner cycle = new StringJoiner(" -> ");
+            boolean inCycle = false;
+            for (Path file : visiting) {
+                inCycle |= file.equals(imported);
+                if (inCycle) {
+                    cycle.add(file.toString());
+                }
+            }
+            return cycle.add(imported.toString()).toString();
+        }
+
+        // the tasks are never serialized
+        @SuppressWarnings("serial")
+        private final class Discovery extends RecursiveAction {
+            private final Path file;
+
+            private Discovery(Path file) {
+                this.file = file;
+            }
+
+            @Override
+            protected void compute() {
+                Source source = read(file);
+                sources.put(file, source);
+
+                List<Discovery> discoveries = new ArrayList<>();
+                for (Path imported : source.imports) {
+                    if (discovered.add(imported)) {
+                        discoveries.add(new Discovery(imported));
+                    }
+                }
+                invokeAll(discoveries);
+            }
+        }
+
+        @SuppressWarnings("serial")
+        private final class Check extends RecursiveTask<Module> {
+            private final Source source;
+            // the checks of the imported modules, null for the imports that close a cycle
+            private final List<ForkJoinTask<Module>> imports;
+
+            private Check(Source source, List<ForkJoinTask<Module>> imports) {
+                this.source = source;
+                this.imports = imports;
+            }
+
+            @Override
+            protected Module compute() {
+                if (source.text == null) {
+                    return Module.failed(source.file, "Cannot read the file " + source.file + ".");
+                }
+
+                List<Module> imported = new ArrayList<>();
+                for (int i = 0; i < imports.size(); i++) {
+                    imported.add(imports.get(i) == null ?
+                            Module.failed(source.imports.get(i), "The import of " + source.imports.get(i) +
+                                    " closes an import cycle: " + source.cycles[i] + ".") :
+                            imports.get(i).join());
+                }
+
+                // a module that failed to load is never the same, so its importers are compiled again
+                Module module = source.cached;
+                if (module == null || !sameModules(module.imports, imported)) {
+                    module = compile(source, imported);
+                    modules.put(source.file, module);
+                }
+                return module;
+            }
+        }
+    }
+
+    private Source read(Path file) {
+        String text;
+        try {
+            text = new String(Files.readAllBytes(file), Charset.defaultCharset());
+        } catch (IOException e) {
+            return new Source(file, null, "", null, null, Collections.emptyList());
+        }
+
+        String hash = SourceHash.of(text);
+        Module cached = modules.get(file);
+        if (cached != null && cached.hash.equals(hash)) {
+            // the module is parsed again only if a module it imports changed
+            List<Path> imports = new ArrayList<>();
+            cached.imports.forEach(imported -> imports.add(imported.file));
+            return new Source(file, text, hash, cached, null, imports);
+        }
+
+        // the errors are reported when the module is checked
+        Statement.Block block = Knish.parse(text, new KnishErrorReporter(Writer.nullWriter()));
+        return new Source(file, text, hash, null, block,
+                block == null ? Collections.emptyList() : importedFiles(block, file.getParent()));
+    }
+
+    private static boolean sameModules(List<Module> modules, List<Module> others) {
+        if (modules.size() != others.size()) {
+            return false;
+        }
+        for (int i = 0; i < modules.size(); i++) {
+            if (modules.get(i) != others.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A file of a batch loaded by the cache.
+     */
+    static final class LoadedFile {
+        // the parsed script or null if the file was loaded as a module
+        final Statement.Block script;
+        // the classes of the modules imported by the script
+        final Map<String, List<Statement.Class>> imports;
+        // the errors of the module or of the imports of the script
+        final String errors;
+
+        private LoadedFile(Statement.Block script, Map<String, List<Statement.Class>> imports, String errors) {
+            this.script = script;
+            this.imports = imports;
+            this.errors = errors;
+        }
+    }
+
+    // a file read by a load
+    private static final class Source {
+        private final Path file;
+        // null if the file cannot be read
+        private final String text;
+        private final String hash;
+        // the module loaded from the same text by one of the previous loads or null
+        private final Module cached;
+        // null if the file is not parsed or contains errors
+        private final Statement.Block block;
+        // the absolute paths of the imported files
+        private final List<Path> imports;
+        // the cycles closed by the imports, null for the imports that close no cycle
+        private final String[] cycles;
+
+        private Source(Path file, String text, String hash, Module cached,
+                       Statement.Block block, List<Path> imports) {
+            this.file = file;
+            this.text = text;
+            this.hash = hash;
+            this.cached = cached;
+            this.block = block;
+            this.imports = imports;
+            this.cycles = new String[imports.size()];
+        }
+
+        private boolean isScript() {
+            return block != null && block.statements.stream().anyMatch(statement ->
+                    !(statement instanceof Statement.Import) && !(statement instanceof Statement.Class));
+        }
+    }
+
+    private static final class Module {
+        private final Path file;
+        private final String hash;
+        private final List<Statement.Class> classes;
+        private final List<Module> imports;
+        // the errors of the module in the format of KnishErrorReporter, empty if there are none
+        private final String errors;
+
+        private Module(Path file, String hash, List<Statement.Class> classes,
+                       List<Module> imports, String errors) {
+            this.file = file;
+            this.hash = hash;
+            this.classes = classes;
+            this.imports = imports;
+            this.errors = errors;
+        }
+
+        private static Module failed(Path file, String message) {
+            StringWriter errors = new StringWriter();
+            new KnishErrorReporter(errors).error(0, message);
+            return new Module(file, "", Collections.emptyList(), Collections.emptyList(), errors.toString());
+        }
+    }
+}
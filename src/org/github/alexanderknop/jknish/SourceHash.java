@@ -0,0 +1,28 @@
+package org.github.alexanderknop.jknish;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public final class SourceHash {
+    /**
+     * @return the SHA-256 of the source as a hexadecimal string.
+     */
+    public static String of(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 must be supported by every Java platform.", e);
+        }
+    }
+
+    private SourceHash() {
+
+    }
+}
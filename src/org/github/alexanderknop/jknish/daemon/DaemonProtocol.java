@@ -0,0 +1,63 @@
+package org.github.alexanderknop.jknish.daemon;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The daemon writes its port and a secret token into the file {@value ADDRESS_FILE}
+ * in its directory, the file can be read only by the owner of the daemon.
+ * <p>
+ * The client sends the token, its working directory and the arguments of the command
+ * line; the daemon answers with frames of the output and the errors of jknish followed
+ * by the exit code.
+ */
+final class DaemonProtocol {
+    static final String ADDRESS_FILE = "daemon";
+
+    static final byte OUTPUT = 1;
+    static final byte ERRORS = 2;
+    static final byte EXIT = 3;
+
+    /**
+     * Sends everything written into the stream as frames of the given type.
+     */
+    static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream output;
+        private final byte type;
+
+        FrameOutputStream(DataOutputStream output, byte type) {
+            this.output = output;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            // the output and the errors share the connection
+            synchronized (output) {
+                output.writeByte(type);
+                output.writeInt(length);
+                output.write(bytes, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (output) {
+                output.flush();
+            }
+        }
+    }
+
+    private DaemonProtocol() {
+
+    }
+}
@@ -0,0 +1,170 @@
+package org.github.alexanderknop.jknish.daemon;
+
+import org.github.alexanderknop.jknish.CompiledScriptCache;
+import org.github.alexanderknop.jknish.ExecutionContextPool;
+import org.github.alexanderknop.jknish.Knish;
+import org.github.alexanderknop.jknish.objects.KnishCore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.github.alexanderknop.jknish.daemon.DaemonProtocol.*;
+
+/**
+ * A long-lived jknish process running the command lines sent by
+ * {@link KnishDaemonClient}; the core and the compiled scripts stay warm between runs.
+ * <p>
+ * The daemon listens on the loopback interface only, and every request must
+ * present the token stored in the address file of the daemon.
+ */
+public final class KnishDaemon implements Closeable {
+    private static final int CACHE_SIZE = 256;
+    private static final int CONTEXTS = 4;
+
+    private final Path directory;
+    private final ServerSocket server;
+    private final String token;
+    private final CompiledScriptCache cache = new CompiledScriptCache(CACHE_SIZE);
+    private final ExecutionContextPool contexts = new ExecutionContextPool(CONTEXTS);
+    private final ExecutorService workers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "knish-daemon-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Starts the daemon in the background and publishes its address in the directory.
+     */
+    public static KnishDaemon start(Path directory) throws IOException {
+        KnishDaemon daemon = new KnishDaemon(directory);
+        Thread acceptor = new Thread(daemon::accept, "knish-daemon");
+        acceptor.start();
+        return daemon;
+    }
+
+    private KnishDaemon(Path directory) throws IOException {
+        this.directory = directory;
+        this.token = newToken();
+
+        // initialize the core before the first request
+        KnishCore.core();
+
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        try {
+            publishAddress();
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+    }
+
+    public CompiledScriptCache.Statistics statistics() {
+        return cache.statistics();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        workers.shutdown();
+        Files.deleteIfExists(directory.resolve(ADDRESS_FILE));
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                workers.execute(() -> serve(socket));
+            } catch (IOException e) {
+                // the daemon is closed
+            }
+        }
+    }
+
+    private void serve(Socket connection) {
+        try (Socket socket = connection;
+             DataInputStream input = new DataInputStream(
+                     new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream output = new DataOutputStream(
+                     new BufferedOutputStream(socket.getOutputStream()))) {
+            String requestToken = input.readUTF();
+            if (!MessageDigest.isEqual(
+                    requestToken.getBytes(StandardCharsets.UTF_8),
+                    token.getBytes(StandardCharsets.UTF_8))) {
+                return;
+            }
+
+            Path workingDirectory = Paths.get(input.readUTF());
+            String[] arguments = new String[input.readInt()];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = input.readUTF();
+            }
+
+            Writer scriptOutput = new OutputStreamWriter(
+                    new FrameOutputStream(output, OUTPUT), Charset.defaultCharset());
+            Writer scriptErrors = new OutputStreamWriter(
+                    new FrameOutputStream(output, ERRORS), Charset.defaultCharset());
+            int exitCode;
+            try {
+                exitCode = Knish.commandLine(arguments, workingDirectory, cache, contexts,
+                        scriptOutput, scriptErrors);
+            } catch (Throwable e) {
+                // the client gets an exit code even if the script ran out of stack or memory
+                scriptErrors.write(e + "\n");
+                exitCode = 1;
+            }
+            scriptOutput.flush();
+            scriptErrors.flush();
+
+            synchronized (output) {
+                output.writeByte(EXIT);
+                output.writeInt(exitCode);
+                output.flush();
+            }
+        } catch (IOException e) {
+            // the client has gone away
+        }
+    }
+
+    private void publishAddress() throws IOException {
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, ADDRESS_FILE, ".tmp");
+        try {
+            Files.setPosixFilePermissions(temporary, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException e) {
+            // the file system has no POSIX permissions; the directory must be private
+        }
+        Files.writeString(temporary, server.getLocalPort() + "\n" + token + "\n");
+        Files.move(temporary, directory.resolve(ADDRESS_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,77 @@
+package org.github.alexanderknop.jknish.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.github.alexanderknop.jknish.daemon.DaemonProtocol.*;
+
+/**
+ * Runs a command line of jknish in {@link KnishDaemon}; the client does not
+ * touch the interpreter, so it starts as fast as the JVM does.
+ */
+public final class KnishDaemonClient {
+    /**
+     * @return the exit code of the command line.
+     */
+    public static int run(Path directory, String[] arguments, Path workingDirectory,
+                          OutputStream output, OutputStream errors) throws IOException {
+        List<String> address = Files.readAllLines(directory.resolve(ADDRESS_FILE));
+        if (address.size() != 2) {
+            throw new IOException("The address of the daemon is malformed.");
+        }
+        int port = Integer.parseInt(address.get(0));
+        String token = address.get(1);
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             DataInputStream input = new DataInputStream(
+                     new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream request = new DataOutputStream(
+                     new BufferedOutputStream(socket.getOutputStream()))) {
+            request.writeUTF(token);
+            request.writeUTF(workingDirectory.toAbsolutePath().toString());
+            request.writeInt(arguments.length);
+            for (String argument : arguments) {
+                request.writeUTF(argument);
+            }
+            request.flush();
+
+            while (true) {
+                byte type = input.readByte();
+                switch (type) {
+                    case OUTPUT:
+                        copyFrame(input, output);
+                        break;
+                    case ERRORS:
+                        copyFrame(input, errors);
+                        break;
+                    case EXIT:
+                        output.flush();
+                        errors.flush();
+                        return input.readInt();
+                    default:
+                        throw new IOException("Unknown frame " + type + ".");
+                }
+            }
+        }
+    }
+
+    private static void copyFrame(DataInputStream input, OutputStream output) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        output.write(bytes);
+        output.flush();
+    }
+
+    private KnishDaemonClient() {
+
+    }
+}
@@ -169,7 +169,7 @@ public class InitializationChecker {
                     method.argumentsIds.forEach(initialized::set);
                 }
                 method.argumentNames.forEach(variableNames::put);
-                check(method.body);
+                check(method.body());
                 afterMethod.get(klass).put(method, initialized);
             } else {
                 initialized.or(afterMethod.get(klass).get(method));
@@ -0,0 +1,25 @@
+package org.github.alexanderknop.jknish.interpreter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A single daemon thread compiling hot code while the interpreter keeps running.
+ */
+final class BackgroundCompiler {
+    private static final ExecutorService COMPILER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "knish-compiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static <T> void submit(Supplier<T> compiler, Consumer<T> installer) {
+        COMPILER.execute(() -> installer.accept(compiler.get()));
+    }
+
+    private BackgroundCompiler() {
+
+    }
+}
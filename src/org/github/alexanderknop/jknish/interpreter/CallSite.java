@@ -0,0 +1,211 @@
+package org.github.alexanderknop.jknish.interpreter;
+
+import org.github.alexanderknop.jknish.objects.AbstractKnishObject;
+import org.github.alexanderknop.jknish.objects.KnishCore;
+import org.github.alexanderknop.jknish.objects.KnishObject;
+import org.github.alexanderknop.jknish.objects.KnishWrappedObject;
+import org.github.alexanderknop.jknish.parser.MethodId;
+import org.github.alexanderknop.jknish.resolver.ResolvedExpression;
+import org.github.alexanderknop.jknish.resolver.ResolvedStatement;
+
+import java.util.List;
+
+import static org.github.alexanderknop.jknish.interpreter.InterpreterMethodUtils.getterVariable;
+import static org.github.alexanderknop.jknish.interpreter.InterpreterMethodUtils.setterVariable;
+import static org.github.alexanderknop.jknish.parser.MethodId.arityFromArgumentsList;
+
+/**
+ * The runtime state of a call site. The site records the types of the
+ * receivers and arguments it observes. If the first call of an arithmetic
+ * or comparison method is made on numbers, the site speculates that it is
+ * always called on numbers and computes the result directly; when the
+ * speculation fails, the site falls back to the generic path forever.
+ * <p>
+ * If the receiver of the call is a global,
+ * the site binds the call to the implementation of the method of the global
+ * object. Otherwise, the site is a monomorphic inline cache: it remembers
+ * the class of the first instance the site was called on and, if the called
+ * method is a trivial accessor, inlines the call into a direct access of
+ * the field.
+ */
+final class CallSite {
+    private final int line;
+    private final String method;
+    private final MethodId methodId;
+    private final boolean constantReceiver;
+    private final NumOperator numOperator;
+
+    private State state = State.UNINITIALIZED;
+    private int receiverTypes = 0;
+    private int argumentTypes = 0;
+
+    private ResolvedStatement.Class receiverClass;
+    private AccessorKind accessorKind;
+    private int variableId;
+    private boolean megamorphic = false;
+
+    private KnishObject boundReceiver;
+    private AbstractKnishObject.Method boundMethod;
+
+    CallSite(ResolvedExpression.Call call, boolean constantReceiver) {
+        this.line = call.line;
+        this.method = call.method;
+        this.methodId = new MethodId(call.method, arityFromArgumentsList(call.arguments));
+        this.constantReceiver = constantReceiver;
+        this.numOperator = NumOperator.fromMethodId(methodId);
+    }
+
+    KnishObject call(KnishObject receiver, List<KnishObject> arguments) {
+        if (state == State.NUM) {
+            if (areNums(receiver, arguments)) {
+                return applyNumOperator(receiver, arguments);
+            }
+            // the speculation failed, so we deoptimize the site
+            state = State.GENERIC;
+        }
+
+        profile(receiver, arguments);
+
+        if (state == State.UNINITIALIZED) {
+            if (numOperator != null && areNums(receiver, arguments)) {
+                state = State.NUM;
+                return applyNumOperator(receiver, arguments);
+            }
+            state = State.GENERIC;
+        }
+
+        return dispatch(receiver, arguments);
+    }
+
+    /**
+     * Puts the site into the state recorded by a previous run of the script.
+     */
+    void warmUp(CallSiteProfiles profiles) {
+        CallSiteProfiles.Profile profile = profiles.get(line, methodId.toString());
+        if (profile == null) {
+            return;
+        }
+
+        receiverTypes = profile.receiverTypes;
+        argumentTypes = profile.argumentTypes;
+        megamorphic = profile.megamorphic;
+        if (profile.numSpecialized && numOperator != null) {
+            state = State.NUM;
+        } else {
+            state = State.GENERIC;
+        }
+    }
+
+    void record(CallSiteProfiles profiles) {
+        // sites that were never called tell nothing
+        if (state != State.UNINITIALIZED) {
+            profiles.record(line, methodId.toString(),
+                    new CallSiteProfiles.Profile(
+                            state == State.NUM, receiverTypes, argumentTypes, megamorphic));
+        }
+    }
+
+    private void profile(KnishObject receiver, List<KnishObject> arguments) {
+        receiverTypes |= OperandType.of(receiver).mask;
+        if (arguments != null) {
+            for (KnishObject argument : arguments) {
+                argumentTypes |= OperandType.of(argument).mask;
+            }
+        }
+    }
+
+    private static boolean areNums(KnishObject receiver, List<KnishObject> arguments) {
+        KnishCore core = KnishCore.core();
+        return core.isNum(receiver) &&
+                (arguments == null || core.isNum(arguments.get(0)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private KnishObject applyNumOperator(KnishObject receiver, List<KnishObject> arguments) {
+        long left = ((KnishWrappedObject<Long>) receiver).getValue();
+        long right = arguments == null ? 0 : ((KnishWrappedObject<Long>) arguments.get(0)).getValue();
+        return numOperator.apply(left, right);
+    }
+
+    private KnishObject dispatch(KnishObject receiver, List<KnishObject> arguments) {
+        if (receiver instanceof Instance) {
+            KnishObject value = inlineCall((Instance) receiver, arguments);
+            if (value != null) {
+                return value;
+            }
+        } else if (constantReceiver) {
+            if (boundReceiver != receiver) {
+                bind(receiver);
+            }
+            if (boundMethod != null) {
+                return boundMethod.call(arguments);
+            }
+        }
+
+        return receiver.call(method, arguments);
+    }
+
+    private void bind(KnishObject receiver) {
+        boundReceiver = receiver;
+        boundMethod = null;
+        if (receiver instanceof AbstractKnishObject) {
+            boundMethod = ((AbstractKnishObject) receiver).lookup(methodId);
+        }
+    }
+
+    /**
+     * @return the result of the inlined call or null if the call cannot be inlined
+     * and must be dispatched in the usual way.
+     */
+    private KnishObject inlineCall(Instance receiver, List<KnishObject> arguments) {
+        if (megamorphic) {
+            return null;
+        }
+
+        if (receiverClass != receiver.getKlass()) {
+            if (receiverClass != null) {
+                // the site is polymorphic; we do not try to inline it anymore
+                megamorphic = true;
+                return null;
+            }
+            cache(receiver.getKlass());
+        }
+
+        return switch (accessorKind) {
+            case GETTER -> receiver.getFields().get(variableId);
+            case SETTER -> {
+                receiver.getFields().set(variableId, arguments.get(0));
+                yield KnishCore.core().nil();
+            }
+            case NONE -> null;
+        };
+    }
+
+    private void cache(ResolvedStatement.Class klass) {
+        receiverClass = klass;
+        accessorKind = AccessorKind.NONE;
+
+        ResolvedStatement.Method method = klass.methods.get(methodId);
+        if (method == null) {
+            return;
+        }
+
+        Integer getter = getterVariable(method);
+        Integer setter = setterVariable(method);
+        if (getter != null) {
+            accessorKind = AccessorKind.GETTER;
+            variableId = getter;
+        } else if (setter != null) {
+            accessorKind = AccessorKind.SETTER;
+            variableId = setter;
+        }
+    }
+
+    private enum AccessorKind {
+        GETTER, SETTER, NONE
+    }
+
+    private enum State {
+        UNINITIALIZED, NUM, GENERIC
+    }
+}
@@ -0,0 +1,141 @@
+package org.github.alexanderknop.jknish.interpreter;
+
+import org.github.alexanderknop.jknish.SourceHash;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The types observed by the call sites of a script, keyed by the line and the
+ * selector of the call. The profiles of a previous run let the call sites of
+ * the next run of the same script start in their final state.
+ * <p>
+ * The profiles are bound to the hash of the source; the profiles of
+ * any other source are discarded when loaded. Concurrent executions
+ * of the script may share the profiles.
+ */
+public final class CallSiteProfiles {
+    private static final String HEADER = "knish-profiles 1";
+
+    private final String sourceHash;
+    private final Map<String, Profile> profiles = new TreeMap<>();
+
+    private CallSiteProfiles(String sourceHash) {
+        this.sourceHash = sourceHash;
+    }
+
+    public static CallSiteProfiles empty(String source) {
+        return new CallSiteProfiles(SourceHash.of(source));
+    }
+
+    /**
+     * Loads the profiles of the source, if the file does not exist
+     * or contains profiles of another source, returns empty profiles.
+     */
+    public static CallSiteProfiles load(Path path, String source) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return read(reader, source);
+        } catch (NoSuchFileException e) {
+            return empty(source);
+        }
+    }
+
+    public void save(Path path) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            write(writer);
+        }
+    }
+
+    static CallSiteProfiles read(BufferedReader reader, String source) throws IOException {
+        CallSiteProfiles result = empty(source);
+        if (!HEADER.equals(reader.readLine()) || !result.sourceHash.equals(reader.readLine())) {
+            return result;
+        }
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] columns = line.split("\t");
+            if (columns.length != 6) {
+                // the file is damaged, we cannot trust any of it
+                return empty(source);
+            }
+            try {
+                result.profiles.put(
+                        key(Integer.parseInt(columns[0]), columns[1]),
+                        new Profile(
+                                Boolean.parseBoolean(columns[2]),
+                                Integer.parseInt(columns[3]),
+                                Integer.parseInt(columns[4]),
+                                Boolean.parseBoolean(columns[5])
+                        )
+                );
+            } catch (NumberFormatException e) {
+                return empty(source);
+            }
+        }
+        return result;
+    }
+
+    synchronized void write(Writer writer) throws IOException {
+        writer.write(HEADER + "\n");
+        writer.write(sourceHash + "\n");
+        for (Map.Entry<String, Profile> entry : profiles.entrySet()) {
+            Profile profile = entry.getValue();
+            writer.write(entry.getKey() + "\t" +
+                    profile.numSpecialized + "\t" +
+                    profile.receiverTypes + "\t" +
+                    profile.argumentTypes + "\t" +
+                    profile.megamorphic + "\n");
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return profiles.isEmpty();
+    }
+
+    synchronized Profile get(int line, String selector) {
+        return profiles.get(key(line, selector));
+    }
+
+    /**
+     * Records the profile of a call site; the profiles of the sites
+     * sharing the line and the selector are merged.
+     */
+    synchronized void record(int line, String selector, Profile profile) {
+        profiles.merge(key(line, selector), profile, Profile::merge);
+    }
+
+    private static String key(int line, String selector) {
+        return line + "\t" + selector;
+    }
+
+    static final class Profile {
+        final boolean numSpecialized;
+        final int receiverTypes;
+        final int argumentTypes;
+        final boolean megamorphic;
+
+        Profile(boolean numSpecialized, int receiverTypes, int argumentTypes, boolean megamorphic) {
+            this.numSpecialized = numSpecialized;
+            this.receiverTypes = receiverTypes;
+            this.argumentTypes = argumentTypes;
+            this.megamorphic = megamorphic;
+        }
+
+        private Profile merge(Profile other) {
+            return new Profile(
+                    numSpecialized && other.numSpecialized,
+                    receiverTypes | other.receiverTypes,
+                    argumentTypes | other.argumentTypes,
+                    megamorphic || other.megamorphic
+            );
+        }
+    }
+}
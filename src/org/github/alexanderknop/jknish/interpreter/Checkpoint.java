@@ -0,0 +1,27 @@
+package org.github.alexanderknop.jknish.interpreter;
+
+/**
+ * Signals that a script reached its checkpoint; the interpreter takes the
+ * snapshot of the heap once the top-level statement containing the checkpoint finishes.
+ */
+public final class Checkpoint implements Runnable {
+    private boolean reached = false;
+
+    @Override
+    public void run() {
+        reached = true;
+    }
+
+    void reset() {
+        reached = false;
+    }
+
+    /**
+     * @return true if the checkpoint was reached since the previous call.
+     */
+    boolean takeReached() {
+        boolean result = reached;
+        reached = false;
+        return result;
+    }
+}
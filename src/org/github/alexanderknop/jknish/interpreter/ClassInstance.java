@@ -5,10 +5,15 @@ import org.github.alexanderknop.jknish.objects.KnishObject;
 import org.github.alexanderknop.jknish.resolver.ResolvedStatement;
 
 import static org.github.alexanderknop.jknish.interpreter.InterpreterMethodUtils.compileMethod;
+import static org.github.alexanderknop.jknish.interpreter.InterpreterMethodUtils.compileOnFirstCall;
 
 class ClassInstance extends AbstractKnishObject {
 
     private final String name;
+    private final ResolvedStatement.Class klass;
+    private final Environment statics;
+    private final Interpreter.InterpreterVisitor evaluator;
+    private final KnishObject nilValue;
 
     ClassInstance(String name,
                   ResolvedStatement.Class klass,
@@ -16,16 +21,21 @@ class ClassInstance extends AbstractKnishObject {
                   Interpreter.InterpreterVisitor evaluator,
                   KnishObject nilValue) {
         this.name = name;
+        this.klass = klass;
+        this.evaluator = evaluator;
+        this.nilValue = nilValue;
 
         // define an environment with all the static fields
         Environment classEnvironment =
                 new Environment(enclosing, klass.staticFields.keySet());
         classEnvironment.set(klass.staticThisId, this);
+        this.statics = classEnvironment;
 
-        // register all the static methods
+        // register all the static methods, they are compiled when called for the first time
         klass.staticMethods.forEach(
                 (methodId, method) ->
-                        register(methodId, compileMethod(method, classEnvironment, evaluator, nilValue))
+                        register(methodId, compileOnFirstCall(
+                                () -> compileMethod(method, classEnvironment, evaluator, nilValue)))
         );
 
         // register all the constructors
@@ -39,6 +49,17 @@ class ClassInstance extends AbstractKnishObject {
         ));
     }
 
+    /**
+     * @return a new instance of the class whose constructor was not called.
+     */
+    Instance allocate() {
+        return new Instance(name, klass, statics, evaluator, nilValue);
+    }
+
+    Environment getStatics() {
+        return statics;
+    }
+
     @Override
     protected String getClassName() {
         return name + " metaclass";
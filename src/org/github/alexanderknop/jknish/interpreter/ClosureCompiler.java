@@ -0,0 +1,199 @@
+package org.github.alexanderknop.jknish.interpreter;
+
+import org.github.alexanderknop.jknish.objects.KnishCore;
+import org.github.alexanderknop.jknish.objects.KnishObject;
+import org.github.alexanderknop.jknish.resolver.ResolvedExpression;
+import org.github.alexanderknop.jknish.resolver.ResolvedStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Translates the resolved code into a tree of closures. Unlike
+ * {@link Interpreter.InterpreterVisitor}, the closures neither dispatch on
+ * the type of the node nor save and restore the current environment,
+ * and every call keeps its call site at hand.
+ * <p>
+ * The compiler runs in the background, so it must not touch
+ * the mutable state of the interpreter.
+ */
+final class ClosureCompiler implements
+        ResolvedExpression.Visitor<ClosureCompiler.Expression>,
+        ResolvedStatement.Visitor<ClosureCompiler.Statement> {
+
+    interface Statement {
+        void execute(Environment environment);
+    }
+
+    interface Expression {
+        KnishObject evaluate(Environment environment);
+    }
+
+    private final Interpreter.InterpreterVisitor interpreter;
+
+    private ClosureCompiler(Interpreter.InterpreterVisitor interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    static Statement compile(ResolvedStatement statement, Interpreter.InterpreterVisitor interpreter) {
+        return new ClosureCompiler(interpreter).compile(statement);
+    }
+
+    /**
+     * @return an expression evaluating the body of the method in the environment
+     * with bound arguments to the value returned by the method.
+     */
+    static Expression compile(ResolvedStatement.Method method, Interpreter.InterpreterVisitor interpreter) {
+        ClosureCompiler compiler = new ClosureCompiler(interpreter);
+
+        ResolvedExpression returnedExpression = InterpreterMethodUtils.returnedExpression(method);
+        if (returnedExpression != null) {
+            return compiler.compile(returnedExpression);
+        }
+
+        Statement body = compiler.compile(method.body());
+        KnishObject nilValue = KnishCore.core().nil();
+        return environment -> {
+            try {
+                body.execute(environment);
+            } catch (Return aReturn) {
+                return aReturn.value;
+            }
+            return nilValue;
+        };
+    }
+
+    private Statement compile(ResolvedStatement statement) {
+        if (statement == null) {
+            return environment -> {
+            };
+        }
+        return statement.accept(this);
+    }
+
+    private Expression compile(ResolvedExpression expression) {
+        return expression.accept(this);
+    }
+
+    @Override
+    public Expression visitAssignExpression(ResolvedExpression.Assign assign) {
+        int variableId = assign.variableId;
+        Expression value = compile(assign.value);
+        return environment -> environment.set(variableId, value.evaluate(environment));
+    }
+
+    @Override
+    public Expression visitCallExpression(ResolvedExpression.Call call) {
+        Expression object = compile(call.object);
+        Expression[] arguments = call.arguments == null ? null :
+                call.arguments.stream().map(this::compile).toArray(Expression[]::new);
+
+        return new Expression() {
+            // call sites are shared with the interpreter, so we look them up on the first call
+            private CallSite callSite = null;
+
+            @Override
+            public KnishObject evaluate(Environment environment) {
+                KnishObject receiver = object.evaluate(environment);
+
+                List<KnishObject> argumentValues = null;
+                if (arguments != null) {
+                    argumentValues = new ArrayList<>(arguments.length);
+                    for (Expression argument : arguments) {
+                        argumentValues.add(argument.evaluate(environment));
+                    }
+                }
+
+                if (callSite == null) {
+                    callSite = interpreter.callSite(call);
+                }
+                return Interpreter.InterpreterVisitor.call(call, callSite, receiver, argumentValues);
+            }
+        };
+    }
+
+    @Override
+    public Expression visitLiteralExpression(ResolvedExpression.Literal literal) {
+        Object value = literal.value;
+        if (value == null || value instanceof Boolean) {
+            // nil and booleans are unique objects
+            KnishObject object = Interpreter.InterpreterVisitor.literal(value);
+            return environment -> object;
+        }
+        return environment -> Interpreter.InterpreterVisitor.literal(value);
+    }
+
+    @Override
+    public Expression visitVariableExpression(ResolvedExpression.Variable variable) {
+        int variableId = variable.variableId;
+        KnishObject constant = interpreter.constant(variableId);
+        if (constant != null) {
+            return environment -> constant;
+        }
+        return environment -> environment.get(variableId);
+    }
+
+    @Override
+    public Expression visitLogicalExpression(ResolvedExpression.Logical logical) {
+        Expression left = compile(logical.left);
+        Expression right = compile(logical.right);
+        return environment -> Interpreter.InterpreterVisitor.logical(
+                logical.operator,
+                left.evaluate(environment),
+                () -> right.evaluate(environment)
+        );
+    }
+
+    @Override
+    public Statement visitExpressionStatement(ResolvedStatement.Expression expression) {
+        Expression value = compile(expression.resolvedExpression);
+        return value::evaluate;
+    }
+
+    @Override
+    public Statement visitorIfStatement(ResolvedStatement.If anIf) {
+        Expression condition = compile(anIf.condition);
+        Statement thenBranch = compile(anIf.thenBranch);
+        Statement elseBranch = compile(anIf.elseBranch);
+        return environment -> {
+            if (Interpreter.InterpreterVisitor.ifCondition(anIf.line, condition.evaluate(environment))) {
+                thenBranch.execute(environment);
+            } else {
+                elseBranch.execute(environment);
+            }
+        };
+    }
+
+    @Override
+    public Statement visitWhileStatement(ResolvedStatement.While aWhile) {
+        Expression condition = compile(aWhile.condition);
+        Statement body = compile(aWhile.body);
+        return environment -> {
+            while (Interpreter.InterpreterVisitor.whileCondition(aWhile.line, condition.evaluate(environment))) {
+                body.execute(environment);
+            }
+        };
+    }
+
+    @Override
+    public Statement visitBlockStatement(ResolvedStatement.Block block) {
+        Statement[] statements = block.resolvedStatements.stream()
+                .map(this::compile)
+                .toArray(Statement[]::new);
+        return environment -> {
+            Environment blockEnvironment = interpreter.enterBlock(environment, block);
+            for (Statement statement : statements) {
+                statement.execute(blockEnvironment);
+            }
+        };
+    }
+
+    @Override
+    public Statement visitReturnStatement(ResolvedStatement.Return aReturn) {
+        Expression value = aReturn.value == null ? null : compile(aReturn.value);
+        KnishObject nilValue = KnishCore.core().nil();
+        return environment -> {
+            throw new Return(value == null ? nilValue : value.evaluate(environment));
+        };
+    }
+}
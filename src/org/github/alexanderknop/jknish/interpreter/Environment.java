@@ -6,10 +6,12 @@ import org.github.alexanderknop.jknish.objects.KnishObject;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 class Environment {
     private final Environment enclosing;
     private final Map<Integer, KnishObject> objects = new HashMap<>();
+    private Map<Integer, Supplier<KnishObject>> initializers = null;
 
     public Environment(Collection<Integer> variables) {
         this(null, variables);
@@ -25,8 +27,33 @@ class Environment {
         objects.put(id, value);
     }
 
+    /**
+     * Defines the value of a variable that is computed on the first access.
+     */
+    public void setLazily(int id, Supplier<KnishObject> initializer) {
+        assert objects.containsKey(id);
+        if (initializers == null) {
+            initializers = new HashMap<>();
+        }
+        initializers.put(id, initializer);
+    }
+
+    /**
+     * @return true if the variable is defined in this environment and its value is computed.
+     */
+    public boolean isInitialized(int id) {
+        return objects.containsKey(id) &&
+                (initializers == null || !initializers.containsKey(id));
+    }
+
     public KnishObject get(int id) {
         if (objects.containsKey(id)) {
+            if (initializers != null) {
+                Supplier<KnishObject> initializer = initializers.remove(id);
+                if (initializer != null) {
+                    objects.put(id, initializer.get());
+                }
+            }
             return objects.get(id);
         }
 
@@ -40,6 +67,9 @@ class Environment {
 
     public KnishObject set(int id, KnishObject value) {
         if (objects.containsKey(id)) {
+            if (initializers != null) {
+                initializers.remove(id);
+            }
             objects.put(id, value);
             return value;
         }
@@ -0,0 +1,451 @@
+package org.github.alexanderknop.jknish.interpreter;
+
+import org.github.alexanderknop.jknish.SourceHash;
+import org.github.alexanderknop.jknish.objects.KnishCore;
+import org.github.alexanderknop.jknish.objects.KnishObject;
+import org.github.alexanderknop.jknish.objects.KnishRuntimeException;
+import org.github.alexanderknop.jknish.objects.KnishWrappedObject;
+import org.github.alexanderknop.jknish.resolver.ResolvedStatement;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The state of a script after the top-level statement that reached the checkpoint:
+ * the top-level variables, the static fields of the top-level classes and the fields
+ * of all the instances reachable from them. The next run of the script restores the
+ * state and continues with the statement following the checkpoint.
+ * <p>
+ * Only nil, booleans, numbers, strings, the objects of the modules, the top-level classes
+ * and their instances can be saved. The snapshot is bound to the hash of the source;
+ * the snapshot of any other source is discarded when loaded.
+ */
+public final class HeapSnapshot {
+    private static final String HEADER = "knish-snapshot";
+    private static final int VERSION = 1;
+
+    private static final byte NIL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte NUM = 3;
+    private static final byte STRING = 4;
+    private static final byte GLOBAL = 5;
+    private static final byte CLASS = 6;
+    private static final byte INSTANCE = 7;
+
+    private final String sourceHash;
+
+    // the index of the top-level statement following the checkpoint, or -1 if the snapshot is empty
+    private int resumeIndex = -1;
+    private final List<Integer> instanceClasses = new ArrayList<>();
+    private final List<Map<Integer, Value>> instanceFields = new ArrayList<>();
+    private final Map<Integer, Map<Integer, Value>> staticFields = new TreeMap<>();
+    private final Map<Integer, Value> variables = new TreeMap<>();
+
+    private HeapSnapshot(String sourceHash) {
+        this.sourceHash = sourceHash;
+    }
+
+    public static HeapSnapshot empty(String source) {
+        return new HeapSnapshot(SourceHash.of(source));
+    }
+
+    /**
+     * Loads the snapshot of the source, if the file does not exist
+     * or contains a snapshot of another source, returns an empty snapshot.
+     */
+    public static HeapSnapshot load(Path path, String source) throws IOException {
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(path))) {
+            return read(new DataInputStream(input), source);
+        } catch (NoSuchFileException e) {
+            return empty(source);
+        }
+    }
+
+    public void save(Path path) throws IOException {
+        try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(path))) {
+            write(new DataOutputStream(output));
+        }
+    }
+
+    public boolean isEmpty() {
+        return resumeIndex < 0;
+    }
+
+    static HeapSnapshot read(DataInputStream input, String source) throws IOException {
+        HeapSnapshot result = empty(source);
+        try {
+            if (!HEADER.equals(input.readUTF()) || input.readInt() != VERSION ||
+                    !result.sourceHash.equals(input.readUTF())) {
+                return result;
+            }
+
+            int resumeIndex = input.readInt();
+            int instances = input.readInt();
+            for (int i = 0; i < instances; i++) {
+                result.instanceClasses.add(input.readInt());
+            }
+            for (int i = 0; i < instances; i++) {
+                result.instanceFields.add(readFields(input, instances));
+            }
+            int classes = input.readInt();
+            for (int i = 0; i < classes; i++) {
+                result.staticFields.put(input.readInt(), readFields(input, instances));
+            }
+            result.variables.putAll(readFields(input, instances));
+            if (resumeIndex < 0 || input.read() != -1) {
+                return empty(source);
+            }
+
+            result.resumeIndex = resumeIndex;
+            return result;
+        } catch (EOFException | IllegalArgumentException e) {
+            // the file is damaged, we cannot trust any of it
+            return empty(source);
+        }
+    }
+
+    void write(DataOutputStream output) throws IOException {
+        if (isEmpty()) {
+            throw new IllegalStateException("The snapshot is empty.");
+        }
+
+        output.writeUTF(HEADER);
+        output.writeInt(VERSION);
+        output.writeUTF(sourceHash);
+        output.writeInt(resumeIndex);
+        output.writeInt(instanceClasses.size());
+        for (int classId : instanceClasses) {
+            output.writeInt(classId);
+        }
+        for (Map<Integer, Value> fields : instanceFields) {
+            writeFields(output, fields);
+        }
+        output.writeInt(staticFields.size());
+        for (Map.Entry<Integer, Map<Integer, Value>> entry : staticFields.entrySet()) {
+            output.writeInt(entry.getKey());
+            writeFields(output, entry.getValue());
+        }
+        writeFields(output, variables);
+        output.flush();
+    }
+
+    /**
+     * Saves the state of the top-level block.
+     *
+     * @throws KnishRuntimeException if the state contains an object that cannot be saved.
+     */
+    void capture(Environment topLevel, ResolvedStatement.Block code,
+                 KnishObject[] constants, int resumeIndex) {
+        try {
+            new Capture(topLevel, code, constants).run();
+        } catch (KnishRuntimeException e) {
+            instanceClasses.clear();
+            instanceFields.clear();
+            staticFields.clear();
+            variables.clear();
+            throw e;
+        }
+        this.resumeIndex = resumeIndex;
+    }
+
+    /**
+     * Restores the state of the top-level block; a snapshot that refers to the variables, classes
+     * or globals the script does not have is damaged, so it is cleared and nothing is restored.
+     *
+     * @return the index of the top-level statement following the checkpoint.
+     */
+    int restore(Environment topLevel, ResolvedStatement.Block code, KnishObject[] constants) {
+        assert !isEmpty();
+
+        if (!matches(code, constants)) {
+            instanceClasses.clear();
+            instanceFields.clear();
+            staticFields.clear();
+            variables.clear();
+            resumeIndex = -1;
+            return 0;
+        }
+
+        List<Instance> instances = new ArrayList<>();
+        for (int classId : instanceClasses) {
+            instances.add(((ClassInstance) topLevel.get(classId)).allocate());
+        }
+
+        for (int i = 0; i < instances.size(); i++) {
+            Environment fields = instances.get(i).getFields();
+            instanceFields.get(i).forEach((id, value) ->
+                    fields.set(id, value.restore(topLevel, constants, instances)));
+        }
+        staticFields.forEach((classId, values) -> {
+            Environment statics = ((ClassInstance) topLevel.get(classId)).getStatics();
+            values.forEach((id, value) ->
+                    statics.set(id, value.restore(topLevel, constants, instances)));
+        });
+        variables.forEach((id, value) ->
+                topLevel.set(id, value.restore(topLevel, constants, instances)));
+
+        return resumeIndex;
+    }
+
+    private boolean matches(ResolvedStatement.Block code, KnishObject[] constants) {
+        if (resumeIndex > code.resolvedStatements.size()) {
+            return false;
+        }
+        for (int i = 0; i < instanceClasses.size(); i++) {
+            ResolvedStatement.Class klass = code.classes.get(instanceClasses.get(i));
+            if (klass == null || !matches(instanceFields.get(i), klass.fields.keySet(), code, constants)) {
+                return false;
+            }
+        }
+        for (Map.Entry<Integer, Map<Integer, Value>> entry : staticFields.entrySet()) {
+            ResolvedStatement.Class klass = code.classes.get(entry.getKey());
+            if (klass == null || !matches(entry.getValue(), klass.staticFields.keySet(), code, constants)) {
+                return false;
+            }
+        }
+        return variables.keySet().stream().noneMatch(code.classes::containsKey) &&
+                matches(variables, code.names.keySet(), code, constants);
+    }
+
+    private static boolean matches(Map<Integer, Value> fields, Set<Integer> ids,
+                                   ResolvedStatement.Block code, KnishObject[] constants) {
+        return ids.containsAll(fields.keySet()) &&
+                fields.values().stream().allMatch(value -> value.matches(code, constants));
+    }
+
+    private static Map<Integer, Value> readFields(DataInputStream input, int instances) throws IOException {
+        Map<Integer, Value> fields = new TreeMap<>();
+        int size = input.readInt();
+        for (int i = 0; i < size; i++) {
+            fields.put(input.readInt(), Value.read(input, instances));
+        }
+        return fields;
+    }
+
+    private static void writeFields(DataOutputStream output, Map<Integer, Value> fields) throws IOException {
+        output.writeInt(fields.size());
+        for (Map.Entry<Integer, Value> entry : fields.entrySet()) {
+            output.writeInt(entry.getKey());
+            entry.getValue().write(output);
+        }
+    }
+
+    private final class Capture {
+        private final Environment topLevel;
+        private final ResolvedStatement.Block code;
+        private final Map<KnishObject, Integer> globals = new IdentityHashMap<>();
+        private final Map<KnishObject, Integer> classes = new IdentityHashMap<>();
+        private final Map<ResolvedStatement.Class, Integer> classIds = new IdentityHashMap<>();
+        private final Map<Instance, Integer> instances = new IdentityHashMap<>();
+        private final Deque<Instance> unvisited = new ArrayDeque<>();
+
+        private Capture(Environment topLevel, ResolvedStatement.Block code, KnishObject[] constants) {
+            this.topLevel = topLevel;
+            this.code = code;
+
+            for (int id = 0; id < constants.length; id++) {
+                if (constants[id] != null) {
+                    globals.put(constants[id], id);
+                }
+            }
+
+            code.classes.forEach((classId, klass) -> {
+                classIds.put(klass, classId);
+                if (topLevel.isInitialized(classId)) {
+                    classes.put(topLevel.get(classId), classId);
+                }
+            });
+        }
+
+        private void run() {
+            code.names.keySet().stream()
+                    .filter(id -> !code.classes.containsKey(id))
+                    .forEach(id -> variables.put(id, capture(topLevel.get(id))));
+
+            classes.forEach((klass, classId) -> {
+                Environment statics = ((ClassInstance) klass).getStatics();
+                Map<Integer, Value> values = new TreeMap<>();
+                code.classes.get(classId).staticFields.keySet()
+                        .forEach(id -> values.put(id, capture(statics.get(id))));
+                staticFields.put(classId, values);
+            });
+
+            while (!unvisited.isEmpty()) {
+                Instance instance = unvisited.removeFirst();
+                Map<Integer, Value> values = new TreeMap<>();
+                instance.getKlass().fields.keySet()
+                        .forEach(id -> values.put(id, capture(instance.getFields().get(id))));
+                instanceFields.set(instances.get(instance), values);
+            }
+        }
+
+        private Value capture(KnishObject object) {
+            KnishCore core = KnishCore.core();
+            if (object == core.nil()) {
+                return new Value(NIL);
+            } else if (core.isBool(object)) {
+                return new Value(object == core.bool(true) ? TRUE : FALSE);
+            } else if (core.isNum(object)) {
+                return new Value(NUM).number(value(object));
+            } else if (core.isString(object)) {
+                return new Value(STRING).string(value(object));
+            } else if (globals.containsKey(object)) {
+                return new Value(GLOBAL).reference(globals.get(object));
+            } else if (classes.containsKey(object)) {
+                return new Value(CLASS).reference(classes.get(object));
+            } else if (object instanceof Instance &&
+                    classIds.containsKey(((Instance) object).getKlass())) {
+                Instance instance = (Instance) object;
+                Integer index = instances.get(instance);
+                if (index == null) {
+                    index = instances.size();
+                    instances.put(instance, index);
+                    instanceClasses.add(classIds.get(instance.getKlass()));
+                    instanceFields.add(null);
+                    unvisited.addLast(instance);
+                }
+                return new Value(INSTANCE).reference(index);
+            }
+            throw new KnishRuntimeException(
+                    "The state of the script cannot be saved, " +
+                            "it references an object that is neither a value " +
+                            "nor an instance of a top-level class.");
+        }
+
+        @SuppressWarnings("unchecked")
+        private <V> V value(KnishObject object) {
+            return ((KnishWrappedObject<V>) object).getValue();
+        }
+    }
+
+    private static final class Value {
+        private final byte tag;
+        private long number;
+        private String string;
+        private int reference;
+
+        private Value(byte tag) {
+            this.tag = tag;
+        }
+
+        private Value number(long number) {
+            this.number = number;
+            return this;
+        }
+
+        private Value string(String string) {
+            this.string = string;
+            return this;
+        }
+
+        private Value reference(int reference) {
+            this.reference = reference;
+            return this;
+        }
+
+        // the references to the globals and the classes are checked against the script
+        private boolean matches(ResolvedStatement.Block code, KnishObject[] constants) {
+            switch (tag) {
+                case GLOBAL:
+                    return reference >= 0 && reference < constants.length && constants[reference] != null;
+                case CLASS:
+                    return code.classes.containsKey(reference);
+                default:
+                    return true;
+            }
+        }
+
+        private KnishObject restore(Environment topLevel, KnishObject[] constants, List<Instance> instances) {
+            KnishCore core = KnishCore.core();
+            switch (tag) {
+                case NIL:
+                    return core.nil();
+                case TRUE:
+                    return core.bool(true);
+                case FALSE:
+                    return core.bool(false);
+                case NUM:
+                    return core.num(number);
+                case STRING:
+                    return core.str(string);
+                case GLOBAL:
+                    return constants[reference];
+                case CLASS:
+                    return topLevel.get(reference);
+                default:
+                    return instances.get(reference);
+            }
+        }
+
+        private static Value read(DataInputStream input, int instances) throws IOException {
+            byte tag = input.readByte();
+            switch (tag) {
+                case NIL:
+                case TRUE:
+                case FALSE:
+                    return new Value(tag);
+                case NUM:
+                    return new Value(tag).number(input.readLong());
+                case STRING:
+                    int length = input.readInt();
+                    if (length < 0) {
+                        throw new IllegalArgumentException("Negative length of a string.");
+                    }
+                    byte[] bytes = new byte[length];
+                    input.readFully(bytes);
+                    return new Value(tag).string(new String(bytes, StandardCharsets.UTF_8));
+                case GLOBAL:
+                case CLASS:
+                    return new Value(tag).reference(input.readInt());
+                case INSTANCE:
+                    int reference = input.readInt();
+                    if (reference < 0 || reference >= instances) {
+                        throw new IllegalArgumentException("Unknown instance " + reference + ".");
+                    }
+                    return new Value(tag).reference(reference);
+                default:
+                    throw new IllegalArgumentException("Unknown value " + tag + ".");
+            }
+        }
+
+        private void write(DataOutputStream output) throws IOException {
+            output.writeByte(tag);
+            switch (tag) {
+                case NUM:
+                    output.writeLong(number);
+                    break;
+                case STRING:
+                    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                    output.writeInt(bytes.length);
+                    output.write(bytes);
+                    break;
+                case GLOBAL:
+                case CLASS:
+                case INSTANCE:
+                    output.writeInt(reference);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.github.alexanderknop.jknish.interpreter;
+
+import java.util.function.Supplier;
+
+/**
+ * Counts the calls of a method or the iterations of a loop. Once the code
+ * becomes hot, it is handed to {@link BackgroundCompiler} and the interpreter
+ * switches to the compiled form as soon as it is ready.
+ */
+class HotnessCounter<T> {
+    static final int METHOD_THRESHOLD = 1000;
+    static final int LOOP_THRESHOLD = 1000;
+
+    private final int threshold;
+    private final Supplier<T> compiler;
+
+    private int count = 0;
+    private volatile T compiled = null;
+
+    HotnessCounter(int threshold, Supplier<T> compiler) {
+        this.threshold = threshold;
+        this.compiler = compiler;
+    }
+
+    /**
+     * @return the compiled form of the code or null if it is not ready yet.
+     */
+    T compiled() {
+        return compiled;
+    }
+
+    void tick() {
+        if (++count == threshold) {
+            BackgroundCompiler.submit(compiler, result -> compiled = result);
+        }
+    }
+}
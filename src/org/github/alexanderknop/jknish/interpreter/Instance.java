@@ -7,9 +7,12 @@ import org.github.alexanderknop.jknish.resolver.ResolvedStatement;
 import java.util.List;
 
 import static org.github.alexanderknop.jknish.interpreter.InterpreterMethodUtils.compileMethod;
+import static org.github.alexanderknop.jknish.interpreter.InterpreterMethodUtils.compileOnFirstCall;
 
 class Instance extends AbstractKnishObject {
     private final String name;
+    private final ResolvedStatement.Class klass;
+    private final Environment fields;
 
     public Instance(String name,
                     ResolvedStatement.Class klass,
@@ -18,20 +21,41 @@ class Instance extends AbstractKnishObject {
                     ResolvedStatement.Method constructor,
                     List<KnishObject> arguments,
                     KnishObject nilValue) {
+        this(name, klass, enclosing, evaluator, nilValue);
+
+        // call the constructor
+        compileMethod(constructor, fields, evaluator, nilValue).call(arguments);
+    }
+
+    /**
+     * Creates an instance without calling any constructor, all the fields are nil.
+     */
+    Instance(String name,
+             ResolvedStatement.Class klass,
+             Environment enclosing,
+             Interpreter.InterpreterVisitor evaluator,
+             KnishObject nilValue) {
         this.name = name;
+        this.klass = klass;
 
         // define an environment with all the fields
         Environment classEnvironment =
                 new Environment(enclosing, klass.fields.keySet());
         classEnvironment.set(klass.thisId, this);
+        this.fields = classEnvironment;
 
-        // register all the methods
+        // register all the methods, they are compiled when called for the first time
         klass.methods.forEach((methodId, method) ->
-                register(methodId,
-                        compileMethod(method, classEnvironment, evaluator, nilValue)));
+                register(methodId, compileOnFirstCall(
+                        () -> compileMethod(method, classEnvironment, evaluator, nilValue))));
+    }
 
-        // call the constructor
-        compileMethod(constructor, classEnvironment, evaluator, nilValue).call(arguments);
+    ResolvedStatement.Class getKlass() {
+        return klass;
+    }
+
+    Environment getFields() {
+        return fields;
     }
 
     @Override
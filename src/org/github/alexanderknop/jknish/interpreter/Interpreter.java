@@ -2,52 +2,118 @@ package org.github.alexanderknop.jknish.interpreter;
 
 import org.github.alexanderknop.jknish.KnishErrorReporter;
 import org.github.alexanderknop.jknish.objects.*;
+import org.github.alexanderknop.jknish.parser.LogicalOperator;
 import org.github.alexanderknop.jknish.resolver.ResolvedExpression;
 import org.github.alexanderknop.jknish.resolver.ResolvedScript;
 import org.github.alexanderknop.jknish.resolver.ResolvedStatement;
 
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import static org.github.alexanderknop.jknish.parser.MethodId.processArgumentsList;
 
 public final class Interpreter {
     public static void interpret(ResolvedScript script, KnishErrorReporter reporter, KnishModule... modules) {
-        Environment globals = createEnvironment(script.globals, modules);
+        interpret(script, reporter, null, modules);
+    }
+
+    /**
+     * Interprets the script starting the call sites in the state recorded in the profiles
+     * and records the new state of the call sites in the profiles when the script finishes.
+     */
+    public static void interpret(ResolvedScript script, KnishErrorReporter reporter,
+                                 CallSiteProfiles profiles, KnishModule... modules) {
+        interpret(script, reporter, profiles, new RuntimeContext(modules));
+    }
+
+    /**
+     * Interprets the script with the objects of the given context; see
+     * {@link #interpret(ResolvedScript, KnishErrorReporter, CallSiteProfiles, KnishModule...)}
+     * for the meaning of the profiles.
+     */
+    public static void interpret(ResolvedScript script, KnishErrorReporter reporter,
+                                 CallSiteProfiles profiles, RuntimeContext context) {
+        interpret(script, reporter, profiles, context, null, null);
+    }
 
-        InterpreterVisitor interpreterVisitor = new InterpreterVisitor();
+    /**
+     * Interprets the script with the objects of the given context; if the snapshot is not empty,
+     * the script continues from the state in the snapshot, otherwise the state of the script
+     * is saved in the snapshot when the checkpoint is reached for the first time.
+     */
+    public static void interpret(ResolvedScript script, KnishErrorReporter reporter,
+                                 CallSiteProfiles profiles, RuntimeContext context,
+                                 Checkpoint checkpoint, HeapSnapshot snapshot) {
+        Environment globals = context.createEnvironment(script);
+        KnishObject[] constants = context.linkGlobals(script);
+
+        InterpreterVisitor interpreterVisitor = new InterpreterVisitor(constants, profiles);
+        if (checkpoint != null) {
+            checkpoint.reset();
+        }
 
         try {
-            interpreterVisitor.interpret(globals, script.code);
+            // the top-level block is executed statement by statement,
+            // since the checkpoint is taken between top-level statements
+            Environment topLevel = interpreterVisitor.enterBlock(globals, script.code);
+            List<ResolvedStatement> statements = script.code.resolvedStatements;
+
+            int next = 0;
+            if (snapshot != null && !snapshot.isEmpty()) {
+                next = snapshot.restore(topLevel, script.code, constants);
+            }
+            for (; next < statements.size(); next++) {
+                ResolvedStatement statement = statements.get(next);
+                interpreterVisitor.execute(topLevel, statement);
+
+                if (checkpoint != null && checkpoint.takeReached() &&
+                        snapshot != null && snapshot.isEmpty()) {
+                    try {
+                        snapshot.capture(topLevel, script.code, constants, next + 1);
+                    } catch (KnishRuntimeException e) {
+                        throw new RuntimeExceptionWithLine(statement.line, e);
+                    }
+                }
+            }
         } catch (RuntimeExceptionWithLine e) {
             reporter.error(e.getLine(), e.getMessage());
+        } finally {
+            interpreterVisitor.recordProfiles();
         }
     }
 
-    private static Environment createEnvironment(Map<Integer, String> globalsIds, KnishModule... modules) {
-        Environment globals = new Environment(globalsIds.keySet());
-
-        Map<String, KnishObject> objects = new HashMap<>();
-
-        KnishCore.core().getObjects().forEach(objects::put);
-        Arrays.stream(modules).map(KnishModule::getObjects).forEach(objects::putAll);
-        globalsIds.forEach((id, name) -> globals.set(id, objects.get(name)));
-
-        return globals;
-    }
-
     private Interpreter() {
 
     }
 
+    /**
+     * The state of a single execution of a script; every execution creates its own visitor,
+     * so the visitor and everything it creates are confined to the thread of the execution.
+     */
     static final class InterpreterVisitor implements
             ResolvedExpression.Visitor<KnishObject>, ResolvedStatement.Visitor<Void> {
 
         private Environment environment;
 
-        private InterpreterVisitor() {
+        private final KnishObject[] constants;
+        private final CallSiteProfiles profiles;
+        private final Map<ResolvedExpression.Call, CallSite> callSites = new IdentityHashMap<>();
+        private final Map<ResolvedStatement.Method, HotnessCounter<ClosureCompiler.Expression>> methods =
+                new IdentityHashMap<>();
+        private final Map<ResolvedStatement.While, HotnessCounter<ClosureCompiler.Statement>> loops =
+                new IdentityHashMap<>();
+
+        private InterpreterVisitor(KnishObject[] constants, CallSiteProfiles profiles) {
+            this.constants = constants;
+            this.profiles = profiles;
+        }
+
+        private void recordProfiles() {
+            if (profiles != null) {
+                callSites.values().forEach(callSite -> callSite.record(profiles));
+            }
         }
 
         void interpret(Environment enclosing, ResolvedStatement.Block block) {
@@ -60,6 +126,26 @@ public final class Interpreter {
             }
         }
 
+        void execute(Environment enclosing, ResolvedStatement statement) {
+            Environment previous = environment;
+            this.environment = enclosing;
+            try {
+                execute(statement);
+            } finally {
+                environment = previous;
+            }
+        }
+
+        KnishObject evaluate(Environment enclosing, ResolvedExpression expression) {
+            Environment previous = environment;
+            this.environment = enclosing;
+            try {
+                return evaluate(expression);
+            } finally {
+                environment = previous;
+            }
+        }
+
         private void execute(ResolvedStatement statement) {
             if (statement != null) {
                 statement.accept(this);
@@ -70,6 +156,30 @@ public final class Interpreter {
             return expression.accept(this);
         }
 
+        KnishObject constant(int variableId) {
+            return variableId < constants.length ? constants[variableId] : null;
+        }
+
+        CallSite callSite(ResolvedExpression.Call call) {
+            CallSite callSite = callSites.get(call);
+            if (callSite == null) {
+                boolean constantReceiver = call.object instanceof ResolvedExpression.Variable &&
+                        constant(((ResolvedExpression.Variable) call.object).variableId) != null;
+                callSite = new CallSite(call, constantReceiver);
+                if (profiles != null) {
+                    callSite.warmUp(profiles);
+                }
+                callSites.put(call, callSite);
+            }
+            return callSite;
+        }
+
+        HotnessCounter<ClosureCompiler.Expression> methodCounter(ResolvedStatement.Method method) {
+            return methods.computeIfAbsent(method,
+                    hotMethod -> new HotnessCounter<>(HotnessCounter.METHOD_THRESHOLD,
+                            () -> ClosureCompiler.compile(hotMethod, this)));
+        }
+
         @Override
         public KnishObject visitAssignExpression(ResolvedExpression.Assign assign) {
             return environment.set(assign.variableId, evaluate(assign.value));
@@ -81,8 +191,13 @@ public final class Interpreter {
             List<KnishObject> arguments =
                     processArgumentsList(call.arguments, this::evaluate);
 
+            return call(call, callSite(call), object, arguments);
+        }
+
+        static KnishObject call(ResolvedExpression.Call call, CallSite callSite,
+                                KnishObject object, List<KnishObject> arguments) {
             try {
-                return object.call(call.method, arguments);
+                return callSite.call(object, arguments);
             } catch (RuntimeExceptionWithLine e) {
                 // this is fine if we got a runtime error thrown by Knish
                 throw e;
@@ -98,41 +213,53 @@ public final class Interpreter {
 
         @Override
         public KnishObject visitLiteralExpression(ResolvedExpression.Literal literal) {
-            if (literal.value == null) {
+            return literal(literal.value);
+        }
+
+        static KnishObject literal(Object value) {
+            if (value == null) {
                 return KnishCore.core().nil();
             }
 
-            if (literal.value instanceof Boolean) {
-                return KnishCore.core().bool((Boolean) literal.value);
+            if (value instanceof Boolean) {
+                return KnishCore.core().bool((Boolean) value);
             }
 
-            if (literal.value instanceof String) {
-                return KnishCore.core().str((String) literal.value);
+            if (value instanceof String) {
+                return KnishCore.core().str((String) value);
             }
 
-            if (literal.value instanceof Long) {
-                return KnishCore.core().num((Long) literal.value);
+            if (value instanceof Long) {
+                return KnishCore.core().num((Long) value);
             }
 
-            throw new UnsupportedOperationException("Unknown type of literal " + literal.value);
+            throw new UnsupportedOperationException("Unknown type of literal " + value);
         }
 
         @Override
         public KnishObject visitVariableExpression(ResolvedExpression.Variable variable) {
+            KnishObject constant = constant(variable.variableId);
+            if (constant != null) {
+                return constant;
+            }
             return environment.get(variable.variableId);
         }
 
         @Override
         public KnishObject visitLogicalExpression(ResolvedExpression.Logical logical) {
-            KnishObject left = evaluate(logical.left);
+            return logical(logical.operator, evaluate(logical.left), () -> evaluate(logical.right));
+        }
+
+        static KnishObject logical(LogicalOperator operator,
+                                   KnishObject left, Supplier<KnishObject> rightEvaluator) {
             boolean leftValue = KnishWrappedObject.unwrap(
                     left, Boolean.class,
                     "Left operand must be a wrapped Boolean.");
 
-            return switch (logical.operator) {
+            return switch (operator) {
                 case AND -> {
                     if (leftValue) {
-                        KnishObject right = evaluate(logical.right);
+                        KnishObject right = rightEvaluator.get();
                         KnishWrappedObject.unwrap(
                                 right, Boolean.class,
                                 "Right operand must be a wrapped Boolean.");
@@ -142,7 +269,7 @@ public final class Interpreter {
                 }
                 case OR -> {
                     if (!leftValue) {
-                        KnishObject right = evaluate(logical.right);
+                        KnishObject right = rightEvaluator.get();
                         KnishWrappedObject.unwrap(
                                 right, Boolean.class,
                                 "Right operand must be a wrapped Boolean.");
@@ -161,67 +288,73 @@ public final class Interpreter {
 
         @Override
         public Void visitorIfStatement(ResolvedStatement.If anIf) {
-            KnishObject conditionValue = evaluate(anIf.condition);
+            if (ifCondition(anIf.line, evaluate(anIf.condition))) {
+                execute(anIf.thenBranch);
+            } else {
+                execute(anIf.elseBranch);
+            }
+            return null;
+        }
 
+        static boolean ifCondition(int line, KnishObject conditionValue) {
             if (conditionValue == KnishCore.core().nil()) {
-                throw new RuntimeExceptionWithLine(anIf.line,
+                throw new RuntimeExceptionWithLine(line,
                         "If condition cannot be nil.");
             }
 
             try {
-                boolean value = KnishWrappedObject.unwrap(
+                return KnishWrappedObject.unwrap(
                         conditionValue, Boolean.class,
                         "Condition must be a wrapped Boolean."
                 );
-
-                if (value) {
-                    execute(anIf.thenBranch);
-                } else {
-                    execute(anIf.elseBranch);
-                }
-                return null;
             } catch (KnishRuntimeException e) {
-                throw new RuntimeExceptionWithLine(anIf.line, e.getMessage());
+                throw new RuntimeExceptionWithLine(line, e.getMessage());
             }
         }
 
         @Override
         public Void visitWhileStatement(ResolvedStatement.While aWhile) {
+            HotnessCounter<ClosureCompiler.Statement> counter = loops.computeIfAbsent(aWhile,
+                    loop -> new HotnessCounter<>(HotnessCounter.LOOP_THRESHOLD,
+                            () -> ClosureCompiler.compile(loop, this)));
+
             while (true) {
-                KnishObject conditionValue = evaluate(aWhile.condition);
-                if (conditionValue == KnishCore.core().nil()) {
-                    throw new RuntimeExceptionWithLine(aWhile.line,
-                            "While condition cannot be nil.");
-                } else if (conditionValue instanceof KnishWrappedObject<?> &&
-                        ((KnishWrappedObject<?>) conditionValue).getValue() instanceof Boolean) {
-                    if (conditionValue == KnishCore.core().bool(true)) {
-                        execute(aWhile.body);
-                    } else {
-                        break;
-                    }
+                // the loop header is the point where we switch to the compiled loop
+                ClosureCompiler.Statement compiled = counter.compiled();
+                if (compiled != null) {
+                    compiled.execute(environment);
+                    break;
+                }
+
+                if (whileCondition(aWhile.line, evaluate(aWhile.condition))) {
+                    execute(aWhile.body);
+                    counter.tick();
                 } else {
-                    throw new RuntimeExceptionWithLine(aWhile.line,
-                            "Condition must be a wrapped Boolean.");
+                    break;
                 }
             }
 
             return null;
         }
 
+        static boolean whileCondition(int line, KnishObject conditionValue) {
+            if (conditionValue == KnishCore.core().nil()) {
+                throw new RuntimeExceptionWithLine(line,
+                        "While condition cannot be nil.");
+            } else if (conditionValue instanceof KnishWrappedObject<?> &&
+                    ((KnishWrappedObject<?>) conditionValue).getValue() instanceof Boolean) {
+                return conditionValue == KnishCore.core().bool(true);
+            } else {
+                throw new RuntimeExceptionWithLine(line,
+                        "Condition must be a wrapped Boolean.");
+            }
+        }
+
         @Override
         public Void visitBlockStatement(ResolvedStatement.Block block) {
             Environment previous = environment;
-            environment = new Environment(environment, block.names.keySet());
-            block.classes.forEach((classId, klass) ->
-                    environment.set(
-                            classId,
-                            new ClassInstance(
-                                    block.names.get(classId),
-                                    klass, environment, this,
-                                    KnishCore.core().nil()
-                            )
-                    )
-            );
+            Environment blockEnvironment = enterBlock(environment, block);
+            environment = blockEnvironment;
 
             try {
                 for (ResolvedStatement statement : block.resolvedStatements) {
@@ -234,6 +367,22 @@ public final class Interpreter {
             return null;
         }
 
+        Environment enterBlock(Environment enclosing, ResolvedStatement.Block block) {
+            Environment blockEnvironment = new Environment(enclosing, block.names.keySet());
+            // class objects are created when they are referenced for the first time
+            block.classes.forEach((classId, klass) ->
+                    blockEnvironment.setLazily(
+                            classId,
+                            () -> new ClassInstance(
+                                    block.names.get(classId),
+                                    klass, blockEnvironment, this,
+                                    KnishCore.core().nil()
+                            )
+                    )
+            );
+            return blockEnvironment;
+        }
+
         @Override
         public Void visitReturnStatement(ResolvedStatement.Return aReturn) {
             KnishObject value = KnishCore.core().nil();
@@ -2,9 +2,12 @@ package org.github.alexanderknop.jknish.interpreter;
 
 import org.github.alexanderknop.jknish.objects.AbstractKnishObject;
 import org.github.alexanderknop.jknish.objects.KnishObject;
+import org.github.alexanderknop.jknish.resolver.ResolvedExpression;
 import org.github.alexanderknop.jknish.resolver.ResolvedStatement;
 
 import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
 import java.util.stream.IntStream;
 
 public class InterpreterMethodUtils {
@@ -12,26 +15,153 @@ public class InterpreterMethodUtils {
                                                     Environment enclosing,
                                                     Interpreter.InterpreterVisitor evaluator,
                                                     KnishObject nilValue) {
+        AbstractKnishObject.Method compiled = compileMethodBody(method, enclosing, evaluator, nilValue);
+        // the purity of memoized methods is guaranteed by PurityChecker
+        return method.memoized ? new MemoizedMethod(compiled) : compiled;
+    }
+
+    private static AbstractKnishObject.Method compileMethodBody(ResolvedStatement.Method method,
+                                                                Environment enclosing,
+                                                                Interpreter.InterpreterVisitor evaluator,
+                                                                KnishObject nilValue) {
+        // trivial accessors are compiled into direct accesses of the variable
+        Integer getterVariable = getterVariable(method);
+        if (getterVariable != null) {
+            return arguments -> enclosing.get(getterVariable);
+        }
+
+        Integer setterVariable = setterVariable(method);
+        if (setterVariable != null) {
+            return arguments -> {
+                enclosing.set(setterVariable, arguments.get(0));
+                return nilValue;
+            };
+        }
+
+        // hot methods are compiled in the background, the counter is shared by all the instances
+        HotnessCounter<ClosureCompiler.Expression> counter = evaluator.methodCounter(method);
+
+        // a body consisting of a single return statement is evaluated
+        // without entering a block and without throwing Return
+        ResolvedExpression returnedExpression = returnedExpression(method);
+
         return arguments -> {
-            // CHECK ARITY
-            Environment withParameters = new Environment(enclosing,
-                    method.argumentsIds == null ? Collections.emptyList() : method.argumentsIds);
-            if (arguments != null) {
-                assert method.argumentsIds != null;
-                assert method.argumentsIds.size() == arguments.size();
-                IntStream.range(0, arguments.size())
-                        .forEach(i ->
-                                withParameters.set(
-                                        method.argumentsIds.get(i),
-                                        arguments.get(i))
-                        );
+            Environment withParameters = bindArguments(method, enclosing, arguments);
+
+            ClosureCompiler.Expression compiled = counter.compiled();
+            if (compiled != null) {
+                return compiled.evaluate(withParameters);
             }
+            counter.tick();
+
+            if (returnedExpression != null) {
+                return evaluator.evaluate(withParameters, returnedExpression);
+            }
+
             try {
-                evaluator.interpret(withParameters, method.body);
+                evaluator.interpret(withParameters, method.body());
             } catch (Return aReturn) {
                 return aReturn.value;
             }
             return nilValue;
         };
     }
+
+    static AbstractKnishObject.Method compileOnFirstCall(Supplier<AbstractKnishObject.Method> compiler) {
+        return new AbstractKnishObject.Method() {
+            private AbstractKnishObject.Method compiled = null;
+
+            @Override
+            public KnishObject call(List<KnishObject> arguments) {
+                if (compiled == null) {
+                    compiled = compiler.get();
+                }
+                return compiled.call(arguments);
+            }
+        };
+    }
+
+    /**
+     * @return the id of the variable returned by a getter of the form
+     * {@code name { return _field; }}, or null if the method has any other shape.
+     */
+    static Integer getterVariable(ResolvedStatement.Method method) {
+        if (method.argumentsIds != null) {
+            return null;
+        }
+
+        ResolvedExpression value = returnedExpression(method);
+        if (value instanceof ResolvedExpression.Variable) {
+            return ((ResolvedExpression.Variable) value).variableId;
+        }
+        return null;
+    }
+
+    /**
+     * @return the id of the variable assigned by a setter of the form
+     * {@code name=(value) { _field = value; }}, or null if the method has any other shape.
+     */
+    static Integer setterVariable(ResolvedStatement.Method method) {
+        if (method.argumentsIds == null || method.argumentsIds.size() != 1 ||
+                !isSimpleBlock(method.body())) {
+            return null;
+        }
+
+        ResolvedStatement statement = method.body().resolvedStatements.get(0);
+        if (!(statement instanceof ResolvedStatement.Expression)) {
+            return null;
+        }
+
+        ResolvedExpression expression = ((ResolvedStatement.Expression) statement).resolvedExpression;
+        if (!(expression instanceof ResolvedExpression.Assign)) {
+            return null;
+        }
+
+        ResolvedExpression.Assign assign = (ResolvedExpression.Assign) expression;
+        int argumentId = method.argumentsIds.get(0);
+        if (assign.variableId != argumentId &&
+                assign.value instanceof ResolvedExpression.Variable &&
+                ((ResolvedExpression.Variable) assign.value).variableId == argumentId) {
+            return assign.variableId;
+        }
+        return null;
+    }
+
+    static ResolvedExpression returnedExpression(ResolvedStatement.Method method) {
+        if (!isSimpleBlock(method.body())) {
+            return null;
+        }
+
+        ResolvedStatement statement = method.body().resolvedStatements.get(0);
+        if (statement instanceof ResolvedStatement.Return) {
+            return ((ResolvedStatement.Return) statement).value;
+        }
+        return null;
+    }
+
+    // a block with a single statement that neither declares variables nor classes
+    private static boolean isSimpleBlock(ResolvedStatement.Block block) {
+        return block.resolvedStatements.size() == 1 &&
+                block.names.isEmpty() &&
+                block.classes.isEmpty();
+    }
+
+    private static Environment bindArguments(ResolvedStatement.Method method,
+                                             Environment enclosing,
+                                             List<KnishObject> arguments) {
+        // CHECK ARITY
+        Environment withParameters = new Environment(enclosing,
+                method.argumentsIds == null ? Collections.emptyList() : method.argumentsIds);
+        if (arguments != null) {
+            assert method.argumentsIds != null;
+            assert method.argumentsIds.size() == arguments.size();
+            IntStream.range(0, arguments.size())
+                    .forEach(i ->
+                            withParameters.set(
+                                    method.argumentsIds.get(i),
+                                    arguments.get(i))
+                    );
+        }
+        return withParameters;
+    }
 }
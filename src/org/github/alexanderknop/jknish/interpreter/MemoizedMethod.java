@@ -0,0 +1,81 @@
+package org.github.alexanderknop.jknish.interpreter;
+
+import org.github.alexanderknop.jknish.objects.AbstractKnishObject;
+import org.github.alexanderknop.jknish.objects.KnishObject;
+import org.github.alexanderknop.jknish.objects.KnishWrappedObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pure method which remembers the results of the last
+ * {@value CACHE_SIZE} calls; numbers and strings are compared by value,
+ * all the other arguments are compared by identity.
+ */
+class MemoizedMethod implements AbstractKnishObject.Method {
+    static final int CACHE_SIZE = 1024;
+
+    private final AbstractKnishObject.Method method;
+    private final Map<List<Object>, KnishObject> cache =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Object>, KnishObject> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    MemoizedMethod(AbstractKnishObject.Method method) {
+        this.method = method;
+    }
+
+    @Override
+    public KnishObject call(List<KnishObject> arguments) {
+        List<Object> key = key(arguments);
+        KnishObject value = cache.get(key);
+        if (value == null) {
+            value = method.call(arguments);
+            cache.put(key, value);
+        }
+        return value;
+    }
+
+    private static List<Object> key(List<KnishObject> arguments) {
+        List<Object> key = new ArrayList<>();
+        if (arguments != null) {
+            for (KnishObject argument : arguments) {
+                key.add(argumentKey(argument));
+            }
+        }
+        return key;
+    }
+
+    private static Object argumentKey(KnishObject argument) {
+        if (argument instanceof KnishWrappedObject<?>) {
+            Object value = ((KnishWrappedObject<?>) argument).getValue();
+            if (value instanceof Long || value instanceof String) {
+                return value;
+            }
+        }
+        return new IdentityKey(argument);
+    }
+
+    private static final class IdentityKey {
+        private final KnishObject object;
+
+        private IdentityKey(KnishObject object) {
+            this.object = object;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IdentityKey && ((IdentityKey) o).object == object;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(object);
+        }
+    }
+}
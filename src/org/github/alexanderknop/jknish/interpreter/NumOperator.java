@@ -0,0 +1,104 @@
+package org.github.alexanderknop.jknish.interpreter;
+
+import org.github.alexanderknop.jknish.objects.KnishCore;
+import org.github.alexanderknop.jknish.objects.KnishObject;
+import org.github.alexanderknop.jknish.parser.MethodId;
+
+/**
+ * Primitive implementations of the methods of Num; they must behave
+ * exactly as the methods defined in {@link KnishCore}.
+ */
+enum NumOperator {
+    PLUS("+", 1) {
+        @Override
+        KnishObject apply(long left, long right) {
+            return KnishCore.core().num(left + right);
+        }
+    },
+    MINUS("-", 1) {
+        @Override
+        KnishObject apply(long left, long right) {
+            return KnishCore.core().num(left - right);
+        }
+    },
+    STAR("*", 1) {
+        @Override
+        KnishObject apply(long left, long right) {
+            return KnishCore.core().num(left * right);
+        }
+    },
+    SLASH("/", 1) {
+        @Override
+        KnishObject apply(long left, long right) {
+            return KnishCore.core().num(left / right);
+        }
+    },
+    PERCENT("%", 1) {
+        @Override
+        KnishObject apply(long left, long right) {
+            return KnishCore.core().num(left % right);
+        }
+    },
+    LESS("<", 1) {
+        @Override
+        KnishObject apply(long left, long right) {
+            return KnishCore.core().bool(left < right);
+        }
+    },
+    LESS_EQUAL("<=", 1) {
+        @Override
+        KnishObject apply(long left, long right) {
+            return KnishCore.core().bool(left <= right);
+        }
+    },
+    GREATER(">", 1) {
+        @Override
+        KnishObject apply(long left, long right) {
+            return KnishCore.core().bool(left > right);
+        }
+    },
+    GREATER_EQUAL(">=", 1) {
+        @Override
+        KnishObject apply(long left, long right) {
+            return KnishCore.core().bool(left >= right);
+        }
+    },
+    EQUAL_EQUAL("==", 1) {
+        @Override
+        KnishObject apply(long left, long right) {
+            return KnishCore.core().bool(left == right);
+        }
+    },
+    BANG_EQUAL("!=", 1) {
+        @Override
+        KnishObject apply(long left, long right) {
+            return KnishCore.core().bool(left != right);
+        }
+    },
+    NEGATE("-", null) {
+        @Override
+        KnishObject apply(long left, long right) {
+            return KnishCore.core().num(-left);
+        }
+    };
+
+    private final MethodId methodId;
+
+    NumOperator(String name, Integer arity) {
+        this.methodId = new MethodId(name, arity);
+    }
+
+    /**
+     * @param right the value of the argument; it is ignored by unary operators.
+     */
+    abstract KnishObject apply(long left, long right);
+
+    static NumOperator fromMethodId(MethodId methodId) {
+        for (NumOperator operator : values()) {
+            if (operator.methodId.equals(methodId)) {
+                return operator;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,30 @@
+package org.github.alexanderknop.jknish.interpreter;
+
+import org.github.alexanderknop.jknish.objects.KnishCore;
+import org.github.alexanderknop.jknish.objects.KnishObject;
+
+/**
+ * Kinds of values observed by call sites; a set of them is stored as a bit mask.
+ */
+enum OperandType {
+    NUM, STRING, BOOL, NIL, INSTANCE, OTHER;
+
+    final int mask = 1 << ordinal();
+
+    static OperandType of(KnishObject object) {
+        KnishCore core = KnishCore.core();
+        if (core.isNum(object)) {
+            return NUM;
+        } else if (core.isString(object)) {
+            return STRING;
+        } else if (core.isBool(object)) {
+            return BOOL;
+        } else if (object == core.nil()) {
+            return NIL;
+        } else if (object instanceof Instance) {
+            return INSTANCE;
+        } else {
+            return OTHER;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.github.alexanderknop.jknish.interpreter;
+
+import org.github.alexanderknop.jknish.objects.KnishCore;
+import org.github.alexanderknop.jknish.objects.KnishModule;
+import org.github.alexanderknop.jknish.objects.KnishObject;
+import org.github.alexanderknop.jknish.resolver.ResolvedScript;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * The objects of the modules visible to scripts, collected once and reused by
+ * any number of executions; the globals of every script are linked to the objects
+ * only the first time the script is executed in the context.
+ * <p>
+ * A context may be used by a single execution at a time.
+ */
+public final class RuntimeContext {
+    private final Map<String, KnishObject> objects;
+    // the scripts are compared by identity, their equality compares the whole trees
+    private final Map<ScriptKey, KnishObject[]> linkedGlobals = new HashMap<>();
+    private final ReferenceQueue<ResolvedScript> collectedScripts = new ReferenceQueue<>();
+
+    public RuntimeContext(KnishModule... modules) {
+        Map<String, KnishObject> objects = new HashMap<>(KnishCore.core().getObjects());
+        Arrays.stream(modules).map(KnishModule::getObjects).forEach(objects::putAll);
+        this.objects = unmodifiableMap(objects);
+    }
+
+    Environment createEnvironment(ResolvedScript script) {
+        Environment globals = new Environment(script.globals.keySet());
+        script.globals.forEach((id, name) -> globals.set(id, objects.get(name)));
+        return globals;
+    }
+
+    // globals cannot be reassigned, so we bind them to the objects of the modules
+    // and read them without looking them up in the chain of environments
+    KnishObject[] linkGlobals(ResolvedScript script) {
+        for (Reference<? extends ResolvedScript> collected = collectedScripts.poll(); collected != null;
+             collected = collectedScripts.poll()) {
+            linkedGlobals.remove(collected);
+        }
+
+        return linkedGlobals.computeIfAbsent(new ScriptKey(script, collectedScripts), key -> {
+            int size = script.globals.keySet().stream().mapToInt(id -> id + 1).max().orElse(0);
+            KnishObject[] constants = new KnishObject[size];
+            script.globals.forEach((id, name) -> constants[id] = objects.get(name));
+            return constants;
+        });
+    }
+
+    // a weak reference to a script, equal to the references to the same script
+    private static final class ScriptKey extends WeakReference<ResolvedScript> {
+        private final int hash;
+
+        private ScriptKey(ResolvedScript script, ReferenceQueue<ResolvedScript> queue) {
+            super(script, queue);
+            this.hash = System.identityHashCode(script);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ScriptKey)) return false;
+            ResolvedScript script = get();
+            return script != null && script == ((ScriptKey) o).get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
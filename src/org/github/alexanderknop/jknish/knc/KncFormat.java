@@ -0,0 +1,91 @@
+package org.github.alexanderknop.jknish.knc;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The layout of a .knc file:
+ * <pre>
+ * header    magic, format version, size and CRC32 of the part checked when the file is read
+ * strings   all the names and string literals
+ * constants the values of all the literals
+ * globals   the ids and the names of the global objects
+ * methods   the signatures of all the methods, the offsets of their bodies in the code and their CRC32
+ * classes   the fields of all the classes and the indices of their methods
+ * script    the offset of the top level block in the code
+ * code      the statements and the expressions in prefix order
+ * </pre>
+ * Integers are written in LEB128, except for the header, the checksums of the methods
+ * and the values of number literals.
+ * <p>
+ * The top level block is written first and the bodies of the methods follow it in the order
+ * of the methods. The part after the header up to the end of the top level block is checked
+ * when the file is read; the body of a method is checked when it is decoded, so the bodies
+ * of the methods that are never called are never read.
+ */
+final class KncFormat {
+    static final int MAGIC = 0x4B4E4300;
+    static final int VERSION = 2;
+    // changes when the front end starts to produce different scripts for the same source while
+    // the layout stays the same, so the scripts compiled by the older front ends are not reused
+    static final int REVISION = 1;
+    static final int HEADER_SIZE = 16;
+
+    // a missing statement or expression, e.g. the else branch of an if statement
+    static final byte ABSENT = 0;
+
+    static final byte EXPRESSION_STATEMENT = 1;
+    static final byte IF_STATEMENT = 2;
+    static final byte WHILE_STATEMENT = 3;
+    static final byte BLOCK_STATEMENT = 4;
+    static final byte RETURN_STATEMENT = 5;
+
+    static final byte ASSIGN_EXPRESSION = 16;
+    static final byte CALL_EXPRESSION = 17;
+    static final byte LITERAL_EXPRESSION = 18;
+    static final byte VARIABLE_EXPRESSION = 19;
+    static final byte LOGICAL_EXPRESSION = 20;
+
+    static final byte NIL_CONSTANT = 0;
+    static final byte BOOLEAN_CONSTANT = 1;
+    static final byte NUM_CONSTANT = 2;
+    static final byte STRING_CONSTANT = 3;
+
+    static void writeUnsigned(ByteArrayOutputStream output, int value) {
+        assert value >= 0;
+        while ((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    static int readUnsigned(ByteBuffer input) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 28) {
+                throw new IllegalStateException("Malformed integer.");
+            }
+            b = input.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    // null is written as 0, so the optional values are shifted by one
+    static void writeOptional(ByteArrayOutputStream output, Integer value) {
+        writeUnsigned(output, value == null ? 0 : value + 1);
+    }
+
+    static Integer readOptional(ByteBuffer input) {
+        int value = readUnsigned(input);
+        return value == 0 ? null : value - 1;
+    }
+
+    private KncFormat() {
+
+    }
+}
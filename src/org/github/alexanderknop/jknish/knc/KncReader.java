@@ -0,0 +1,318 @@
+package org.github.alexanderknop.jknish.knc;
+
+import org.github.alexanderknop.jknish.parser.LogicalOperator;
+import org.github.alexanderknop.jknish.parser.MethodId;
+import org.github.alexanderknop.jknish.resolver.ResolvedExpression;
+import org.github.alexanderknop.jknish.resolver.ResolvedScript;
+import org.github.alexanderknop.jknish.resolver.ResolvedStatement;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static org.github.alexanderknop.jknish.knc.KncFormat.*;
+
+/**
+ * Reads a script in the .knc format described in {@link KncFormat}. The tables
+ * and the top level code are checked and decoded when the script is read, the body
+ * of a method is checked and decoded only when it is accessed for the first time;
+ * a body that turns out to be damaged then throws {@link IllegalStateException}.
+ * <p>
+ * The decoded script can be shared by several threads: every decoder reads
+ * the file through its own view of the buffer.
+ */
+public final class KncReader {
+    private final ByteBuffer file;
+    private final int codeStart;
+    private final int codeSize;
+    // the offsets of the bodies of the methods in the code and their checksums
+    private final int[] methodOffsets;
+    private final int[] methodChecksums;
+    // true if the bodies of the methods were checked when the file was read
+    private final boolean verified;
+    private final String[] strings;
+    private final Object[] constants;
+    private final ResolvedStatement.Method[] methods;
+    private final ResolvedStatement.Class[] classes;
+    private final Map<Integer, String> globals;
+    private final int scriptOffset;
+
+    /**
+     * Maps the file into memory and reads the script from it.
+     */
+    public static ResolvedScript read(Path path) throws IOException {
+        return read(path, false);
+    }
+
+    /**
+     * Maps the file into memory and reads the script from it.
+     *
+     * @param verified true if the bodies of all the methods are checked before the script is returned,
+     *                 so that the script never fails because of a damaged file; the bodies are still
+     *                 decoded only when they are accessed, but every page of the file is read.
+     */
+    public static ResolvedScript read(Path path, boolean verified) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), verified);
+        }
+    }
+
+    public static ResolvedScript read(ByteBuffer buffer) throws IOException {
+        return read(buffer, false);
+    }
+
+    public static ResolvedScript read(ByteBuffer buffer, boolean verified) throws IOException {
+        ByteBuffer file = buffer.asReadOnlyBuffer();
+        if (file.remaining() < HEADER_SIZE || file.getInt() != MAGIC) {
+            throw new IOException("Not a .knc file.");
+        }
+        if (file.getInt() != VERSION) {
+            throw new IOException("Unsupported version of the .knc format.");
+        }
+
+        int checkedSize = file.getInt();
+        int crcValue = file.getInt();
+        if (checkedSize < 0 || checkedSize > file.remaining() ||
+                checksum(file, file.position(), checkedSize) != crcValue) {
+            throw new IOException("The .knc file is damaged.");
+        }
+
+        try {
+            KncReader reader = new KncReader(file.slice(), checkedSize, verified);
+            return new ResolvedScript(reader.readBody(reader.scriptOffset), reader.globals);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException |
+                IllegalStateException | ClassCastException e) {
+            throw new IOException("The .knc file is malformed.", e);
+        }
+    }
+
+    private static int checksum(ByteBuffer file, int start, int size) {
+        CRC32 crc = new CRC32();
+        crc.update(file.duplicate().limit(start + size).position(start));
+        return (int) crc.getValue();
+    }
+
+    private KncReader(ByteBuffer file, int checkedSize, boolean verified) {
+        this.file = file;
+        this.verified = verified;
+        ByteBuffer input = file.duplicate();
+
+        strings = new String[readUnsigned(input)];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[readUnsigned(input)];
+            input.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        constants = new Object[readUnsigned(input)];
+        for (int i = 0; i < constants.length; i++) {
+            byte tag = input.get();
+            switch (tag) {
+                case NIL_CONSTANT -> constants[i] = null;
+                case BOOLEAN_CONSTANT -> constants[i] = input.get() != 0;
+                case NUM_CONSTANT -> constants[i] = input.getLong();
+                case STRING_CONSTANT -> constants[i] = strings[readUnsigned(input)];
+                default -> throw new IllegalStateException("Unknown constant " + tag + ".");
+            }
+        }
+
+        globals = readNames(input);
+
+        int methodsCount = readUnsigned(input);
+        methodOffsets = new int[methodsCount];
+        methodChecksums = new int[methodsCount];
+        List<ResolvedStatement.Method> decodedMethods = new ArrayList<>();
+        for (int i = 0; i < methodsCount; i++) {
+            int line = readUnsigned(input);
+            boolean memoized = input.get() != 0;
+            Integer argumentsCount = readOptional(input);
+            List<Integer> argumentsIds = null;
+            if (argumentsCount != null) {
+                argumentsIds = new ArrayList<>();
+                for (int j = 0; j < argumentsCount; j++) {
+                    argumentsIds.add(readUnsigned(input));
+                }
+            }
+            Map<Integer, String> argumentNames = readNames(input);
+            methodOffsets[i] = readUnsigned(input);
+            methodChecksums[i] = input.getInt();
+            int index = i;
+            decodedMethods.add(ResolvedStatement.Method.lazy(
+                    line, argumentsIds, () -> readMethodBody(index), argumentNames, memoized));
+        }
+        methods = decodedMethods.toArray(new ResolvedStatement.Method[0]);
+
+        classes = new ResolvedStatement.Class[readUnsigned(input)];
+        for (int i = 0; i < classes.length; i++) {
+            int line = readUnsigned(input);
+            int thisId = readUnsigned(input);
+            int staticThisId = readUnsigned(input);
+            Map<Integer, String> fields = readNames(input);
+            Map<Integer, String> staticFields = readNames(input);
+            Map<MethodId, ResolvedStatement.Method> staticMethods = readMethods(input);
+            Map<MethodId, ResolvedStatement.Method> constructors = readMethods(input);
+            Map<MethodId, ResolvedStatement.Method> classMethods = readMethods(input);
+            classes[i] = new ResolvedStatement.Class(line,
+                    staticMethods, constructors, classMethods,
+                    fields, staticFields,
+                    thisId, staticThisId);
+        }
+
+        scriptOffset = readUnsigned(input);
+        codeSize = readUnsigned(input);
+        codeStart = input.position();
+        if (codeStart + codeSize != input.limit()) {
+            throw new IllegalStateException("Wrong size of the code.");
+        }
+        // the top level code ends where the body of the first method starts
+        if (codeStart + methodStart(0) != checkedSize) {
+            throw new IllegalStateException("Wrong size of the top level code.");
+        }
+        for (int i = 0; i < methodsCount; i++) {
+            if (methodStart(i) > methodStart(i + 1)) {
+                throw new IllegalStateException("Wrong offset of a method.");
+            }
+            if (verified && !isIntact(i)) {
+                throw new IllegalStateException("The body of a method is damaged.");
+            }
+        }
+    }
+
+    private int methodStart(int index) {
+        return index < methodOffsets.length ? methodOffsets[index] : codeSize;
+    }
+
+    private boolean isIntact(int method) {
+        int start = methodStart(method);
+        return checksum(file, codeStart + start, methodStart(method + 1) - start) == methodChecksums[method];
+    }
+
+    private ResolvedStatement.Block readMethodBody(int method) {
+        if (!verified && !isIntact(method)) {
+            throw new IllegalStateException("The .knc file is damaged.");
+        }
+        return readBody(methodStart(method));
+    }
+
+    private ResolvedStatement.Block readBody(int offset) {
+        ByteBuffer code = file.duplicate();
+        code.position(codeStart + offset);
+        try {
+            return (ResolvedStatement.Block) readStatement(code);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | ClassCastException e) {
+            throw new IllegalStateException("The .knc file is malformed.", e);
+        }
+    }
+
+    private Map<Integer, String> readNames(ByteBuffer input) {
+        int count = readUnsigned(input);
+        Map<Integer, String> names = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            int id = readUnsigned(input);
+            names.put(id, strings[readUnsigned(input)]);
+        }
+        return names;
+    }
+
+    private Map<MethodId, ResolvedStatement.Method> readMethods(ByteBuffer input) {
+        int count = readUnsigned(input);
+        Map<MethodId, ResolvedStatement.Method> result = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String name = strings[readUnsigned(input)];
+            Integer arity = readOptional(input);
+            result.put(new MethodId(name, arity), methods[readUnsigned(input)]);
+        }
+        return result;
+    }
+
+    private ResolvedStatement readStatement(ByteBuffer code) {
+        byte tag = code.get();
+        if (tag == ABSENT) {
+            return null;
+        }
+
+        int line = readUnsigned(code);
+        switch (tag) {
+            case EXPRESSION_STATEMENT:
+                return new ResolvedStatement.Expression(line, readExpression(code));
+            case IF_STATEMENT: {
+                ResolvedExpression condition = readExpression(code);
+                ResolvedStatement thenBranch = readStatement(code);
+                ResolvedStatement elseBranch = readStatement(code);
+                return new ResolvedStatement.If(line, condition, thenBranch, elseBranch);
+            }
+            case WHILE_STATEMENT: {
+                ResolvedExpression condition = readExpression(code);
+                return new ResolvedStatement.While(line, condition, readStatement(code));
+            }
+            case BLOCK_STATEMENT: {
+                Map<Integer, String> names = readNames(code);
+                int classesCount = readUnsigned(code);
+                Map<Integer, ResolvedStatement.Class> blockClasses = new LinkedHashMap<>();
+                for (int i = 0; i < classesCount; i++) {
+                    int id = readUnsigned(code);
+                    blockClasses.put(id, classes[readUnsigned(code)]);
+                }
+                int statementsCount = readUnsigned(code);
+                List<ResolvedStatement> statements = new ArrayList<>(statementsCount);
+                for (int i = 0; i < statementsCount; i++) {
+                    statements.add(readStatement(code));
+                }
+                return new ResolvedStatement.Block(line, names, blockClasses, statements);
+            }
+            case RETURN_STATEMENT:
+                return new ResolvedStatement.Return(line, readExpression(code));
+            default:
+                throw new IllegalStateException("Unknown statement " + tag + ".");
+        }
+    }
+
+    private ResolvedExpression readExpression(ByteBuffer code) {
+        byte tag = code.get();
+        if (tag == ABSENT) {
+            return null;
+        }
+
+        int line = readUnsigned(code);
+        switch (tag) {
+            case ASSIGN_EXPRESSION: {
+                int variableId = readUnsigned(code);
+                return new ResolvedExpression.Assign(line, variableId, readExpression(code));
+            }
+            case CALL_EXPRESSION: {
+                ResolvedExpression object = readExpression(code);
+                String method = strings[readUnsigned(code)];
+                Integer argumentsCount = readOptional(code);
+                if (argumentsCount == null) {
+                    return new ResolvedExpression.Call(line, object, method);
+                }
+                List<ResolvedExpression> arguments = new ArrayList<>(argumentsCount);
+                for (int i = 0; i < argumentsCount; i++) {
+                    arguments.add(readExpression(code));
+                }
+                return new ResolvedExpression.Call(line, object, method, arguments);
+            }
+            case LITERAL_EXPRESSION:
+                return new ResolvedExpression.Literal(line, constants[readUnsigned(code)]);
+            case VARIABLE_EXPRESSION:
+                return new ResolvedExpression.Variable(line, readUnsigned(code));
+            case LOGICAL_EXPRESSION: {
+                ResolvedExpression left = readExpression(code);
+                LogicalOperator operator = LogicalOperator.values()[readUnsigned(code)];
+                return new ResolvedExpression.Logical(line, left, operator, readExpression(code));
+            }
+            default:
+                throw new IllegalStateException("Unknown expression " + tag + ".");
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package org.github.alexanderknop.jknish.knc;
+
+import org.github.alexanderknop.jknish.parser.MethodId;
+import org.github.alexanderknop.jknish.resolver.ResolvedExpression;
+import org.github.alexanderknop.jknish.resolver.ResolvedScript;
+import org.github.alexanderknop.jknish.resolver.ResolvedStatement;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static org.github.alexanderknop.jknish.knc.KncFormat.*;
+
+/**
+ * Writes a resolved script into the .knc format described in {@link KncFormat}.
+ */
+public final class KncWriter implements
+        ResolvedStatement.Visitor<Void>, ResolvedExpression.Visitor<Void> {
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final List<String> stringTable = new ArrayList<>();
+    private final Map<Object, Integer> constants = new HashMap<>();
+    private final List<Object> constantPool = new ArrayList<>();
+    private final Map<ResolvedStatement.Class, Integer> classes = new IdentityHashMap<>();
+    private final List<ResolvedStatement.Class> classTable = new ArrayList<>();
+    private final Map<ResolvedStatement.Method, Integer> methods = new IdentityHashMap<>();
+    private final List<ResolvedStatement.Method> methodTable = new ArrayList<>();
+    private final List<Integer> methodOffsets = new ArrayList<>();
+
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+    // the key of the nil constant, since the pool cannot contain nulls
+    private static final Object NIL = new Object();
+
+    public static void write(ResolvedScript script, OutputStream output) throws IOException {
+        new KncWriter().writeScript(script, output);
+    }
+
+    /**
+     * @return the version of the written files; the files of another version must be compiled again.
+     */
+    public static String version() {
+        return VERSION + "." + REVISION;
+    }
+
+    private KncWriter() {
+
+    }
+
+    private void writeScript(ResolvedScript script, OutputStream output) throws IOException {
+        int scriptOffset = code.size();
+        writeStatement(script.code);
+
+        // the bodies of the methods are written after the top level code; writing
+        // a body may discover new classes, so the table grows while we iterate over it
+        for (int i = 0; i < methodTable.size(); i++) {
+            methodOffsets.add(code.size());
+            writeStatement(methodTable.get(i).body());
+        }
+
+        byte[] codeBytes = code.toByteArray();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeTables(script, codeBytes, body);
+        writeUnsigned(body, scriptOffset);
+        writeUnsigned(body, codeBytes.length);
+        body.writeBytes(codeBytes);
+
+        // the bodies of the methods have their own checksums
+        byte[] bytes = body.toByteArray();
+        int checkedSize = bytes.length - codeBytes.length + methodStart(0, codeBytes.length);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, checkedSize);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(checkedSize);
+        header.putInt((int) crc.getValue());
+        output.write(header.array());
+        output.write(bytes);
+    }
+
+    private void writeTables(ResolvedScript script, byte[] code, ByteArrayOutputStream output) {
+        // all the names in the tables must be in the string table before it is written
+        script.globals.values().forEach(this::string);
+        methodTable.forEach(method -> method.argumentNames.values().forEach(this::string));
+        classTable.forEach(klass -> {
+            klass.fields.values().forEach(this::string);
+            klass.staticFields.values().forEach(this::string);
+        });
+
+        writeUnsigned(output, stringTable.size());
+        for (String string : stringTable) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeUnsigned(output, bytes.length);
+            output.writeBytes(bytes);
+        }
+
+        writeUnsigned(output, constantPool.size());
+        for (Object constant : constantPool) {
+            if (constant == NIL) {
+                output.write(NIL_CONSTANT);
+            } else if (constant instanceof Boolean) {
+                output.write(BOOLEAN_CONSTANT);
+                output.write((Boolean) constant ? 1 : 0);
+            } else if (constant instanceof Long) {
+                output.write(NUM_CONSTANT);
+                output.writeBytes(ByteBuffer.allocate(Long.BYTES).putLong((Long) constant).array());
+            } else {
+                output.write(STRING_CONSTANT);
+                writeUnsigned(output, strings.get((String) constant));
+            }
+        }
+
+        writeNames(output, script.globals);
+
+        writeUnsigned(output, methodTable.size());
+        for (int i = 0; i < methodTable.size(); i++) {
+            ResolvedStatement.Method method = methodTable.get(i);
+            writeUnsigned(output, method.line);
+            output.write(method.memoized ? 1 : 0);
+            writeOptional(output, method.argumentsIds == null ? null : method.argumentsIds.size());
+            if (method.argumentsIds != null) {
+                method.argumentsIds.forEach(id -> writeUnsigned(output, id));
+            }
+            writeNames(output, method.argumentNames);
+            int offset = methodOffsets.get(i);
+            writeUnsigned(output, offset);
+            CRC32 crc = new CRC32();
+            crc.update(code, offset, methodStart(i + 1, code.length) - offset);
+            output.writeBytes(ByteBuffer.allocate(Integer.BYTES).putInt((int) crc.getValue()).array());
+        }
+
+        writeUnsigned(output, classTable.size());
+        for (ResolvedStatement.Class klass : classTable) {
+            writeUnsigned(output, klass.line);
+            writeUnsigned(output, klass.thisId);
+            writeUnsigned(output, klass.staticThisId);
+            writeNames(output, klass.fields);
+            writeNames(output, klass.staticFields);
+            writeMethods(output, klass.staticMethods);
+            writeMethods(output, klass.constructors);
+            writeMethods(output, klass.methods);
+        }
+    }
+
+    // the offset of the body of the method with the given index, the body of the next method starts
+    // where the previous one ends, and the code ends after the last one
+    private int methodStart(int index, int codeSize) {
+        return index < methodOffsets.size() ? methodOffsets.get(index) : codeSize;
+    }
+
+    private void writeNames(ByteArrayOutputStream output, Map<Integer, String> names) {
+        writeUnsigned(output, names.size());
+        names.forEach((id, name) -> {
+            writeUnsigned(output, id);
+            writeUnsigned(output, string(name));
+        });
+    }
+
+    private void writeMethods(ByteArrayOutputStream output, Map<MethodId, ResolvedStatement.Method> methods) {
+        writeUnsigned(output, methods.size());
+        methods.forEach((methodId, method) -> {
+            writeUnsigned(output, strings.get(methodId.name));
+            writeOptional(output, methodId.arity);
+            writeUnsigned(output, this.methods.get(method));
+        });
+    }
+
+    private int string(String string) {
+        return strings.computeIfAbsent(string, s -> {
+            stringTable.add(s);
+            return stringTable.size() - 1;
+        });
+    }
+
+    private int constant(Object value) {
+        if (value instanceof String) {
+            string((String) value);
+        }
+        return constants.computeIfAbsent(value == null ? NIL : value, v -> {
+            constantPool.add(v);
+            return constantPool.size() - 1;
+        });
+    }
+
+    private int klass(ResolvedStatement.Class klass) {
+        Integer index = classes.get(klass);
+        if (index == null) {
+            index = classTable.size();
+            classes.put(klass, index);
+            classTable.add(klass);
+            registerMethods(klass.staticMethods);
+            registerMethods(klass.constructors);
+            registerMethods(klass.methods);
+        }
+        return index;
+    }
+
+    private void registerMethods(Map<MethodId, ResolvedStatement.Method> classMethods) {
+        classMethods.forEach((methodId, method) -> {
+            string(methodId.name);
+            methods.computeIfAbsent(method, m -> {
+                methodTable.add(m);
+                return methodTable.size() - 1;
+            });
+        });
+    }
+
+    private void writeStatement(ResolvedStatement statement) {
+        if (statement == null) {
+            code.write(ABSENT);
+        } else {
+            statement.accept(this);
+        }
+    }
+
+    private void writeExpression(ResolvedExpression expression) {
+        if (expression == null) {
+            code.write(ABSENT);
+        } else {
+            expression.accept(this);
+        }
+    }
+
+    @Override
+    public Void visitExpressionStatement(ResolvedStatement.Expression expression) {
+        code.write(EXPRESSION_STATEMENT);
+        writeUnsigned(code, expression.line);
+        writeExpression(expression.resolvedExpression);
+        return null;
+    }
+
+    @Override
+    public Void visitorIfStatement(ResolvedStatement.If anIf) {
+        code.write(IF_STATEMENT);
+        writeUnsigned(code, anIf.line);
+        writeExpression(anIf.condition);
+        writeStatement(anIf.thenBranch);
+        writeStatement(anIf.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStatement(ResolvedStatement.While aWhile) {
+        code.write(WHILE_STATEMENT);
+        writeUnsigned(code, aWhile.line);
+        writeExpression(aWhile.condition);
+        writeStatement(aWhile.body);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStatement(ResolvedStatement.Block block) {
+        code.write(BLOCK_STATEMENT);
+        writeUnsigned(code, block.line);
+        writeNames(code, block.names);
+        writeUnsigned(code, block.classes.size());
+        block.classes.forEach((id, klass) -> {
+            writeUnsigned(code, id);
+            writeUnsigned(code, klass(klass));
+        });
+        writeUnsigned(code, block.resolvedStatements.size());
+        block.resolvedStatements.forEach(this::writeStatement);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStatement(ResolvedStatement.Return aReturn) {
+        code.write(RETURN_STATEMENT);
+        writeUnsigned(code, aReturn.line);
+        writeExpression(aReturn.value);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpression(ResolvedExpression.Assign assign) {
+        code.write(ASSIGN_EXPRESSION);
+        writeUnsigned(code, assign.line);
+        writeUnsigned(code, assign.variableId);
+        writeExpression(assign.value);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpression(ResolvedExpression.Call call) {
+        code.write(CALL_EXPRESSION);
+        writeUnsigned(code, call.line);
+        writeExpression(call.object);
+        writeUnsigned(code, string(call.method));
+        writeOptional(code, call.arguments == null ? null : call.arguments.size());
+        if (call.arguments != null) {
+            call.arguments.forEach(this::writeExpression);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpression(ResolvedExpression.Literal literal) {
+        code.write(LITERAL_EXPRESSION);
+        writeUnsigned(code, literal.line);
+        writeUnsigned(code, constant(literal.value));
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpression(ResolvedExpression.Variable variable) {
+        code.write(VARIABLE_EXPRESSION);
+        writeUnsigned(code, variable.line);
+        writeUnsigned(code, variable.variableId);
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpression(ResolvedExpression.Logical logical) {
+        code.write(LOGICAL_EXPRESSION);
+        writeUnsigned(code, logical.line);
+        writeExpression(logical.left);
+        writeUnsigned(code, logical.operator.ordinal());
+        writeExpression(logical.right);
+        return null;
+    }
+}
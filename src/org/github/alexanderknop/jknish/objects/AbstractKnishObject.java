@@ -8,33 +8,57 @@ import java.util.Map;
 
 import static org.github.alexanderknop.jknish.parser.MethodId.arityFromArgumentsList;
 
+/**
+ * An object with a table of methods. The methods are registered only while
+ * the object is constructed, after that the table is only read, so an object
+ * that is safely published can be called from several threads.
+ * <p>
+ * The identity methods {@code ===} and {@code !==} are implemented by every object
+ * and are not stored in the table, and the table is allocated only when the first
+ * method is registered, so objects without methods of their own are cheap.
+ */
 public abstract class AbstractKnishObject implements KnishObject {
+    private static final MethodId IDENTICAL = new MethodId("===", 1);
+    private static final MethodId NOT_IDENTICAL = new MethodId("!==", 1);
 
     abstract protected String getClassName();
 
-    private final Map<MethodId, Method> methods = new HashMap<>();
+    private Map<MethodId, Method> methods = null;
 
-    public AbstractKnishObject() {
-        // register default object methods
-        register("!==", 1,
-                arguments -> KnishCore.core().bool(arguments.get(0) != this));
-        register("===", 1,
-                arguments -> KnishCore.core().bool(arguments.get(0) == this));
+    protected void register(String name, Integer arity, Method method) {
+        register(new MethodId(name, arity), method);
     }
 
-    public void register(String name, Integer arity, Method method) {
-        methods.put(new MethodId(name, arity), method);
+    protected void register(MethodId methodId, Method method) {
+        if (methods == null) {
+            methods = new HashMap<>();
+        }
+        methods.put(methodId, method);
     }
 
-    public void register(MethodId methodId, Method method) {
-        methods.put(methodId, method);
+    /**
+     * @return the implementation of the method or null if the object
+     * does not implement it.
+     */
+    public Method lookup(MethodId methodId) {
+        Method method = methods == null ? null : methods.get(methodId);
+        if (method != null) {
+            return method;
+        }
+
+        if (methodId.equals(IDENTICAL)) {
+            return arguments -> KnishCore.core().bool(arguments.get(0) == this);
+        } else if (methodId.equals(NOT_IDENTICAL)) {
+            return arguments -> KnishCore.core().bool(arguments.get(0) != this);
+        }
+        return null;
     }
 
     @Override
     public KnishObject call(String methodName, List<KnishObject> arguments) {
         Integer arity = arityFromArgumentsList(arguments);
         MethodId methodId = new MethodId(methodName, arity);
-        Method method = methods.get(methodId);
+        Method method = lookup(methodId);
         if (method == null) {
             throw new MethodNotFoundException(getClassName(), methodId);
         }
@@ -1,16 +1,20 @@
 package org.github.alexanderknop.jknish.objects;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
+/**
+ * The classes and objects of the core of the language. The core is shared by
+ * all the scripts executed in the JVM, so it is sealed once it is defined and
+ * it never changes afterwards.
+ */
 public class KnishCore extends KnishModule {
 
     private final ClassDefinition<Void, Long> numMeta;
     private final ClassDefinition<Void, Boolean> boolMeta;
     private final ClassDefinition<Void, String> stringMeta;
 
-    private final Map<Boolean, KnishObject> booleanValues = new HashMap<>();
+    private final KnishObject trueObject;
+    private final KnishObject falseObject;
 
     private final static KnishCore CORE = new KnishCore();
     private final KnishObject nullObject;
@@ -191,8 +195,10 @@ public class KnishCore extends KnishModule {
                         })
                 .finishDefinition(null);
 
-        booleanValues.put(true, boolMeta.construct(true));
-        booleanValues.put(false, boolMeta.construct(false));
+        trueObject = boolMeta.construct(true);
+        falseObject = boolMeta.construct(false);
+
+        seal();
     }
 
     public KnishObject num(long value) {
@@ -204,10 +210,22 @@ public class KnishCore extends KnishModule {
     }
 
     public KnishObject bool(boolean value) {
-        return booleanValues.get(value);
+        return value ? trueObject : falseObject;
     }
 
     public KnishObject nil() {
         return nullObject;
     }
+
+    public boolean isNum(KnishObject object) {
+        return numMeta.isInstance(object);
+    }
+
+    public boolean isString(KnishObject object) {
+        return stringMeta.isInstance(object);
+    }
+
+    public boolean isBool(KnishObject object) {
+        return boolMeta.isInstance(object);
+    }
 }
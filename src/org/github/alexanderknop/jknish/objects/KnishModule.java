@@ -13,6 +13,7 @@ public abstract class KnishModule {
     private final Map<String, Class> classes = new HashMap<>();
     private final Map<String, KnishObject> objects = new HashMap<>();
     private final Map<String, Class> objectsClasses = new HashMap<>();
+    private boolean sealed = false;
 
     public Map<String, KnishObject> getObjects() {
         return unmodifiableMap(objects);
@@ -27,6 +28,7 @@ public abstract class KnishModule {
     }
 
     public void importModules(KnishModule... modules) {
+        checkNotSealed();
         Arrays.stream(modules).forEach(module -> {
             if (module != null) {
                 objects.putAll(module.getObjects());
@@ -39,7 +41,27 @@ public abstract class KnishModule {
         return new HashMap<>(objectsClasses);
     }
 
+    /**
+     * Forbids any further changes of the module; the method tables of
+     * the classes of the module become immutable.
+     */
+    protected void seal() {
+        sealed = true;
+        classes.values().forEach(Class::freeze);
+    }
+
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    private void checkNotSealed() {
+        if (sealed) {
+            throw new UnsupportedOperationException("The module is sealed.");
+        }
+    }
+
     protected Class declareClass(String className) {
+        checkNotSealed();
         Class builder = new Class(className);
         classes.put(className, builder);
         return builder;
@@ -75,6 +97,7 @@ public abstract class KnishModule {
 
     protected void define(String name,
                           KnishObject object, Class klass) {
+        checkNotSealed();
         objects.put(name, object);
         objectsClasses.put(name, klass);
     }
@@ -120,14 +143,22 @@ public abstract class KnishModule {
     }
 
     public static final class Class {
-        private final Map<MethodId, Method> methods;
+        private Map<MethodId, Method> methods;
         private final String name;
+        private boolean frozen = false;
 
         private Class(String name) {
             this.name = name;
             methods = new HashMap<>();
         }
 
+        private void freeze() {
+            if (!frozen) {
+                methods = Map.copyOf(methods);
+                frozen = true;
+            }
+        }
+
         protected Class method(String methodName,
                                List<Intersection> arguments,
                                Union value) {
@@ -159,7 +190,7 @@ public abstract class KnishModule {
         }
 
         public Map<MethodId, Method> getMethods() {
-            return unmodifiableMap(methods);
+            return frozen ? methods : unmodifiableMap(methods);
         }
 
         public String getName() {
@@ -250,6 +281,11 @@ public abstract class KnishModule {
             return instance.construct(value);
         }
 
+        protected boolean isInstance(KnishObject object) {
+            return object instanceof KnishWrappedObject<?> &&
+                    ((KnishWrappedObject<?>) object).isConstructedBy(instance);
+        }
+
         public Class getMetaClass() {
             return metaClass;
         }
@@ -8,6 +8,14 @@ import static java.util.Collections.emptyList;
 
 public class KnishStandardModule extends KnishModule {
     public KnishStandardModule(Writer standardOutput) {
+        this(standardOutput, () -> {
+        });
+    }
+
+    /**
+     * @param checkpoint is run every time a script calls {@code System.checkpoint}.
+     */
+    public KnishStandardModule(Writer standardOutput, Runnable checkpoint) {
         super();
 
 
@@ -43,10 +51,17 @@ public class KnishStandardModule extends KnishModule {
                             }
                             return KnishCore.core().nil();
                         })
+                .staticGetter("checkpoint",
+                        unit,
+                        (writer, arguments) -> {
+                            checkpoint.run();
+                            return KnishCore.core().nil();
+                        })
                 .staticGetter("clock",
                         KnishCore.core().numType(),
                         (writer, arguments) -> KnishCore.core().num(System.currentTimeMillis()))
                 .finishDefinition(standardOutput);
 
+        seal();
     }
 }
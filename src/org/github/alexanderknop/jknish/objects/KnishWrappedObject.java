@@ -6,9 +6,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.github.alexanderknop.jknish.parser.MethodId.arityFromArgumentsList;
+
 public final class KnishWrappedObject<V> extends AbstractKnishObject {
     private final V value;
     private final String name;
+    private final KnishWrappedObjectConstructor<V> constructor;
+    private final Map<MethodId, Method<V>> methods;
 
     public static <U> U unwrap(KnishObject object,
                                Class<U> uClass,
@@ -20,20 +24,47 @@ public final class KnishWrappedObject<V> extends AbstractKnishObject {
         throw new KnishRuntimeException(message);
     }
 
-    private KnishWrappedObject(String name, V value) {
+    private KnishWrappedObject(String name, V value,
+                               KnishWrappedObjectConstructor<V> constructor,
+                               Map<MethodId, Method<V>> methods) {
         this.value = value;
         this.name = name;
+        this.constructor = constructor;
+        this.methods = methods;
     }
 
     public V getValue() {
         return value;
     }
 
+    public boolean isConstructedBy(KnishWrappedObjectConstructor<?> constructor) {
+        return this.constructor == constructor;
+    }
+
     @Override
     protected String getClassName() {
         return this.name;
     }
 
+    @Override
+    public AbstractKnishObject.Method lookup(MethodId methodId) {
+        Method<V> method = methods.get(methodId);
+        if (method != null) {
+            return arguments -> method.call(value, arguments);
+        }
+        return super.lookup(methodId);
+    }
+
+    @Override
+    public KnishObject call(String methodName, List<KnishObject> arguments) {
+        // the common path does not allocate a bound method
+        Method<V> method = methods.get(new MethodId(methodName, arityFromArgumentsList(arguments)));
+        if (method != null) {
+            return method.call(value, arguments);
+        }
+        return super.call(methodName, arguments);
+    }
+
     interface Method<V> {
         KnishObject call(V value, List<KnishObject> arguments);
     }
@@ -42,10 +73,15 @@ public final class KnishWrappedObject<V> extends AbstractKnishObject {
         return new KnishWrappedObjectConstructor<>(name);
     }
 
+    /**
+     * The constructor is closed when the first object is constructed; after that
+     * its methods never change, so it can construct objects from several threads.
+     * All the objects of the constructor share its table of methods.
+     */
     public static final class KnishWrappedObjectConstructor<V> {
         private final String name;
         private final Map<MethodId, Method<V>> methods;
-        private boolean closed = false;
+        private volatile Map<MethodId, Method<V>> closedMethods = null;
 
         private KnishWrappedObjectConstructor(String name) {
             this.name = name;
@@ -53,7 +89,7 @@ public final class KnishWrappedObject<V> extends AbstractKnishObject {
         }
 
         public KnishWrappedObjectConstructor<V> getter(String field, Method<V> method) {
-            if (closed) {
+            if (closedMethods != null) {
                 throw new UnsupportedOperationException("The class is already closed.");
             }
 
@@ -62,7 +98,7 @@ public final class KnishWrappedObject<V> extends AbstractKnishObject {
         }
 
         public KnishWrappedObjectConstructor<V> method(String field, int arity, Method<V> method) {
-            if (closed) {
+            if (closedMethods != null) {
                 throw new UnsupportedOperationException("The class is already closed.");
             }
 
@@ -71,11 +107,13 @@ public final class KnishWrappedObject<V> extends AbstractKnishObject {
         }
 
         public KnishWrappedObject<V> construct(V value) {
-            closed = true;
-            KnishWrappedObject<V> object = new KnishWrappedObject<>(name, value);
-            methods.forEach((id, method) ->
-                    object.register(id, arguments -> method.call(value, arguments)));
-            return object;
+            Map<MethodId, Method<V>> closed = closedMethods;
+            if (closed == null) {
+                closed = Map.copyOf(methods);
+                closedMethods = closed;
+            }
+
+            return new KnishWrappedObject<>(name, value, this, closed);
         }
     }
 }
@@ -27,6 +27,14 @@ public final class Parser {
 
     private Statement.Block parse() {
         List<Statement> statements = new ArrayList<>();
+        // the imports precede all the other statements
+        while (match(IMPORT)) {
+            try {
+                statements.add(importStatement());
+            } catch (ParseError error) {
+                synchronize();
+            }
+        }
         while (!isAtEnd()) {
             try {
                 statements.add(statement());
@@ -49,6 +57,7 @@ public final class Parser {
                 case IF:
                 case WHILE:
                 case RETURN:
+                case IMPORT:
                     return;
             }
 
@@ -61,12 +70,21 @@ public final class Parser {
         if (match(IF)) return ifStatement();
         if (match(WHILE)) return whileStatement();
         if (match(VAR)) return varStatement();
-        if (match(CLASS)) return classStatement();
+        if (match(CLASS)) return classStatement(false);
+        if (match(HASH)) return annotatedClassStatement();
         if (match(RETURN)) return returnStatement();
+        if (match(IMPORT)) throw error(previous(), "Imports must precede all the other statements.");
 
         return expressionStatement();
     }
 
+    private Statement.Import importStatement() {
+        int line = previous().line;
+        Token path = consume(STRING, "Expect the path of the imported file.");
+        consume(SEMICOLON, "Expect ';' after import statement.");
+        return new Statement.Import(line, (String) path.literal);
+    }
+
     private Statement.Return returnStatement() {
         int line = previous().line;
         Expression value = null;
@@ -77,26 +95,50 @@ public final class Parser {
         return new Statement.Return(line, value);
     }
 
-    private Statement classStatement() {
+    private Statement annotatedClassStatement() {
+        memoizeAttribute();
+        consume(CLASS, "Expect class declaration after an attribute.");
+        return classStatement(true);
+    }
+
+    // the only supported attribute is #memoize
+    private void memoizeAttribute() {
+        Token name = consume(IDENTIFIER, "Expect attribute name after '#'.");
+        if (!name.lexeme.equals("memoize")) {
+            throw error(name, "Unknown attribute.");
+        }
+    }
+
+    private Statement classStatement(boolean memoized) {
         Token name = consume(IDENTIFIER, "Expect class name.");
         consume(LEFT_BRACE, "Expect '{' to begin class definition.");
         List<Statement.Method> methods = new ArrayList<>();
         List<Statement.Method> constructors = new ArrayList<>();
         List<Statement.Method> staticMethods = new ArrayList<>();
         while (!check(RIGHT_BRACE) && !isAtEnd()) {
+            boolean memoizedMethod = false;
+            if (match(HASH)) {
+                memoizeAttribute();
+                memoizedMethod = true;
+            }
+
             if (match(STATIC)) {
-                staticMethods.add(methodStatement());
+                staticMethods.add(methodStatement(memoizedMethod));
             } else if (match(CONSTRUCT)) {
-                constructors.add(methodStatement());
+                if (memoizedMethod) {
+                    throw error(previous(), "Constructors cannot be memoized.");
+                }
+                constructors.add(methodStatement(false));
             } else {
-                methods.add(methodStatement());
+                methods.add(methodStatement(memoizedMethod));
             }
         }
         consume(RIGHT_BRACE, "Expect '}' after class definition.");
-        return new Statement.Class(name.line, name.lexeme, staticMethods, constructors, methods);
+        return new Statement.Class(name.line, name.lexeme,
+                staticMethods, constructors, methods, memoized);
     }
 
-    private Statement.Method methodStatement() {
+    private Statement.Method methodStatement(boolean memoized) {
         Token nameToken = advance();
         String name = nameToken.lexeme;
 
@@ -151,7 +193,7 @@ public final class Parser {
         consume(RIGHT_BRACE, "Expect '}' after class definition.");
 
         return new Statement.Method(nameToken.line,
-                name, argumentsNames, statements);
+                name, argumentsNames, statements, memoized);
     }
 
     private List<String> methodParameters(int minNumberOfArguments, int maxNumberOfArguments) {
@@ -25,6 +25,8 @@ public abstract class Statement {
         N visitClassStatement(Class klass);
 
         N visitReturnStatement(Return aReturn);
+
+        N visitImportStatement(Import anImport);
     }
 
     public static class Expression extends Statement {
@@ -224,6 +226,41 @@ public abstract class Statement {
         }
     }
 
+    public static class Import extends Statement {
+        public final String path;
+
+        public Import(int line, String path) {
+            super(line);
+            this.path = path;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Import anImport = (Import) o;
+            return Objects.equals(path, anImport.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path);
+        }
+
+        @Override
+        public String toString() {
+            return "Import{" +
+                    "line=" + line +
+                    ", path='" + path + '\'' +
+                    '}';
+        }
+
+        @Override
+        public <N> N accept(Visitor<N> visitor) {
+            return visitor.visitImportStatement(this);
+        }
+    }
+
     public static class Block extends Statement {
         public final List<Statement> statements;
 
@@ -267,14 +304,22 @@ public abstract class Statement {
         public final List<Method> constructors;
         public final List<Method> staticMethods;
         public final String name;
+        public final boolean memoized;
 
         public Class(int line, String name,
-                     List<Method> staticMethods, List<Method> constructors, List<Method> methods) {
+                     List<Method> staticMethods, List<Method> constructors, List<Method> methods,
+                     boolean memoized) {
             super(line);
             this.name = name;
             this.methods = methods;
             this.constructors = constructors;
             this.staticMethods = staticMethods;
+            this.memoized = memoized;
+        }
+
+        public Class(int line, String name,
+                     List<Method> staticMethods, List<Method> constructors, List<Method> methods) {
+            this(line, name, staticMethods, constructors, methods, false);
         }
 
         @Override
@@ -282,13 +327,14 @@ public abstract class Statement {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
             Class aClass = (Class) o;
-            return Objects.equals(methods, aClass.methods) &&
+            return memoized == aClass.memoized &&
+                    Objects.equals(methods, aClass.methods) &&
                     Objects.equals(name, aClass.name);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(methods, name);
+            return Objects.hash(methods, name, memoized);
         }
 
         @Override
@@ -299,6 +345,7 @@ public abstract class Statement {
                     ", constructors=" + constructors +
                     ", staticMethods=" + staticMethods +
                     ", name='" + name + '\'' +
+                    ", memoized=" + memoized +
                     '}';
         }
 
@@ -311,13 +358,21 @@ public abstract class Statement {
     public final static class Method {
         public final String name;
         public final MethodBody body;
+        public final boolean memoized;
 
         public Method(int line,
-                      String name, List<String> argumentsNames, List<Statement> body) {
+                      String name, List<String> argumentsNames, List<Statement> body,
+                      boolean memoized) {
             this.name = name;
             this.body = new MethodBody(
                     line, argumentsNames, new Block(line, body)
             );
+            this.memoized = memoized;
+        }
+
+        public Method(int line,
+                      String name, List<String> argumentsNames, List<Statement> body) {
+            this(line, name, argumentsNames, body, false);
         }
 
         public Method(int line,
@@ -335,13 +390,14 @@ public abstract class Statement {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
             Method method = (Method) o;
-            return Objects.equals(name, method.name) &&
+            return memoized == method.memoized &&
+                    Objects.equals(name, method.name) &&
                     Objects.equals(body, method.body);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(name, body);
+            return Objects.hash(name, body, memoized);
         }
 
         @Override
@@ -349,6 +405,7 @@ public abstract class Statement {
             return "Method{" +
                     "name='" + name + '\'' +
                     ", body=" + body +
+                    ", memoized=" + memoized +
                     '}';
         }
     }
@@ -0,0 +1,245 @@
+package org.github.alexanderknop.jknish.purity;
+
+import org.github.alexanderknop.jknish.KnishErrorReporter;
+import org.github.alexanderknop.jknish.objects.KnishCore;
+import org.github.alexanderknop.jknish.objects.KnishModule;
+import org.github.alexanderknop.jknish.parser.MethodId;
+import org.github.alexanderknop.jknish.resolver.ResolvedExpression;
+import org.github.alexanderknop.jknish.resolver.ResolvedScript;
+import org.github.alexanderknop.jknish.resolver.ResolvedStatement;
+
+import java.util.*;
+
+/**
+ * Checks that all the methods marked with #memoize are pure; i.e., they
+ * do not read or write fields and variables of enclosing scopes, and call
+ * only pure methods. Since the receiver of a call is not known statically,
+ * a call is pure only if no method with the same signature is impure:
+ * neither a method of the script, nor a method of a host module (except
+ * the core one), nor a constructor.
+ */
+public class PurityChecker {
+    public static void check(ResolvedScript script, KnishErrorReporter reporter,
+                             KnishModule... modules) {
+        new PurityCheckerVisitor(reporter).check(script, modules);
+    }
+
+    private static class PurityCheckerVisitor implements
+            ResolvedStatement.Visitor<Void>, ResolvedExpression.Visitor<Void> {
+        private static final Set<MethodId> IDENTITY_METHODS =
+                Set.of(new MethodId("===", 1), new MethodId("!==", 1));
+
+        private final KnishErrorReporter reporter;
+
+        private final List<MethodInformation> methods = new ArrayList<>();
+        private final Set<Integer> immutableVariables = new HashSet<>();
+        private final Set<MethodId> impureMethods = new HashSet<>();
+
+        private MethodInformation currentMethod = null;
+
+        private PurityCheckerVisitor(KnishErrorReporter reporter) {
+            this.reporter = reporter;
+        }
+
+        private void check(ResolvedScript script, KnishModule[] modules) {
+            // the globals are host objects which cannot be reassigned
+            immutableVariables.addAll(script.globals.keySet());
+
+            // we assume that every method of a host module may do I/O
+            Map<String, KnishModule.Class> coreClasses = KnishCore.core().getClasses();
+            for (KnishModule module : modules) {
+                module.getClasses().forEach((name, klass) -> {
+                    if (!coreClasses.containsKey(name)) {
+                        klass.getMethods().keySet().stream()
+                                .filter(methodId -> !IDENTITY_METHODS.contains(methodId))
+                                .forEach(impureMethods::add);
+                    }
+                });
+            }
+
+            visitBlockStatement(script.code);
+
+            // every method is pure until proven otherwise; this way
+            // recursive methods can be pure
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (MethodInformation method : methods) {
+                    if (method.pure && !isPure(method)) {
+                        method.pure = false;
+                        impureMethods.add(method.methodId);
+                        changed = true;
+                    }
+                }
+            }
+
+            methods.stream()
+                    .filter(method -> method.method.memoized && !method.pure)
+                    .forEach(method -> reporter.error(method.method.line,
+                            "The method '" + method.methodId +
+                                    "' is marked with #memoize, but it is not pure."));
+        }
+
+        private boolean isPure(MethodInformation method) {
+            for (int variable : method.readVariables) {
+                if (!method.localVariables.contains(variable) &&
+                        !immutableVariables.contains(variable)) {
+                    return false;
+                }
+            }
+
+            if (!method.localVariables.containsAll(method.assignedVariables)) {
+                return false;
+            }
+
+            // every call would create new class objects
+            if (method.declaresClasses) {
+                return false;
+            }
+
+            for (MethodId methodId : method.calledMethods) {
+                if (impureMethods.contains(methodId)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private void check(ResolvedExpression expression) {
+            if (expression != null) {
+                expression.accept(this);
+            }
+        }
+
+        private void check(ResolvedStatement statement) {
+            if (statement != null) {
+                statement.accept(this);
+            }
+        }
+
+        private void checkClass(ResolvedStatement.Class klass) {
+            immutableVariables.add(klass.thisId);
+            immutableVariables.add(klass.staticThisId);
+
+            // constructors create new objects, so we cannot memoize their calls
+            impureMethods.addAll(klass.constructors.keySet());
+
+            klass.staticMethods.forEach(this::checkMethod);
+            klass.methods.forEach(this::checkMethod);
+            klass.constructors.forEach(this::checkMethod);
+        }
+
+        private void checkMethod(MethodId methodId, ResolvedStatement.Method method) {
+            MethodInformation previousMethod = currentMethod;
+            currentMethod = new MethodInformation(methodId, method);
+            methods.add(currentMethod);
+
+            if (method.argumentsIds != null) {
+                currentMethod.localVariables.addAll(method.argumentsIds);
+            }
+            check(method.body());
+
+            currentMethod = previousMethod;
+        }
+
+        @Override
+        public Void visitAssignExpression(ResolvedExpression.Assign assign) {
+            check(assign.value);
+            if (currentMethod != null) {
+                currentMethod.assignedVariables.add(assign.variableId);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpression(ResolvedExpression.Call call) {
+            check(call.object);
+            if (call.arguments != null) {
+                call.arguments.forEach(this::check);
+            }
+            if (currentMethod != null) {
+                currentMethod.calledMethods.add(
+                        new MethodId(call.method, MethodId.arityFromArgumentsList(call.arguments)));
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpression(ResolvedExpression.Literal literal) {
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpression(ResolvedExpression.Variable variable) {
+            if (currentMethod != null) {
+                currentMethod.readVariables.add(variable.variableId);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpression(ResolvedExpression.Logical logical) {
+            check(logical.left);
+            check(logical.right);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStatement(ResolvedStatement.Expression expression) {
+            check(expression.resolvedExpression);
+            return null;
+        }
+
+        @Override
+        public Void visitorIfStatement(ResolvedStatement.If anIf) {
+            check(anIf.condition);
+            check(anIf.thenBranch);
+            check(anIf.elseBranch);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStatement(ResolvedStatement.While aWhile) {
+            check(aWhile.condition);
+            check(aWhile.body);
+            return null;
+        }
+
+        @Override
+        public Void visitBlockStatement(ResolvedStatement.Block block) {
+            // classes cannot be reassigned
+            immutableVariables.addAll(block.classes.keySet());
+            if (currentMethod != null) {
+                currentMethod.localVariables.addAll(block.names.keySet());
+                currentMethod.declaresClasses |= !block.classes.isEmpty();
+            }
+
+            block.resolvedStatements.forEach(this::check);
+            block.classes.values().forEach(this::checkClass);
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStatement(ResolvedStatement.Return aReturn) {
+            check(aReturn.value);
+            return null;
+        }
+    }
+
+    private static class MethodInformation {
+        public final MethodId methodId;
+        public final ResolvedStatement.Method method;
+        public final Set<Integer> localVariables = new HashSet<>();
+        public final Set<Integer> readVariables = new HashSet<>();
+        public final Set<Integer> assignedVariables = new HashSet<>();
+        public final Set<MethodId> calledMethods = new HashSet<>();
+        public boolean declaresClasses = false;
+        public boolean pure = true;
+
+        public MethodInformation(MethodId methodId, ResolvedStatement.Method method) {
+            this.methodId = methodId;
+            this.method = method;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.github.alexanderknop.jknish.resolver;
 import org.github.alexanderknop.jknish.parser.MethodId;
 
 import java.util.*;
+import java.util.function.Supplier;
 
 import static java.util.Collections.*;
 
@@ -308,15 +309,59 @@ public abstract class ResolvedStatement {
         public final int line;
         public final List<Integer> argumentsIds;
         public final Map<Integer, String> argumentNames;
-        public final Block body;
+        public final boolean memoized;
+
+        private volatile Block body;
+        private Supplier<Block> bodyDecoder;
 
         public Method(int line,
                       List<Integer> argumentsIds, Block body,
-                      Map<Integer, String> argumentNames) {
+                      Map<Integer, String> argumentNames,
+                      boolean memoized) {
             this.line = line;
             this.argumentsIds = argumentsIds;
             this.argumentNames = argumentNames;
             this.body = body;
+            this.memoized = memoized;
+        }
+
+        public Method(int line,
+                      List<Integer> argumentsIds, Block body,
+                      Map<Integer, String> argumentNames) {
+            this(line, argumentsIds, body, argumentNames, false);
+        }
+
+        private Method(int line,
+                       List<Integer> argumentsIds, Supplier<Block> bodyDecoder,
+                       Map<Integer, String> argumentNames,
+                       boolean memoized) {
+            this(line, argumentsIds, (Block) null, argumentNames, memoized);
+            this.bodyDecoder = bodyDecoder;
+        }
+
+        /**
+         * @return a method whose body is decoded when it is accessed for the first time.
+         */
+        public static Method lazy(int line,
+                                  List<Integer> argumentsIds, Supplier<Block> bodyDecoder,
+                                  Map<Integer, String> argumentNames,
+                                  boolean memoized) {
+            return new Method(line, argumentsIds, bodyDecoder, argumentNames, memoized);
+        }
+
+        public Block body() {
+            Block result = body;
+            if (result == null) {
+                synchronized (this) {
+                    result = body;
+                    if (result == null) {
+                        result = bodyDecoder.get();
+                        body = result;
+                        bodyDecoder = null;
+                    }
+                }
+            }
+            return result;
         }
 
         @Override
@@ -325,13 +370,14 @@ public abstract class ResolvedStatement {
             if (o == null || getClass() != o.getClass()) return false;
             Method method = (Method) o;
             return line == method.line &&
+                    memoized == method.memoized &&
                     Objects.equals(argumentsIds, method.argumentsIds) &&
-                    Objects.equals(body, method.body);
+                    Objects.equals(body(), method.body());
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(line, argumentsIds, body);
+            return Objects.hash(line, argumentsIds, body(), memoized);
         }
 
         @Override
@@ -339,7 +385,8 @@ public abstract class ResolvedStatement {
             return "Method{" +
                     "line=" + line +
                     ", argumentsNames=" + argumentsIds +
-                    ", body=" + body +
+                    ", body=" + body() +
+                    ", memoized=" + memoized +
                     '}';
         }
     }
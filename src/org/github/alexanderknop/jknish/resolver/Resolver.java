@@ -15,12 +15,35 @@ import static org.github.alexanderknop.jknish.parser.MethodId.processArgumentsLi
 public class Resolver {
     public static ResolvedScript resolve(
             Statement.Block script, KnishErrorReporter reporter, KnishModule... modules) {
-        return new ResolverVisitor(reporter).resolve(script, modules);
+        return resolve(script, reporter, Collections.emptyMap(), modules);
+    }
+
+    /**
+     * Resolves the script; the classes of the imported modules are declared in the scope of the script.
+     *
+     * @param imports the classes of the imported modules by the paths in the import statements,
+     *                the modules that could not be loaded are left out.
+     */
+    public static ResolvedScript resolve(
+            Statement.Block script, KnishErrorReporter reporter,
+            Map<String, List<Statement.Class>> imports, KnishModule... modules) {
+        return new ResolverVisitor(reporter, imports, false).resolve(script, modules);
+    }
+
+    /**
+     * Resolves a module; the classes of a module are exported, so they are never reported as unused.
+     */
+    public static ResolvedScript resolveModule(
+            Statement.Block module, KnishErrorReporter reporter,
+            Map<String, List<Statement.Class>> imports, KnishModule... modules) {
+        return new ResolverVisitor(reporter, imports, true).resolve(module, modules);
     }
 
     private static class ResolverVisitor implements
             Expression.Visitor<ResolvedExpression>, Statement.Visitor<ResolvedStatement> {
         private final KnishErrorReporter reporter;
+        private final Map<String, List<Statement.Class>> imports;
+        private final boolean exportsClasses;
 
         private final Stack<Map<String, VariableInformation>> scopes = new Stack<>();
         private final Stack<Map<Integer, Statement.Class>> classes = new Stack<>();
@@ -28,17 +51,20 @@ public class Resolver {
         private final Stack<ClassScopeType> classScopeTypes = new Stack<>();
         private int currentVariable = 0;
 
-        public ResolverVisitor(KnishErrorReporter reporter) {
+        public ResolverVisitor(KnishErrorReporter reporter,
+                               Map<String, List<Statement.Class>> imports, boolean exportsClasses) {
             this.reporter = reporter;
+            this.imports = imports;
+            this.exportsClasses = exportsClasses;
         }
 
         private ResolvedScript resolve(Statement.Block script, KnishModule[] modules) {
             beginScope();
 
             for (KnishModule module : modules) {
-                module.getObjects().keySet().forEach(objectName -> defineVariable(0, objectName));
+                module.getObjects().keySet().forEach(this::defineGlobal);
             }
-            KnishCore.core().getObjects().keySet().forEach(objectName -> defineVariable(0, objectName));
+            KnishCore.core().getObjects().keySet().forEach(this::defineGlobal);
 
             return new ResolvedScript(visitBlockStatement(script), definedVariables());
         }
@@ -152,8 +178,10 @@ public class Resolver {
         }
 
         private void reportUnused() {
+            // the global scope and the scope of the script
+            boolean exported = exportsClasses && scopes.size() == 2;
             scopes.peek().forEach((name, information) -> {
-                if (!information.used) {
+                if (!information.used && !(exported && information.isClass)) {
                     if (information.isClass) {
                         reporter.error(information.line, "The class " +
                                 name + " is defined, but never used.");
@@ -191,6 +219,14 @@ public class Resolver {
             return newId;
         }
 
+        // globals are bound to the objects of the modules, hence, they cannot be reassigned
+        private void defineGlobal(String name) {
+            VariableInformation information =
+                    new VariableInformation(0, freshId(), true, false);
+            information.isGlobal = true;
+            scopes.peek().put(name, information);
+        }
+
         private VariableInformation variableInformation(int line, String variable) {
             for (int i = scopes.size() - 1; i >= 0; i--) {
                 if (scopes.get(i).containsKey(variable)) {
@@ -217,6 +253,10 @@ public class Resolver {
             return variableInformation(line, variable).isClass;
         }
 
+        private boolean isGlobal(int line, String variable) {
+            return variableInformation(line, variable).isGlobal;
+        }
+
         private Map<Integer, String> definedVariables() {
             HashMap<Integer, String> names = new HashMap<>();
             scopes.peek().forEach((name, information) -> names.put(information.id, name));
@@ -234,14 +274,14 @@ public class Resolver {
         private ResolvedStatement.Class resolveClass(Statement.Class klass) {
             int staticThisId = beginClassScope(ClassScopeType.STATIC);
             Map<MethodId, ResolvedStatement.Method> staticMethods =
-                    resolveMethods(klass.staticMethods);
+                    resolveMethods(klass.staticMethods, klass.memoized);
 
             int thisId = beginClassScope(ClassScopeType.REGULAR);
 
             Map<MethodId, ResolvedStatement.Method> methods =
-                    resolveMethods(klass.methods);
+                    resolveMethods(klass.methods, klass.memoized);
             Map<MethodId, ResolvedStatement.Method> constructors =
-                    resolveMethods(klass.constructors);
+                    resolveMethods(klass.constructors, false);
 
             Map<Integer, String> fields = definedFields();
             endClassScope();
@@ -267,6 +307,11 @@ public class Resolver {
                         "Cannot assign a new value to the class variable " +
                                 assign.variable + ".");
                 return null;
+            } else if (isGlobal(assign.line, assign.variable)) {
+                reporter.error(assign.line,
+                        "Cannot assign a new value to the global object " +
+                                assign.variable + ".");
+                return null;
             } else {
                 return new ResolvedExpression.Assign(assign.line,
                         variableId,
@@ -429,6 +474,12 @@ public class Resolver {
 
         @Override
         public ResolvedStatement visitVarStatement(Statement.Var var) {
+            if (isImported(var.line, var.name)) {
+                if (var.initializer != null) {
+                    resolveExpression(var.initializer);
+                }
+                return null;
+            }
             int variableId = declareVariable(var.line, var.name);
             ResolvedStatement.Expression resolvedStatement = null;
             if (var.initializer != null) {
@@ -469,12 +520,53 @@ public class Resolver {
 
         @Override
         public ResolvedStatement visitClassStatement(Statement.Class klass) {
+            if (isImported(klass.line, klass.name)) {
+                return null;
+            }
             defineClass(defineVariable(klass.line, klass.name, true), klass);
             return null;
         }
 
+        @Override
+        public ResolvedStatement visitImportStatement(Statement.Import anImport) {
+            List<Statement.Class> importedClasses = imports.get(anImport.path);
+            if (importedClasses == null) {
+                // the loader reported why the module could not be loaded
+                return null;
+            }
+
+            for (Statement.Class klass : importedClasses) {
+                VariableInformation defined = scopes.peek().get(klass.name);
+                if (defined != null) {
+                    // the modules imported by several modules are imported only once
+                    if (defined.imported != klass) {
+                        reporter.error(anImport.line, "The class " + klass.name +
+                                " imported from \"" + anImport.path + "\" is already defined.");
+                    }
+                    continue;
+                }
+
+                int classId = defineVariable(anImport.line, klass.name, true);
+                VariableInformation information = scopes.peek().get(klass.name);
+                information.used = true;
+                information.imported = klass;
+                defineClass(classId, klass);
+            }
+            return null;
+        }
+
+        // the imported classes cannot be redefined, the redefinitions are reported and left out
+        private boolean isImported(int line, String name) {
+            VariableInformation defined = scopes.peek().get(name);
+            if (defined != null && defined.imported != null) {
+                reporter.error(line, "Cannot redefine the imported class " + name + ".");
+                return true;
+            }
+            return false;
+        }
+
         private Map<MethodId, ResolvedStatement.Method> resolveMethods(
-                List<Statement.Method> methods) {
+                List<Statement.Method> methods, boolean memoizedClass) {
             Map<MethodId, ResolvedStatement.Method> resolvedMethods = new LinkedHashMap<>();
             for (Statement.Method method : methods) {
                 beginScope();
@@ -489,7 +581,8 @@ public class Resolver {
                                 method.body.line,
                                 argumentsIds,
                                 visitBlockStatement(method.body.block),
-                                definedVariables()
+                                definedVariables(),
+                                memoizedClass || method.memoized
                         )
                 );
                 endScope();
@@ -510,6 +603,9 @@ public class Resolver {
             public final boolean isClass;
             public boolean used;
             public boolean defined;
+            public boolean isGlobal = false;
+            // the declaration of an imported class
+            public Statement.Class imported = null;
 
             public VariableInformation(int line, int id,
                                        boolean defined, boolean isClass) {
@@ -90,7 +90,7 @@ public class ReturnChecker {
             boolean previousInMethod = inMethod;
             inMethod = true;
 
-            if (!check(method.body)) {
+            if (!check(method.body())) {
                 setReturnType(method.line, ReturnType.EMPTY);
             }
 
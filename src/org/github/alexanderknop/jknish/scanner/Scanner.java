@@ -56,6 +56,7 @@ public final class Scanner {
             case ';' -> addToken(SEMICOLON);
             case '*' -> addToken(STAR);
             case '%' -> addToken(PERCENT);
+            case '#' -> addToken(HASH);
 
             case '!' -> addToken(match('=') ?
                     match('=') ?
@@ -205,5 +206,6 @@ public final class Scanner {
         keywords.put("return", RETURN);
         keywords.put("static", STATIC);
         keywords.put("construct", CONSTRUCT);
+        keywords.put("import", IMPORT);
     }
 }
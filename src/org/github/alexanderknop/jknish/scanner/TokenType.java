@@ -6,7 +6,7 @@ public enum TokenType {
     // Single-character tokens.
     LEFT_PAREN, RIGHT_PAREN, LEFT_BRACE, RIGHT_BRACE,
     COMMA, DOT, MINUS, PLUS, SEMICOLON, SLASH, STAR,
-    VERTICAL, PERCENT,
+    VERTICAL, PERCENT, HASH,
 
     // One or two character tokens.
     BANG, BANG_EQUAL, BANG_EQUAL_EQUAL,
@@ -28,6 +28,7 @@ public enum TokenType {
     WHILE,
     CLASS, STATIC, CONSTRUCT,
     RETURN,
+    IMPORT,
 
     EOF
 }
\ No newline at end of file
@@ -0,0 +1,227 @@
+package org.github.alexanderknop.jknish.typechecker;
+
+import org.github.alexanderknop.jknish.SourceHash;
+import org.github.alexanderknop.jknish.parser.MethodId;
+import org.github.alexanderknop.jknish.resolver.ResolvedExpression;
+import org.github.alexanderknop.jknish.resolver.ResolvedStatement;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Identifies a class of a script by its code rather than by the ids the resolver assigned to
+ * its variables: the variables of the class are numbered in the order they are declared, and the
+ * variables of the enclosing scopes are referred to by their names. The lines are left out,
+ * so a class keeps its fingerprint when the code around it changes.
+ */
+final class ClassFingerprint implements
+        ResolvedStatement.Visitor<Void>, ResolvedExpression.Visitor<Void> {
+    private static final Comparator<Map.Entry<Integer, String>> BY_NAME = Map.Entry.comparingByValue();
+    private static final Comparator<Map.Entry<MethodId, ResolvedStatement.Method>> BY_METHOD_ID =
+            Comparator.comparing(entry -> entry.getKey().toString());
+
+    // the hash of the canonical code of the class
+    final String key;
+    // the names of the variables of the enclosing block the class refers to, including its own one
+    final Set<String> names;
+
+    private final Map<Integer, String> enclosing;
+    private final Map<Integer, String> globals;
+
+    private final StringBuilder code = new StringBuilder();
+    private final Map<Integer, Integer> declared = new HashMap<>();
+    private final Set<String> referred = new LinkedHashSet<>();
+
+    private ClassFingerprint(int classId, ResolvedStatement.Class klass,
+                             Map<Integer, String> enclosing, Map<Integer, String> globals) {
+        this.enclosing = enclosing;
+        this.globals = globals;
+
+        referred.add(enclosing.get(classId));
+        name(enclosing.get(classId));
+        klass(klass);
+
+        this.key = SourceHash.of(code.toString());
+        this.names = referred;
+    }
+
+    /**
+     * @param enclosing the names of the variables of the block the class is defined in.
+     * @param globals   the names of the globals of the script.
+     */
+    static ClassFingerprint of(int classId, ResolvedStatement.Class klass,
+                               Map<Integer, String> enclosing, Map<Integer, String> globals) {
+        return new ClassFingerprint(classId, klass, enclosing, globals);
+    }
+
+    private void klass(ResolvedStatement.Class klass) {
+        code.append("class{");
+        declareAll(klass.fields);
+        declareAll(klass.staticFields);
+        declare(klass.thisId);
+        declare(klass.staticThisId);
+        methods("static", klass.staticMethods);
+        methods("construct", klass.constructors);
+        methods("method", klass.methods);
+        code.append('}');
+    }
+
+    private void methods(String kind, Map<MethodId, ResolvedStatement.Method> methods) {
+        methods.entrySet().stream().sorted(BY_METHOD_ID).forEach(entry -> {
+            code.append(kind);
+            name(entry.getKey().toString());
+            List<Integer> argumentsIds = entry.getValue().argumentsIds;
+            if (argumentsIds != null) {
+                argumentsIds.forEach(this::declare);
+            }
+            visitBlockStatement(entry.getValue().body());
+        });
+    }
+
+    private void declareAll(Map<Integer, String> names) {
+        names.entrySet().stream().sorted(BY_NAME).forEach(entry -> {
+            declare(entry.getKey());
+            name(entry.getValue());
+        });
+    }
+
+    private void declare(int id) {
+        declared.put(id, declared.size());
+    }
+
+    private void name(String name) {
+        // the length keeps apart the names that are prefixes of the code after them
+        code.append(name.length()).append(':').append(name);
+    }
+
+    private void variable(int id) {
+        Integer number = declared.get(id);
+        if (number != null) {
+            code.append('#').append(number).append(';');
+        } else if (enclosing.containsKey(id)) {
+            code.append('$');
+            name(enclosing.get(id));
+            referred.add(enclosing.get(id));
+        } else if (globals.containsKey(id)) {
+            code.append('@');
+            name(globals.get(id));
+        } else {
+            throw new UnsupportedOperationException("Undefined variable with id equal to " + id);
+        }
+    }
+
+    private void expression(ResolvedExpression expression) {
+        expression.accept(this);
+    }
+
+    @Override
+    public Void visitExpressionStatement(ResolvedStatement.Expression expression) {
+        code.append("expression(");
+        expression(expression.resolvedExpression);
+        code.append(')');
+        return null;
+    }
+
+    @Override
+    public Void visitorIfStatement(ResolvedStatement.If anIf) {
+        code.append("if(");
+        expression(anIf.condition);
+        anIf.thenBranch.accept(this);
+        if (anIf.elseBranch != null) {
+            code.append("else");
+            anIf.elseBranch.accept(this);
+        }
+        code.append(')');
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStatement(ResolvedStatement.While aWhile) {
+        code.append("while(");
+        expression(aWhile.condition);
+        aWhile.body.accept(this);
+        code.append(')');
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStatement(ResolvedStatement.Block block) {
+        code.append("block(");
+        declareAll(block.names);
+        block.classes.entrySet().stream()
+                .sorted(Comparator.comparing(entry -> block.names.get(entry.getKey())))
+                .forEach(entry -> {
+                    variable(entry.getKey());
+                    klass(entry.getValue());
+                });
+        block.resolvedStatements.forEach(statement -> statement.accept(this));
+        code.append(')');
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStatement(ResolvedStatement.Return aReturn) {
+        code.append("return(");
+        if (aReturn.value != null) {
+            expression(aReturn.value);
+        }
+        code.append(')');
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpression(ResolvedExpression.Assign assign) {
+        code.append("assign(");
+        variable(assign.variableId);
+        expression(assign.value);
+        code.append(')');
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpression(ResolvedExpression.Call call) {
+        code.append("call(");
+        expression(call.object);
+        name(call.method);
+        if (call.arguments != null) {
+            code.append('(');
+            call.arguments.forEach(this::expression);
+            code.append(')');
+        }
+        code.append(')');
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpression(ResolvedExpression.Literal literal) {
+        if (literal.value == null) {
+            code.append("nil");
+        } else if (literal.value instanceof String) {
+            code.append('"');
+            name((String) literal.value);
+        } else {
+            code.append(literal.value).append(';');
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpression(ResolvedExpression.Variable variable) {
+        variable(variable.variableId);
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpression(ResolvedExpression.Logical logical) {
+        code.append("logical(");
+        expression(logical.left);
+        code.append(logical.operator).append(';');
+        expression(logical.right);
+        code.append(')');
+        return null;
+    }
+}
@@ -0,0 +1,171 @@
+package org.github.alexanderknop.jknish.typechecker;
+
+import org.github.alexanderknop.jknish.objects.KnishModule;
+import org.github.alexanderknop.jknish.parser.MethodId;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The constraints a class puts on the variables of the enclosing block, solved and simplified
+ * while these variables are not constrained by anything else. Combined with the constraints of
+ * the rest of the script, they have the same solutions as the constraints of the class itself.
+ * <p>
+ * The summary is shared by the checks, so it keeps its own copies of the types; the types of
+ * the host modules are frozen and shared as they are. Every check gets fresh copies of the types.
+ */
+final class ClassSummary {
+    // the host modules the frozen types of the summary belong to
+    final List<KnishModule> modules;
+
+    // the types of the variables of the enclosing block by their names
+    private final Map<String, SimpleType> variables;
+    // the constraints lefts[i] <: rights[i]
+    private final SimpleType[] lefts;
+    private final SimpleType[] rights;
+
+    private ClassSummary(List<KnishModule> modules, Map<String, SimpleType> variables,
+                         List<SimpleType> lefts, List<SimpleType> rights) {
+        this.modules = modules;
+        this.variables = variables;
+        this.lefts = lefts.toArray(new SimpleType[0]);
+        this.rights = rights.toArray(new SimpleType[0]);
+    }
+
+    /**
+     * Copies the bounds reachable from the variables of the enclosing block and all
+     * the bounds the constrainer added to the frozen variables.
+     */
+    static ClassSummary of(Constrainer constrainer, Map<String, SimpleType> variables,
+                           List<KnishModule> modules) {
+        Deque<SimpleType.Variable> unvisited = new ArrayDeque<>();
+        Copier copier = new Copier(variable -> {
+            unvisited.add(variable);
+            return variable.isFrozen() ? variable : SimpleType.variable();
+        });
+
+        Map<String, SimpleType> copiedVariables = new HashMap<>();
+        variables.forEach((name, type) -> copiedVariables.put(name, copier.copy(type)));
+        constrainer.frozenVariables().forEach(copier::copy);
+
+        List<SimpleType> lefts = new ArrayList<>();
+        List<SimpleType> rights = new ArrayList<>();
+        while (!unvisited.isEmpty()) {
+            SimpleType.Variable variable = unvisited.poll();
+            SimpleType copy = copier.copy(variable);
+            if (variable.isFrozen()) {
+                constrainer.forEachAddedUpperBound(variable, bound -> {
+                    lefts.add(copy);
+                    rights.add(copier.copy(bound));
+                });
+                constrainer.forEachAddedLowerBound(variable, bound -> {
+                    lefts.add(copier.copy(bound));
+                    rights.add(copy);
+                });
+            } else {
+                variable.upperBound.forEach(bound -> {
+                    lefts.add(copy);
+                    rights.add(copier.copy(bound));
+                });
+                variable.lowerBound.forEach(bound -> {
+                    lefts.add(copier.copy(bound));
+                    rights.add(copy);
+                });
+            }
+        }
+        return new ClassSummary(modules, copiedVariables, lefts, rights);
+    }
+
+    /**
+     * Adds the constraints of the summary to the constrainer.
+     *
+     * @param variables the types of the variables of the enclosing block by their names.
+     * @param message   the message reported if the constraints of the summary contradict the other ones.
+     */
+    void apply(Constrainer constrainer, Map<String, SimpleType> variables, TypeErrorMessage message) {
+        Map<SimpleType.Variable, SimpleType> bound = new IdentityHashMap<>();
+        List<String> merged = new ArrayList<>();
+        this.variables.forEach((name, type) -> {
+            if (type instanceof SimpleType.Variable && !((SimpleType.Variable) type).isFrozen() &&
+                    !bound.containsKey(type)) {
+                bound.put((SimpleType.Variable) type, variables.get(name));
+            } else {
+                merged.add(name);
+            }
+        });
+
+        Copier copier = new Copier(variable -> variable.isFrozen() ? variable :
+                bound.computeIfAbsent(variable, key -> SimpleType.variable()));
+        // the variables the class made equivalent to each other
+        for (String name : merged) {
+            SimpleType type = copier.copy(this.variables.get(name));
+            constrainer.constrain(type, variables.get(name), message);
+            constrainer.constrain(variables.get(name), type, message);
+        }
+        for (int i = 0; i < lefts.length; i++) {
+            constrainer.constrain(copier.copy(lefts[i]), copier.copy(rights[i]), message);
+        }
+    }
+
+    /**
+     * Copies the types replacing every variable with the one given by the function;
+     * the types without replaced variables are not copied.
+     */
+    private static final class Copier {
+        private final Function<SimpleType.Variable, SimpleType> variables;
+        private final Map<SimpleType, SimpleType> copies = new IdentityHashMap<>();
+
+        private Copier(Function<SimpleType.Variable, SimpleType> variables) {
+            this.variables = variables;
+        }
+
+        SimpleType copy(SimpleType type) {
+            if (type instanceof SimpleType.Variable) {
+                type = Constrainer.representative(type);
+            }
+            SimpleType copy = copies.get(type);
+            if (copy != null) {
+                return copy;
+            }
+
+            if (type instanceof SimpleType.Variable) {
+                copy = variables.apply((SimpleType.Variable) type);
+            } else if (type instanceof SimpleType.Labeled) {
+                SimpleType.Labeled labeled = (SimpleType.Labeled) type;
+                SimpleType copied = copy(labeled.type);
+                copy = copied == labeled.type ? labeled : new SimpleType.Labeled(labeled.name, copied);
+            } else if (type instanceof SimpleType.Class) {
+                copy = copy((SimpleType.Class) type);
+            } else {
+                copy = type;
+            }
+            copies.put(type, copy);
+            return copy;
+        }
+
+        private SimpleType copy(SimpleType.Class klass) {
+            boolean changed = false;
+            Map<MethodId, SimpleType.Method> methods = new HashMap<>();
+            for (Map.Entry<MethodId, SimpleType.Method> entry : klass.methods.entrySet()) {
+                SimpleType.Method method = entry.getValue();
+                List<SimpleType> arguments = method.arguments == null ? null : new ArrayList<>();
+                if (arguments != null) {
+                    for (SimpleType argument : method.arguments) {
+                        arguments.add(copy(argument));
+                        changed |= arguments.get(arguments.size() - 1) != argument;
+                    }
+                }
+                SimpleType value = copy(method.value);
+                changed |= value != method.value;
+                methods.put(entry.getKey(), new SimpleType.Method(arguments, value));
+            }
+            return changed ? new SimpleType.Class(methods) : klass;
+        }
+    }
+}
@@ -2,15 +2,104 @@ package org.github.alexanderknop.jknish.typechecker;
 
 import org.github.alexanderknop.jknish.parser.MethodId;
 
-import java.util.HashSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
+/**
+ * Solves the subtyping constraints incrementally: every new constraint propagates
+ * the bounds of the variables it relates.
+ * <p>
+ * The constraints derived while solving a constraint are queued in a worklist and solved
+ * in the order they were derived, so the depth of the stack does not depend on the length
+ * of the chains of constraints; the bounds keep the order they were added in, which makes
+ * the order of the solution (and of the reported errors) deterministic.
+ * <p>
+ * The variables of a cycle {@code a <: b <: ... <: a} have the same bounds,
+ * so the constrainer merges them with union-find when the cycle is closed, and
+ * the bounds of the whole cycle are propagated only once afterwards.
+ * <p>
+ * The solved constraints are kept in the bounds of the variables; when they outnumber
+ * the constraints left by the previous simplification, the type checker is expected to
+ * {@link #simplify(Collection) simplify} them with the types it still refers to.
+ */
 class Constrainer {
-    private final Set<Inequality> cash = new HashSet<>();
+    private static final Comparator<SimpleType.Variable> BY_ORDER =
+            Comparator.comparingInt(variable -> variable.order);
+
+    // the constraints solved since the last simplification are simplified only in batches
+    private static final int MINIMAL_SIMPLIFICATION = 1 << 12;
+
+    private InequalitySet cash = new InequalitySet();
+    // the pairs of types that contradict each other, an error is reported for the first of them only,
+    // so they are never forgotten by the simplifications
+    private final InequalitySet failures = new InequalitySet();
+    // the constraints that are not solved yet, in the order they were derived
+    private final Deque<Constraint> worklist = new ArrayDeque<>();
+
+    // the bounds added to the frozen variables shared by all the checks
+    private final Map<SimpleType.Variable, SimpleType.Bounds> addedUpperBounds = new HashMap<>();
+    private final Map<SimpleType.Variable, SimpleType.Bounds> addedLowerBounds = new HashMap<>();
+
+    // the bounds of the topological order of the variables that are not frozen
+    private int firstOrder = -1;
+    private int lastOrder = 0;
+
+    // the number of constraints left by the last simplification and solved after it
+    private int simplifiedConstraints = 0;
+    private int solvedConstraints = 0;
 
     void constrain(SimpleType left, SimpleType right, TypeErrorMessage message) {
+        propagate(left, right, message);
+        solve();
+    }
+
+    void constrain(SimpleType.Method left, SimpleType.Method right, TypeErrorMessage message) {
+        propagate(left, right, message);
+        solve();
+    }
+
+    private void propagate(SimpleType left, SimpleType right, TypeErrorMessage message) {
+        worklist.add(new Constraint(left, right, message));
+    }
+
+    private void propagate(SimpleType.Method left, SimpleType.Method right, TypeErrorMessage message) {
+        propagate(left.value, right.value, message);
+        if (left.arguments != null) {
+            for (int i = 0; i < left.arguments.size(); i++) {
+                propagate(right.arguments.get(i), left.arguments.get(i), message);
+            }
+        }
+    }
+
+    private void solve() {
+        while (!worklist.isEmpty()) {
+            Constraint constraint = worklist.poll();
+            solve(constraint.left, constraint.right, constraint.message);
+        }
+    }
+
+    private void solve(SimpleType left, SimpleType right, TypeErrorMessage message) {
+        if (left instanceof SimpleType.Variable) {
+            left = find((SimpleType.Variable) left);
+        }
+        if (right instanceof SimpleType.Variable) {
+            right = find((SimpleType.Variable) right);
+        }
+        if (left == right) {
+            return;
+        }
 
         if (left instanceof SimpleType.Bottom) {
             return;
@@ -20,12 +109,10 @@ class Constrainer {
             return;
         }
 
-        final Inequality inequality = new Inequality(left, right);
-        if (cash.contains(inequality)) {
+        if (!cash.add(left, right)) {
             return;
-        } else {
-            cash.add(inequality);
         }
+        solvedConstraints++;
 
 
         if (left instanceof SimpleType.Labeled && right instanceof SimpleType.Labeled) {
@@ -33,7 +120,7 @@ class Constrainer {
             SimpleType.Labeled labeledRight = (SimpleType.Labeled) right;
 
             if (!labeledLeft.name.equals(labeledRight.name)) {
-                message.send();
+                fail(left, right, message);
             }
         } else if (left instanceof SimpleType.Class && right instanceof SimpleType.Class) {
             SimpleType.Class leftClass = (SimpleType.Class) left;
@@ -41,65 +128,346 @@ class Constrainer {
 
             for (Map.Entry<MethodId, SimpleType.Method> method : rightClass.methods.entrySet()) {
                 if (leftClass.methods.containsKey(method.getKey())) {
-                    constrain(leftClass.methods.get(method.getKey()), method.getValue(), message);
+                    propagate(leftClass.methods.get(method.getKey()), method.getValue(), message);
                 } else {
-                    message.send();
+                    fail(left, right, message);
                     break;
                 }
             }
+        } else if (left instanceof SimpleType.Variable &&
+                right instanceof SimpleType.Variable &&
+                collapseCycle((SimpleType.Variable) left, (SimpleType.Variable) right, message)) {
+            return;
         } else if (left instanceof SimpleType.Variable) {
             SimpleType.Variable variable = (SimpleType.Variable) left;
-            variable.upperBound.add(right);
-            variable.lowerBound
-                    .forEach(lowerBound -> constrain(lowerBound, right, message));
+            SimpleType upper = right;
+            upperBound(variable).add(upper);
+            forEachLowerBound(variable, lowerBound -> propagate(lowerBound, upper, message));
         } else if (right instanceof SimpleType.Variable) {
             SimpleType.Variable variable = (SimpleType.Variable) right;
-            variable.lowerBound.add(left);
-            variable.upperBound
-                    .forEach(upperBound -> constrain(left, upperBound, message));
+            SimpleType lower = left;
+            lowerBound(variable).add(lower);
+            forEachUpperBound(variable, upperBound -> propagate(lower, upperBound, message));
         } else if (left instanceof SimpleType.Labeled) {
             SimpleType.Labeled labeledLeft = (SimpleType.Labeled) left;
-            constrain(labeledLeft.type, right, message);
+            propagate(labeledLeft.type, right, message);
         } else {
-            message.send();
+            fail(left, right, message);
         }
     }
 
-    void constrain(SimpleType.Method left, SimpleType.Method right, TypeErrorMessage message) {
-        constrain(left.value, right.value, message);
-        if (left.arguments != null) {
-            for (int i = 0; i < left.arguments.size(); i++) {
-                constrain(right.arguments.get(i), left.arguments.get(i), message);
+    private void fail(SimpleType left, SimpleType right, TypeErrorMessage message) {
+        failures.add(left, right);
+        message.send();
+    }
+
+    /**
+     * @return true if the constraints solved since the last simplification outnumber
+     * twice the ones left by it, so that all the simplifications take linear time in total.
+     */
+    boolean needsSimplification() {
+        return solvedConstraints > Math.max(MINIMAL_SIMPLIFICATION, 2 * simplifiedConstraints);
+    }
+
+    /**
+     * Simplifies the solved constraints; the roots are the types that can be constrained
+     * later, all the other types are reachable from them only through the bounds.
+     */
+    void simplify(Collection<SimpleType> roots) {
+        assert worklist.isEmpty();
+        new Simplifier(this).simplify(roots);
+    }
+
+    /**
+     * Forgets the solved constraints except the ones kept in the bounds of the given variables,
+     * in the bounds added to the frozen variables and the ones that failed.
+     */
+    void retain(Collection<SimpleType.Variable> variables) {
+        cash = new InequalitySet();
+        failures.forEach(cash::add);
+        variables.forEach(variable -> variable.predecessors = null);
+        for (SimpleType.Variable variable : variables) {
+            variable.upperBound.forEach(bound -> {
+                cash.add(variable, bound);
+                if (bound instanceof SimpleType.Variable && !((SimpleType.Variable) bound).isFrozen()) {
+                    predecessors((SimpleType.Variable) bound).add(variable);
+                }
+            });
+            variable.lowerBound.forEach(bound -> cash.add(bound, variable));
+        }
+        addedUpperBounds.forEach((variable, bounds) -> bounds.forEach(bound -> cash.add(variable, bound)));
+        addedLowerBounds.forEach((variable, bounds) -> bounds.forEach(bound -> cash.add(bound, variable)));
+
+        simplifiedConstraints = cash.size() - failures.size();
+        solvedConstraints = 0;
+    }
+
+    // the frozen variables this constrainer added bounds to
+    Set<SimpleType.Variable> frozenVariables() {
+        Set<SimpleType.Variable> frozen = new LinkedHashSet<>(addedUpperBounds.keySet());
+        frozen.addAll(addedLowerBounds.keySet());
+        return frozen;
+    }
+
+    void forEachAddedUpperBound(SimpleType.Variable variable, Consumer<SimpleType> action) {
+        SimpleType.Bounds added = addedUpperBounds.get(variable);
+        if (added != null) {
+            added.forEach(action);
+        }
+    }
+
+    void forEachAddedLowerBound(SimpleType.Variable variable, Consumer<SimpleType> action) {
+        SimpleType.Bounds added = addedLowerBounds.get(variable);
+        if (added != null) {
+            added.forEach(action);
+        }
+    }
+
+    void dropAddedUpperBounds(SimpleType.Variable variable) {
+        addedUpperBounds.remove(variable);
+    }
+
+    void dropAddedLowerBounds(SimpleType.Variable variable) {
+        addedLowerBounds.remove(variable);
+    }
+
+    void compactAddedBounds(SimpleType.Variable variable, UnaryOperator<SimpleType> replacement) {
+        SimpleType.Bounds upper = addedUpperBounds.get(variable);
+        if (upper != null) {
+            upper.compact(replacement, bound -> true);
+        }
+        SimpleType.Bounds lower = addedLowerBounds.get(variable);
+        if (lower != null) {
+            lower.compact(replacement, bound -> true);
+        }
+    }
+
+    static SimpleType.Variable find(SimpleType.Variable variable) {
+        SimpleType.Variable root = variable;
+        while (root.representative != root) {
+            root = root.representative;
+        }
+        // compress the path
+        while (variable.representative != root) {
+            SimpleType.Variable next = variable.representative;
+            variable.representative = root;
+            variable = next;
+        }
+        return root;
+    }
+
+    /**
+     * If {@code right <: ... <: left} already holds, the new constraint {@code left <: right}
+     * closes a cycle; all the variables of the cycle are merged into one.
+     * <p>
+     * The constrainer keeps the variables related to each other in a topological order of
+     * the constraints between them; a cycle can be closed only by a constraint that goes
+     * against the order, and only the variables between the two in the order are searched.
+     *
+     * @return true if the constraint closed a cycle and was solved by merging the variables.
+     */
+    private boolean collapseCycle(SimpleType.Variable left, SimpleType.Variable right,
+                                  TypeErrorMessage message) {
+        // the frozen variables are shared by all the checks, so they are never merged
+        if (left.isFrozen() || right.isFrozen()) {
+            return false;
+        }
+
+        // a variable related to no other variable yet can be placed anywhere in the order
+        if (left.order == SimpleType.Variable.UNORDERED) {
+            left.order = firstOrder--;
+        }
+        if (right.order == SimpleType.Variable.UNORDERED) {
+            right.order = lastOrder++;
+        }
+        predecessors(right).add(left);
+        if (left.order < right.order) {
+            return false;
+        }
+
+        Set<SimpleType.Variable> forward = forwardRegion(List.of(right), left.order);
+        if (!forward.contains(left)) {
+            restoreOrder(left, forward);
+            return false;
+        }
+
+        // the variables of the region from which left is reachable form the cycle
+        Set<SimpleType.Variable> cycle = backwardRegion(left, forward::contains);
+        int order = left.order;
+        SimpleType.Variable merged = null;
+        for (SimpleType.Variable variable : cycle) {
+            merged = merged == null ? variable : union(merged, variable);
+        }
+
+        SimpleType.Variable representative = merged;
+        representative.order = order;
+        // the bounds of the merged variables may repeat each other
+        representative.upperBound.compact(Constrainer::representative, bound -> bound != representative);
+        representative.lowerBound.compact(Constrainer::representative, bound -> bound != representative);
+        predecessors(representative).removeIf(variable -> find(variable) == representative);
+
+        List<SimpleType.Variable> misplaced = new ArrayList<>();
+        successors(representative, successor -> {
+            if (successor.order < order) {
+                misplaced.add(successor);
+            }
+        });
+        if (!misplaced.isEmpty()) {
+            restoreOrder(representative, forwardRegion(misplaced, order));
+        }
+
+        // the bounds of different variables of the cycle may have never met
+        for (SimpleType lowerBound : representative.lowerBound) {
+            for (SimpleType upperBound : representative.upperBound) {
+                propagate(lowerBound, upperBound, message);
             }
         }
+        return true;
     }
 
-    private static class Inequality {
-        private final SimpleType left;
-        private final SimpleType right;
+    private static List<SimpleType.Variable> predecessors(SimpleType.Variable variable) {
+        if (variable.predecessors == null) {
+            variable.predecessors = new ArrayList<>();
+        }
+        return variable.predecessors;
+    }
 
-        public Inequality(SimpleType left, SimpleType right) {
-            this.left = left;
-            this.right = right;
+    private static void successors(SimpleType.Variable variable, Consumer<SimpleType.Variable> action) {
+        for (SimpleType bound : variable.upperBound) {
+            if (bound instanceof SimpleType.Variable) {
+                SimpleType.Variable successor = find((SimpleType.Variable) bound);
+                if (!successor.isFrozen() && successor.order != SimpleType.Variable.UNORDERED && successor != variable) {
+                    action.accept(successor);
+                }
+            }
         }
+    }
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            Inequality that = (Inequality) o;
-            return Objects.equals(left, that.left) &&
-                    Objects.equals(right, that.right);
+    /**
+     * @return the variables reachable from the given ones through the upper bounds
+     * that are not after the bound in the order.
+     */
+    private static Set<SimpleType.Variable> forwardRegion(Collection<SimpleType.Variable> from, int bound) {
+        Set<SimpleType.Variable> region = new LinkedHashSet<>(from);
+        Deque<SimpleType.Variable> unvisited = new ArrayDeque<>(from);
+        while (!unvisited.isEmpty()) {
+            successors(unvisited.pop(), successor -> {
+                if (successor.order <= bound && region.add(successor)) {
+                    unvisited.push(successor);
+                }
+            });
         }
+        return region;
+    }
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(left, right);
+    /**
+     * @return the variables accepted by the filter from which the given variable
+     * is reachable through the variables accepted by the filter.
+     */
+    private static Set<SimpleType.Variable> backwardRegion(SimpleType.Variable to,
+                                                    Predicate<SimpleType.Variable> filter) {
+        Set<SimpleType.Variable> region = new LinkedHashSet<>();
+        region.add(to);
+        Deque<SimpleType.Variable> unvisited = new ArrayDeque<>();
+        unvisited.push(to);
+        while (!unvisited.isEmpty()) {
+            for (SimpleType.Variable predecessor : predecessors(unvisited.pop())) {
+                SimpleType.Variable variable = find(predecessor);
+                if (filter.test(variable) && region.add(variable)) {
+                    unvisited.push(variable);
+                }
+            }
         }
+        return region;
+    }
 
-        @Override
-        public String toString() {
-            return left + " <: " + right;
+    /**
+     * Moves the variables of the forward region after the variable
+     * and the variables it is reachable from.
+     */
+    private static void restoreOrder(SimpleType.Variable variable, Set<SimpleType.Variable> forward) {
+        int lowest = variable.order;
+        for (SimpleType.Variable successor : forward) {
+            lowest = Math.min(lowest, successor.order);
+        }
+        int lowestForward = lowest;
+        Set<SimpleType.Variable> backward = backwardRegion(variable,
+                predecessor -> predecessor.order > lowestForward);
+
+        List<SimpleType.Variable> variables = new ArrayList<>(backward.size() + forward.size());
+        variables.addAll(backward);
+        variables.sort(BY_ORDER);
+        List<SimpleType.Variable> moved = new ArrayList<>(forward);
+        moved.sort(BY_ORDER);
+        variables.addAll(moved);
+
+        int[] orders = new int[variables.size()];
+        for (int i = 0; i < orders.length; i++) {
+            orders[i] = variables.get(i).order;
+        }
+        Arrays.sort(orders);
+        for (int i = 0; i < orders.length; i++) {
+            variables.get(i).order = orders[i];
+        }
+    }
+
+    static SimpleType representative(SimpleType type) {
+        return type instanceof SimpleType.Variable ? find((SimpleType.Variable) type) : type;
+    }
+
+    SimpleType.Variable union(SimpleType.Variable first, SimpleType.Variable second) {
+        if (first.rank < second.rank) {
+            SimpleType.Variable swap = first;
+            first = second;
+            second = swap;
+        } else if (first.rank == second.rank) {
+            first.rank++;
+        }
+
+        second.representative = first;
+        first.upperBound.addAll(second.upperBound);
+        first.lowerBound.addAll(second.lowerBound);
+        if (second.predecessors != null) {
+            predecessors(first).addAll(second.predecessors);
+            second.predecessors = null;
+        }
+        return first;
+    }
+
+    // the set the new upper bounds of the variable are added to
+    private SimpleType.Bounds upperBound(SimpleType.Variable variable) {
+        if (variable.isFrozen()) {
+            return addedUpperBounds.computeIfAbsent(variable, frozen -> new SimpleType.Bounds());
+        }
+        return variable.upperBound;
+    }
+
+    private SimpleType.Bounds lowerBound(SimpleType.Variable variable) {
+        if (variable.isFrozen()) {
+            return addedLowerBounds.computeIfAbsent(variable, frozen -> new SimpleType.Bounds());
+        }
+        return variable.lowerBound;
+    }
+
+    private void forEachUpperBound(SimpleType.Variable variable, Consumer<SimpleType> action) {
+        variable.upperBound.forEach(action);
+        forEachAddedUpperBound(variable, action);
+    }
+
+    private void forEachLowerBound(SimpleType.Variable variable, Consumer<SimpleType> action) {
+        variable.lowerBound.forEach(action);
+        forEachAddedLowerBound(variable, action);
+    }
+
+    private static class Constraint {
+        private final SimpleType left;
+        private final SimpleType right;
+        private final TypeErrorMessage message;
+
+        Constraint(SimpleType left, SimpleType right, TypeErrorMessage message) {
+            this.left = left;
+            this.right = right;
+            this.message = message;
         }
     }
 }
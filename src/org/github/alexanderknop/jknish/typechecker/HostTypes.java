@@ -0,0 +1,42 @@
+package org.github.alexanderknop.jknish.typechecker;
+
+import org.github.alexanderknop.jknish.objects.KnishCore;
+import org.github.alexanderknop.jknish.objects.KnishModule;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * The types of the classes of the host modules. The types of a sealed module
+ * are translated once and frozen, so all the checks share them.
+ */
+final class HostTypes {
+    private static final Map<KnishModule, Map<KnishModule.Class, SimpleType>> FROZEN = new WeakHashMap<>();
+
+    private static final class Core {
+        private static final Map<KnishModule.Class, SimpleType> TYPES = frozen(KnishCore.core());
+    }
+
+    static Map<KnishModule.Class, SimpleType> of(KnishModule module) {
+        if (module == KnishCore.core()) {
+            return Core.TYPES;
+        } else if (!module.isSealed()) {
+            return SimpleType.fromKnishModule(module);
+        }
+
+        synchronized (FROZEN) {
+            return FROZEN.computeIfAbsent(module, HostTypes::frozen);
+        }
+    }
+
+    private static Map<KnishModule.Class, SimpleType> frozen(KnishModule module) {
+        Map<KnishModule.Class, SimpleType> types = SimpleType.fromKnishModule(module);
+        SimpleType.freeze(types.values());
+        return unmodifiableMap(types);
+    }
+
+    private HostTypes() {
+    }
+}
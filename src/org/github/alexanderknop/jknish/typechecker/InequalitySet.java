@@ -0,0 +1,85 @@
+package org.github.alexanderknop.jknish.typechecker;
+
+import java.util.function.BiConsumer;
+
+/**
+ * A set of the pairs of types the constrainer has already seen. The types are compared
+ * by identity, and the pairs are kept in an open-addressing table with linear probing,
+ * so a pair costs two references instead of an entry of a hash map.
+ */
+class InequalitySet {
+    private static final int INITIAL_CAPACITY = 64;
+
+    // the left type of the i-th slot is at 2i and the right one is at 2i + 1
+    private SimpleType[] table = new SimpleType[2 * INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * @return true if the set did not contain the pair.
+     */
+    boolean add(SimpleType left, SimpleType right) {
+        int mask = table.length / 2 - 1;
+        int slot = hash(left, right) & mask;
+        while (table[2 * slot] != null) {
+            if (table[2 * slot] == left && table[2 * slot + 1] == right) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        table[2 * slot] = left;
+        table[2 * slot + 1] = right;
+        size++;
+        if (2 * size > table.length / 2) {
+            resize();
+        }
+        return true;
+    }
+
+    boolean contains(SimpleType left, SimpleType right) {
+        int mask = table.length / 2 - 1;
+        int slot = hash(left, right) & mask;
+        while (table[2 * slot] != null) {
+            if (table[2 * slot] == left && table[2 * slot + 1] == right) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void forEach(BiConsumer<SimpleType, SimpleType> action) {
+        for (int i = 0; i < table.length; i += 2) {
+            if (table[i] != null) {
+                action.accept(table[i], table[i + 1]);
+            }
+        }
+    }
+
+    private void resize() {
+        SimpleType[] old = table;
+        table = new SimpleType[2 * old.length];
+        int mask = table.length / 2 - 1;
+        for (int i = 0; i < old.length; i += 2) {
+            if (old[i] != null) {
+                int slot = hash(old[i], old[i + 1]) & mask;
+                while (table[2 * slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                table[2 * slot] = old[i];
+                table[2 * slot + 1] = old[i + 1];
+            }
+        }
+    }
+
+    private static int hash(SimpleType left, SimpleType right) {
+        int hash = System.identityHashCode(left) * 31 + System.identityHashCode(right);
+        // spread the bits, since the slot is taken from the lower ones
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
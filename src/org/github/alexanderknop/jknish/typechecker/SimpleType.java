@@ -4,6 +4,9 @@ import org.github.alexanderknop.jknish.objects.KnishModule;
 import org.github.alexanderknop.jknish.parser.MethodId;
 
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 class SimpleType {
     static Top top() {
@@ -46,12 +49,122 @@ class SimpleType {
     }
 
     static class Variable extends SimpleType {
-        public final Set<SimpleType> upperBound;
-        public final Set<SimpleType> lowerBound;
+        public final Bounds upperBound = new Bounds();
+        public final Bounds lowerBound = new Bounds();
+        private boolean frozen = false;
+
+        static final int UNORDERED = Integer.MIN_VALUE;
+
+        // the variables of a cycle are equivalent, the constrainer merges them into one variable
+        Variable representative = this;
+        int rank = 0;
+        // the position of the variable in the topological order of the constraints between the variables
+        int order = UNORDERED;
+        // the variables constrained to be subtypes of this one, allocated on the first constraint
+        List<Variable> predecessors = null;
+        // the kinds of the bounds the variable can still get, known only during a simplification
+        int polarity = 0;
 
         private Variable() {
-            this.upperBound = new HashSet<>();
-            this.lowerBound = new HashSet<>();
+        }
+
+        /**
+         * @return true if the bounds of the variable never change; the constrainer keeps
+         * the bounds it adds to a frozen variable on its own.
+         */
+        boolean isFrozen() {
+            return frozen;
+        }
+    }
+
+    /**
+     * The bounds of a variable in the order they were added. The constrainer adds
+     * a bound only with a constraint it has not seen before, so the bounds are kept
+     * in a plain array rather than in a set.
+     */
+    static final class Bounds implements Iterable<SimpleType> {
+        private static final SimpleType[] EMPTY = new SimpleType[0];
+        private static final int SMALL = 8;
+
+        private SimpleType[] types = EMPTY;
+        private int size = 0;
+
+        void add(SimpleType type) {
+            if (size == types.length) {
+                types = Arrays.copyOf(types, Math.max(2, size + (size >> 1)));
+            }
+            types[size++] = type;
+        }
+
+        void addAll(Bounds bounds) {
+            for (int i = 0; i < bounds.size; i++) {
+                add(bounds.types[i]);
+            }
+        }
+
+        void clear() {
+            types = EMPTY;
+            size = 0;
+        }
+
+        /**
+         * Replaces every bound with the given one, and removes the bounds
+         * the filter rejects and the repeated ones.
+         */
+        void compact(UnaryOperator<SimpleType> replacement, Predicate<SimpleType> filter) {
+            // a few bounds are compared with each other directly
+            Set<SimpleType> kept = size > SMALL ? Collections.newSetFromMap(new IdentityHashMap<>()) : null;
+            int keptSize = 0;
+            for (int i = 0; i < size; i++) {
+                SimpleType type = replacement.apply(types[i]);
+                if (filter.test(type) && (kept == null ? !contains(type, keptSize) : kept.add(type))) {
+                    types[keptSize++] = type;
+                }
+            }
+            Arrays.fill(types, keptSize, size, null);
+            size = keptSize;
+        }
+
+        private boolean contains(SimpleType type, int prefix) {
+            for (int i = 0; i < prefix; i++) {
+                if (types[i] == type) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        int size() {
+            return size;
+        }
+
+        @Override
+        public void forEach(Consumer<? super SimpleType> action) {
+            // the bounds added by the action are not visited
+            int visited = size;
+            for (int i = 0; i < visited; i++) {
+                action.accept(types[i]);
+            }
+        }
+
+        @Override
+        public Iterator<SimpleType> iterator() {
+            return new Iterator<>() {
+                private int next = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return next < size;
+                }
+
+                @Override
+                public SimpleType next() {
+                    if (next >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    return types[next++];
+                }
+            };
         }
     }
 
@@ -97,6 +210,36 @@ class SimpleType {
         }
     }
 
+    /**
+     * Freezes all the variables reachable from the types.
+     */
+    static void freeze(Collection<SimpleType> types) {
+        Set<SimpleType> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<SimpleType> unvisited = new ArrayDeque<>(types);
+        while (!unvisited.isEmpty()) {
+            SimpleType type = unvisited.removeFirst();
+            if (!visited.add(type)) {
+                continue;
+            }
+
+            if (type instanceof Variable) {
+                Variable variable = (Variable) type;
+                variable.frozen = true;
+                variable.lowerBound.forEach(unvisited::add);
+                variable.upperBound.forEach(unvisited::add);
+            } else if (type instanceof Labeled) {
+                unvisited.add(((Labeled) type).type);
+            } else if (type instanceof Class) {
+                ((Class) type).methods.values().forEach(method -> {
+                    if (method.arguments != null) {
+                        unvisited.addAll(method.arguments);
+                    }
+                    unvisited.add(method.value);
+                });
+            }
+        }
+    }
+
     static Map<KnishModule.Class, SimpleType> fromKnishModule(KnishModule module) {
         Map<KnishModule.Class, SimpleType> types = new HashMap<>();
         Map<KnishModule.Class, SimpleType.Variable> classVariables = new HashMap<>();
@@ -0,0 +1,312 @@
+package org.github.alexanderknop.jknish.typechecker;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Simplifies the constraints solved by a constrainer, so that the bounds it keeps depend
+ * on the types that can still be constrained rather than on all the constraints ever solved.
+ * <p>
+ * New constraints are added only to the roots, the types the type checker still refers to,
+ * and reach the other variables through the bounds. The upper bounds of a variable are compared
+ * only with its new lower bounds and vice versa, so a variable that can no longer get new lower
+ * bounds drops its upper bounds, and a variable that can no longer get new upper bounds drops
+ * its lower bounds. The variables of the same polarity that are left with the same bounds
+ * are merged, and the bounds that repeat each other are dropped. A bound is dropped also
+ * when the variable reaches it through another variable that is after the variable in the order
+ * of the constrainer, so the bounds are never dropped in favour of each other.
+ */
+class Simplifier {
+    // the variable can get new lower bounds
+    private static final int POSITIVE = 1;
+    // the variable can get new upper bounds
+    private static final int NEGATIVE = 2;
+    private static final int BOTH = POSITIVE | NEGATIVE;
+
+    private final Constrainer constrainer;
+
+    // the polarities of the reachable frozen variables, they are shared by all the checks
+    private final Map<SimpleType.Variable, Integer> frozenPolarities = new IdentityHashMap<>();
+    // the reachable variables in the order they were reached
+    private final List<SimpleType.Variable> reached = new ArrayList<>();
+    private final Deque<SimpleType.Variable> unvisited = new ArrayDeque<>();
+
+    Simplifier(Constrainer constrainer) {
+        this.constrainer = constrainer;
+    }
+
+    void simplify(Collection<SimpleType> roots) {
+        roots.forEach(root -> reach(root, BOTH));
+        while (!unvisited.isEmpty()) {
+            visit(unvisited.poll());
+        }
+
+        dropUnusedBounds();
+        mergeEquivalentVariables();
+        List<SimpleType.Variable> variables = compactBounds();
+        dropSubsumedBounds(variables);
+        constrainer.retain(variables);
+        reached.forEach(variable -> variable.polarity = 0);
+    }
+
+    private void reach(SimpleType type, int polarity) {
+        if (polarity == 0) {
+            return;
+        }
+
+        if (type instanceof SimpleType.Variable) {
+            SimpleType.Variable variable = Constrainer.find((SimpleType.Variable) type);
+            int known = polarity(variable);
+            if ((known | polarity) != known) {
+                if (known == 0) {
+                    reached.add(variable);
+                }
+                if (variable.isFrozen()) {
+                    frozenPolarities.put(variable, known | polarity);
+                } else {
+                    variable.polarity = known | polarity;
+                }
+                unvisited.add(variable);
+            }
+        } else if (type instanceof SimpleType.Labeled) {
+            // a labeled type is compared with the new lower bounds by its label only
+            reach(((SimpleType.Labeled) type).type, polarity & NEGATIVE);
+        } else if (type instanceof SimpleType.Class) {
+            for (SimpleType.Method method : ((SimpleType.Class) type).methods.values()) {
+                reach(method.value, polarity);
+                if (method.arguments != null) {
+                    for (SimpleType argument : method.arguments) {
+                        reach(argument, opposite(polarity));
+                    }
+                }
+            }
+        }
+    }
+
+    private void visit(SimpleType.Variable variable) {
+        // a new lower bound of the variable becomes a lower bound of its upper bounds and vice versa
+        int polarity = polarity(variable);
+        variable.upperBound.forEach(bound -> reach(bound, polarity & POSITIVE));
+        constrainer.forEachAddedUpperBound(variable, bound -> reach(bound, polarity & POSITIVE));
+        variable.lowerBound.forEach(bound -> reach(bound, polarity & NEGATIVE));
+        constrainer.forEachAddedLowerBound(variable, bound -> reach(bound, polarity & NEGATIVE));
+    }
+
+    private int polarity(SimpleType.Variable variable) {
+        return variable.isFrozen() ? frozenPolarities.getOrDefault(variable, 0) : variable.polarity;
+    }
+
+    private static int opposite(int polarity) {
+        return ((polarity & POSITIVE) != 0 ? NEGATIVE : 0) | ((polarity & NEGATIVE) != 0 ? POSITIVE : 0);
+    }
+
+    private void dropUnusedBounds() {
+        for (SimpleType.Variable variable : reached) {
+            int polarity = polarity(variable);
+            if (variable.isFrozen()) {
+                // the own bounds of a frozen variable are shared by all the checks
+                if ((polarity & POSITIVE) == 0) {
+                    constrainer.dropAddedUpperBounds(variable);
+                }
+                if ((polarity & NEGATIVE) == 0) {
+                    constrainer.dropAddedLowerBounds(variable);
+                }
+                continue;
+            }
+
+            if ((polarity & POSITIVE) == 0) {
+                variable.upperBound.clear();
+            }
+            if ((polarity & NEGATIVE) == 0) {
+                variable.lowerBound.clear();
+            }
+        }
+        // the frozen variables that are not reachable can never get new bounds
+        for (SimpleType.Variable variable : constrainer.frozenVariables()) {
+            if (!frozenPolarities.containsKey(variable)) {
+                constrainer.dropAddedUpperBounds(variable);
+                constrainer.dropAddedLowerBounds(variable);
+            }
+        }
+    }
+
+    /**
+     * Merges the variables that can get new bounds of one kind only, and have the same bounds
+     * of the other kind: every new bound of such variables is compared with the same bounds.
+     */
+    private void mergeEquivalentVariables() {
+        Map<BoundSet, SimpleType.Variable> byLowerBounds = new HashMap<>();
+        Map<BoundSet, SimpleType.Variable> byUpperBounds = new HashMap<>();
+        // the bounds are reached after the variables, so they are merged first
+        for (int i = reached.size() - 1; i >= 0; i--) {
+            SimpleType.Variable variable = reached.get(i);
+            int polarity = polarity(variable);
+            if (variable.isFrozen()) {
+                continue;
+            }
+            if (polarity == NEGATIVE) {
+                merge(byLowerBounds, new BoundSet(variable.lowerBound), variable);
+            } else if (polarity == POSITIVE) {
+                merge(byUpperBounds, new BoundSet(variable.upperBound), variable);
+            }
+        }
+    }
+
+    private void merge(Map<BoundSet, SimpleType.Variable> equivalent, BoundSet bounds,
+                       SimpleType.Variable variable) {
+        SimpleType.Variable merged = equivalent.get(bounds);
+        if (merged == null) {
+            equivalent.put(bounds, variable);
+        } else {
+            // the variable is placed in the order after the predecessors of both
+            int order = Math.max(merged.order, variable.order);
+            SimpleType.Variable representative = constrainer.union(merged, variable);
+            representative.order = order;
+            equivalent.put(bounds, representative);
+        }
+    }
+
+    /**
+     * @return the variables left after the merge except the frozen ones; their bounds refer only
+     * to the representatives of the variables.
+     * <p>
+     * The classes are compared by identity, like the variables, and the constrainer reports an error
+     * only for the first constraint between two types, so the classes with the same methods are never
+     * replaced with one another: the errors of the constraints on one of them would be lost.
+     */
+    private List<SimpleType.Variable> compactBounds() {
+        UnaryOperator<SimpleType> canonical = Constrainer::representative;
+
+        List<SimpleType.Variable> variables = new ArrayList<>();
+        for (SimpleType.Variable variable : reached) {
+            if (variable.isFrozen()) {
+                constrainer.compactAddedBounds(variable, canonical);
+                continue;
+            }
+            if (Constrainer.find(variable) != variable) {
+                variable.upperBound.clear();
+                variable.lowerBound.clear();
+                continue;
+            }
+
+            variable.upperBound.compact(canonical, bound -> bound != variable);
+            variable.lowerBound.compact(canonical, bound -> bound != variable);
+            variables.add(variable);
+        }
+        return variables;
+    }
+
+    /**
+     * Drops the bounds of the variables that are not variables themselves, if the variable
+     * has a variable bound with the same bound: {@code a <: b <: T} makes {@code a <: T} redundant.
+     */
+    private void dropSubsumedBounds(List<SimpleType.Variable> variables) {
+        Map<SimpleType.Variable, Set<SimpleType>> upperBounds = new IdentityHashMap<>();
+        Map<SimpleType.Variable, Set<SimpleType>> lowerBounds = new IdentityHashMap<>();
+        for (SimpleType.Variable variable : variables) {
+            List<SimpleType.Variable> successors = related(variable.upperBound, other -> other.order > variable.order);
+            if (!successors.isEmpty()) {
+                variable.upperBound.compact(UnaryOperator.identity(), bound ->
+                        bound instanceof SimpleType.Variable ||
+                                successors.stream().noneMatch(successor ->
+                                        bounds(upperBounds, successor, successor.upperBound).contains(bound)));
+            }
+            List<SimpleType.Variable> predecessors = related(variable.lowerBound, other -> other.order < variable.order);
+            if (!predecessors.isEmpty()) {
+                variable.lowerBound.compact(UnaryOperator.identity(), bound ->
+                        bound instanceof SimpleType.Variable ||
+                                predecessors.stream().noneMatch(predecessor ->
+                                        bounds(lowerBounds, predecessor, predecessor.lowerBound).contains(bound)));
+            }
+        }
+    }
+
+    // the variable bounds that are ordered with respect to the variable, the frozen ones are never ordered
+    private static List<SimpleType.Variable> related(SimpleType.Bounds bounds, Predicate<SimpleType.Variable> ordered) {
+        List<SimpleType.Variable> related = new ArrayList<>();
+        for (SimpleType bound : bounds) {
+            if (bound instanceof SimpleType.Variable) {
+                SimpleType.Variable variable = (SimpleType.Variable) bound;
+                if (!variable.isFrozen() && variable.order != SimpleType.Variable.UNORDERED &&
+                        ordered.test(variable)) {
+                    related.add(variable);
+                }
+            }
+        }
+        return related;
+    }
+
+    // the bounds of a variable are collected once, a bound it drops later is still reached through it
+    private static Set<SimpleType> bounds(Map<SimpleType.Variable, Set<SimpleType>> cache,
+                                          SimpleType.Variable variable, SimpleType.Bounds bounds) {
+        return cache.computeIfAbsent(variable, key -> {
+            Set<SimpleType> collected = Collections.newSetFromMap(new IdentityHashMap<>());
+            bounds.forEach(collected::add);
+            return collected;
+        });
+    }
+
+    // the bounds of a variable compared as a set of the representatives
+    private static final class BoundSet {
+        private static final Comparator<SimpleType> BY_IDENTITY =
+                Comparator.comparingInt(System::identityHashCode);
+
+        // the representatives sorted by their identity hash codes
+        private final SimpleType[] types;
+        private final int hash;
+
+        private BoundSet(SimpleType.Bounds bounds) {
+            SimpleType[] types = new SimpleType[bounds.size()];
+            int size = 0;
+            for (SimpleType bound : bounds) {
+                types[size++] = Constrainer.representative(bound);
+            }
+            Arrays.sort(types, BY_IDENTITY);
+
+            // the same types are next to each other, unless the hash codes of some types collide
+            int unique = 0;
+            int hash = 0;
+            for (int i = 0; i < size; i++) {
+                if (unique == 0 || types[unique - 1] != types[i]) {
+                    types[unique++] = types[i];
+                    hash = 31 * hash + System.identityHashCode(types[i]);
+                }
+            }
+            this.types = Arrays.copyOf(types, unique);
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            BoundSet that = (BoundSet) o;
+            if (hash != that.hash || types.length != that.types.length) {
+                return false;
+            }
+            for (int i = 0; i < types.length; i++) {
+                if (types[i] != that.types[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -8,14 +8,46 @@ import org.github.alexanderknop.jknish.resolver.ResolvedExpression;
 import org.github.alexanderknop.jknish.resolver.ResolvedScript;
 import org.github.alexanderknop.jknish.resolver.ResolvedStatement;
 
+import java.io.Writer;
 import java.util.*;
 
 public final class TypeChecker {
     public static void check(ResolvedScript script, KnishErrorReporter reporter,
                              KnishModule... modules) {
-        TypeCheckerVisitor typeCheckerVisitor = new TypeCheckerVisitor(reporter);
+        check(script, reporter, (TypeSummaries) null, modules);
+    }
+
+    /**
+     * Checks the script reusing the summaries of its classes that did not change since
+     * they were summarized; the summaries of the other classes are added to the summaries.
+     * The summaries are used only if all the modules are sealed.
+     * <p>
+     * A summary does not tell which constraint of its class contradicts the rest of the script,
+     * so a script with errors is checked again without the summaries, and the errors are the same
+     * as the errors of the check without the summaries. The summaries are simplified constraints,
+     * and the simplifications keep the errors, so the check with the summaries finds an error
+     * whenever the check without them does.
+     */
+    public static void check(ResolvedScript script, KnishErrorReporter reporter,
+                             TypeSummaries summaries, KnishModule... modules) {
+        if (summaries != null && Arrays.stream(modules).allMatch(KnishModule::isSealed)) {
+            KnishErrorReporter summarizedReporter = new KnishErrorReporter(Writer.nullWriter());
+            new TypeCheckerVisitor(summarizedReporter, summaries, true).check(script, modules);
+            if (!summarizedReporter.hadError()) {
+                return;
+            }
+        }
 
-        typeCheckerVisitor.check(script, modules);
+        new TypeCheckerVisitor(reporter, null, true).check(script, modules);
+    }
+
+    /**
+     * Checks the script without simplifying the solved constraints; the errors are the same
+     * as the errors of {@link #check(ResolvedScript, KnishErrorReporter, KnishModule...)}.
+     */
+    static void checkWithoutSimplification(ResolvedScript script, KnishErrorReporter reporter,
+                                           KnishModule... modules) {
+        new TypeCheckerVisitor(reporter, null, false).check(script, modules);
     }
 
     private TypeChecker() {
@@ -28,28 +60,52 @@ public final class TypeChecker {
         private SimpleType numberType;
         private SimpleType booleanType;
         private SimpleType stringType;
+        // the type of === and !==, it has no variables so all the classes share it
+        private SimpleType.Method identityComparisonType;
+
+        // the ids of the methods called in the script, shared by all the calls of a method
+        private final Map<MethodId, MethodId> methodIds = new HashMap<>();
 
         private final KnishErrorReporter reporter;
+        private final TypeSummaries summaries;
+        // false if the solved constraints are never simplified
+        private final boolean simplified;
+
+        private ResolvedScript script;
+        private KnishModule[] modules;
 
         private final Stack<HashMap<Integer, TypedVariableInformation>> scopes = new Stack<>();
 
-        private TypeCheckerVisitor(KnishErrorReporter reporter) {
+        private TypeCheckerVisitor(KnishErrorReporter reporter, TypeSummaries summaries, boolean simplified) {
             this.reporter = reporter;
+            this.summaries = summaries;
+            this.simplified = simplified;
         }
 
         private void check(ResolvedScript script, KnishModule[] modules) {
+            defineGlobals(script, modules);
+
+            visitBlockStatement(script.code);
+        }
+
+        private void defineGlobals(ResolvedScript script, KnishModule[] modules) {
+            this.script = script;
+            this.modules = modules;
+
+            // the types of the modules are shared by all the checks, so we do not change them
             Map<KnishModule.Class, SimpleType> types =
-                    SimpleType.fromKnishModule(KnishCore.core());
+                    new HashMap<>(HostTypes.of(KnishCore.core()));
             Map<String, KnishModule.Class> objectTypes =
                     KnishCore.core().getObjectTypes();
             for (KnishModule module : modules) {
-                types.putAll(SimpleType.fromKnishModule(module));
+                types.putAll(HostTypes.of(module));
                 objectTypes.putAll(module.getObjectTypes());
             }
 
             numberType = types.get(KnishCore.core().numType());
             booleanType = types.get(KnishCore.core().boolType());
             stringType = types.get(KnishCore.core().stringType());
+            identityComparisonType = new SimpleType.Method(List.of(SimpleType.top()), booleanType);
 
             // define globals, we expect that all the globals are defined in core
             HashMap<Integer, TypedVariableInformation> newScope = new HashMap<>();
@@ -76,8 +132,6 @@ public final class TypeChecker {
                     }
             );
             scopes.push(newScope);
-
-            visitBlockStatement(script.code);
         }
 
         private SimpleType expressionType(ResolvedExpression expression) {
@@ -154,13 +208,13 @@ public final class TypeChecker {
             List<SimpleType> arguments;
             MethodId methodId;
             if (call.arguments != null) {
-                methodId = new MethodId(call.method, call.arguments.size());
+                methodId = methodId(call.method, call.arguments.size());
                 arguments = new ArrayList<>();
                 for (int i = 0; i < call.arguments.size(); i++) {
                     arguments.add(SimpleType.variable());
                 }
             } else {
-                methodId = new MethodId(call.method, null);
+                methodId = methodId(call.method, null);
                 arguments = null;
             }
 
@@ -263,16 +317,30 @@ public final class TypeChecker {
 
         @Override
         public SimpleType visitBlockStatement(ResolvedStatement.Block block) {
+            // only the globals are defined outside of the block of the script
+            boolean script = scopes.size() == 1;
             beginScope(block.names, block.classes.keySet());
 
-            block.classes.forEach(this::defineClass);
-
             SimpleType returnType = SimpleType.variable();
+            block.classes.forEach((classId, klass) -> {
+                if (script && summaries != null) {
+                    defineSummarizedClass(block, classId, klass);
+                } else {
+                    defineClass(classId, klass);
+                }
+                if (script) {
+                    simplify(returnType);
+                }
+            });
+
             for (ResolvedStatement statement : block.resolvedStatements) {
                 // this error is impossible since returnType is a fresh variable
                 constrainer.constrain(checkStatement(statement), returnType,
                         new TypeErrorMessage(reporter, statement.line,
                                 "Incompatible return types"));
+                if (script) {
+                    simplify(returnType);
+                }
             }
 
             endScope();
@@ -288,6 +356,72 @@ public final class TypeChecker {
             return SimpleType.bottom();
         }
 
+        /**
+         * Simplifies the constraints between two statements of the script, when the types
+         * of the variables in scope and of the literals are the only types that can be constrained later.
+         */
+        private void simplify(SimpleType returnType) {
+            if (simplified && constrainer.needsSimplification()) {
+                List<SimpleType> roots = new ArrayList<>(List.of(numberType, booleanType, stringType));
+                roots.add(returnType);
+                scopes.forEach(scope -> scope.values().forEach(information -> roots.add(information.type)));
+                constrainer.simplify(roots);
+            }
+        }
+
+        /**
+         * Applies the summary of the class, the class is summarized first if its summary is not known.
+         */
+        private void defineSummarizedClass(ResolvedStatement.Block block, int classId,
+                                           ResolvedStatement.Class klass) {
+            ClassFingerprint fingerprint = ClassFingerprint.of(classId, klass, block.names, script.globals);
+            List<KnishModule> moduleList = List.of(modules);
+            ClassSummary summary = summaries.get(fingerprint, moduleList);
+            if (summary == null) {
+                summary = new TypeCheckerVisitor(new KnishErrorReporter(Writer.nullWriter()), null, true)
+                        .summarize(script, modules, classId, klass, fingerprint.names);
+                if (summary == null) {
+                    // the errors are reported by the class itself, not by its summary
+                    defineClass(classId, klass);
+                    return;
+                }
+                summaries.put(fingerprint, summary);
+            }
+
+            Map<String, SimpleType> variables = new HashMap<>();
+            block.names.forEach((id, name) -> variables.put(name, variableType(id)));
+            summary.apply(constrainer, variables,
+                    new TypeErrorMessage(reporter, klass.line,
+                            "Incompatible constraints on the class " + variableName(classId) + "."));
+        }
+
+        /**
+         * Checks the class with the variables of the enclosing block unconstrained.
+         *
+         * @param names the names of the variables of the enclosing block the class refers to.
+         * @return the summary of the class or null if the class contains errors.
+         */
+        private ClassSummary summarize(ResolvedScript script, KnishModule[] modules, int classId,
+                                       ResolvedStatement.Class klass, Set<String> names) {
+            defineGlobals(script, modules);
+            beginScope(script.code.names, script.code.classes.keySet());
+            defineClass(classId, klass);
+            if (reporter.hadError()) {
+                return null;
+            }
+
+            Map<String, SimpleType> variables = new HashMap<>();
+            script.code.names.forEach((id, name) -> {
+                if (names.contains(name)) {
+                    variables.put(name, variableType(id));
+                }
+            });
+            List<SimpleType> roots = new ArrayList<>(List.of(numberType, booleanType, stringType));
+            scopes.forEach(scope -> scope.values().forEach(information -> roots.add(information.type)));
+            constrainer.simplify(roots);
+            return ClassSummary.of(constrainer, variables, List.of(modules));
+        }
+
         public void defineClass(int classId, ResolvedStatement.Class klass) {
             String className = variableName(classId);
             SimpleType metaClassType = variableType(classId);
@@ -346,7 +480,7 @@ public final class TypeChecker {
                         constructorId,
                         constructor.argumentsIds,
                         constructor.argumentNames,
-                        constructor.body,
+                        constructor.body(),
                         staticMethods.get(constructorId));
 
 
@@ -372,13 +506,17 @@ public final class TypeChecker {
             Map<MethodId, SimpleType.Method> methods = new HashMap<>();
             klass.methods.keySet().forEach(methodId ->
                     methods.put(methodId, SimpleType.functionVariable(methodId.arity)));
-            methods.put(new MethodId("!==", 1),
-                    new SimpleType.Method(List.of(SimpleType.top()), booleanType));
-            methods.put(new MethodId("===", 1),
-                    new SimpleType.Method(List.of(SimpleType.top()), booleanType));
+            methods.put(methodId("!==", 1), identityComparisonType);
+            methods.put(methodId("===", 1), identityComparisonType);
             return methods;
         }
 
+        private MethodId methodId(String name, Integer arity) {
+            MethodId methodId = new MethodId(name, arity);
+            MethodId shared = methodIds.putIfAbsent(methodId, methodId);
+            return shared == null ? methodId : shared;
+        }
+
         private void checkMethodTypes(
                 Map<MethodId, ResolvedStatement.Method> methods,
                 Map<MethodId, SimpleType.Method> expectedTypes) {
@@ -388,7 +526,7 @@ public final class TypeChecker {
                                     methodId,
                                     method.argumentsIds,
                                     method.argumentNames,
-                                    method.body,
+                                    method.body(),
                                     expectedTypes.get(methodId)
                             )
             );
@@ -0,0 +1,79 @@
+package org.github.alexanderknop.jknish.typechecker;
+
+import org.github.alexanderknop.jknish.objects.KnishModule;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of the summaries of the classes checked by the type checker; it can be
+ * shared by the checks of many scripts or of many versions of one script. A class is identified
+ * by its code and the names of the variables it refers to, so only the classes that changed are
+ * checked again. The summary of a class does not depend on the other classes, so it stays valid
+ * when the classes it refers to change.
+ * <p>
+ * When the cache is full, the least recently used summary is evicted.
+ */
+public final class TypeSummaries {
+    private final Map<String, ClassSummary> summaries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public TypeSummaries(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("The maximum size must be positive.");
+        }
+        this.summaries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ClassSummary> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * @return the summary of the class with the given fingerprint checked against
+     * the same modules, or null if there is no such summary.
+     */
+    ClassSummary get(ClassFingerprint fingerprint, List<KnishModule> modules) {
+        ClassSummary summary;
+        synchronized (summaries) {
+            summary = summaries.get(fingerprint.key);
+        }
+        if (summary == null || !summary.modules.equals(modules)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return summary;
+    }
+
+    void put(ClassFingerprint fingerprint, ClassSummary summary) {
+        synchronized (summaries) {
+            summaries.put(fingerprint.key, summary);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        synchronized (summaries) {
+            return summaries.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (summaries) {
+            summaries.clear();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.github.alexanderknop.jknish;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchCompilerTest {
+    private static final String POINT =
+            "class Point {\n" +
+            "    construct new(x, y) {\n" +
+            "        _x = x;\n" +
+            "        _y = y;\n" +
+            "    }\n" +
+            "    x {\n" +
+            "        return _x;\n" +
+            "    }\n" +
+            "}\n";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testScriptsAndModules() throws IOException {
+        Path point = write("point.knish", POINT);
+        Path good = write("good.knish", "import \"point.knish\";\nSystem.print(Point.new(1, 2).x);\n");
+        Path bad = write("bad.knish", "import \"point.knish\";\nSystem.print(Point.new(1, 2).y);\n");
+        Path broken = write("broken.knish", "class Broken {\n");
+        Path missing = directory.resolve("missing.knish");
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<BatchCompiler.Result> results =
+                    new BatchCompiler(pool, new ModuleCache()).compile(List.of(point, good, bad, broken, missing));
+
+            assertEquals(List.of(point, good, bad, broken, missing),
+                    List.of(results.get(0).getFile(), results.get(1).getFile(), results.get(2).getFile(),
+                            results.get(3).getFile(), results.get(4).getFile()));
+
+            assertFalse(results.get(0).hadError());
+            assertNull(results.get(0).getScript());
+
+            assertFalse(results.get(1).hadError());
+            StringWriter output = new StringWriter();
+            results.get(1).getScript().execute(output, new KnishErrorReporter(new StringWriter()));
+            assertEquals("1\n", output.toString());
+
+            assertEquals("[line 2] Error: An object does not implement y.\n", results.get(2).getErrors());
+            assertNull(results.get(2).getScript());
+
+            assertEquals("[line 2] Error at end: Expect '}' after class definition.\n", results.get(3).getErrors());
+            assertTrue(results.get(4).getErrors().contains("Cannot read the file"), results.get(4).getErrors());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testSameErrorsAsSequentialCompilation() throws IOException {
+        write("point.knish", POINT);
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            String module = "module" + i + ".knish";
+            write(module, "import \"point.knish\";\n" +
+                    "class Shape" + i + " {\n" +
+                    "    static of(x) {\n" +
+                    "        return Point.new(x, " + i + ");\n" +
+                    "    }\n" +
+                    "}\n");
+            // every third script contains a type error
+            String call = i % 3 == 0 ? ".y" : ".x";
+            files.add(write("script" + i + ".knish", "import \"" + module + "\";\n" +
+                    "System.print(Shape" + i + ".of(" + i + ")" + call + ");\n"));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(8);
+        try {
+            List<BatchCompiler.Result> results = new BatchCompiler(pool, new ModuleCache()).compile(files);
+            for (int i = 0; i < files.size(); i++) {
+                StringWriter errors = new StringWriter();
+                String source = new String(Files.readAllBytes(files.get(i)), Charset.defaultCharset());
+                Knish.compile(source, directory, new ModuleCache(), new KnishErrorReporter(errors));
+
+                assertEquals(errors.toString(), results.get(i).getErrors());
+                assertEquals(i % 3 == 0, results.get(i).hadError());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testCommandLine() throws IOException {
+        write("point.knish", POINT);
+        write("good.knish", "import \"point.knish\";\nSystem.print(Point.new(1, 2).x);\n");
+        write("bad.knish", "System.print(x);\n");
+
+        StringWriter output = new StringWriter();
+        StringWriter errors = new StringWriter();
+        assertEquals(65, Knish.commandLine(new String[]{"--check", "good.knish", "bad.knish", "point.knish"},
+                directory, null, null, output, errors));
+        assertEquals("", output.toString());
+        assertTrue(errors.toString().startsWith("bad.knish:\n[line 1] Error: Undeclared variable x.\n"),
+                errors.toString());
+    }
+
+    private Path write(String name, String source) throws IOException {
+        return Files.writeString(directory.resolve(name), source);
+    }
+}
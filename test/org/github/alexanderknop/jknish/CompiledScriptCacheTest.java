@@ -0,0 +1,118 @@
+package org.github.alexanderknop.jknish;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledScriptCacheTest {
+    @Test
+    void testHitsAndMisses() {
+        CompiledScriptCache cache = new CompiledScriptCache(10);
+
+        CompiledScript first = compile(cache, "System.print(1);");
+        CompiledScript second = compile(cache, "System.print(1);");
+        CompiledScript other = compile(cache, "System.print(2);");
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+
+        CompiledScriptCache.Statistics statistics = cache.statistics();
+        assertEquals(1, statistics.getHits());
+        assertEquals(2, statistics.getMisses());
+        assertEquals(0, statistics.getEvictions());
+        assertEquals(2, statistics.getSize());
+    }
+
+    @Test
+    void testEviction() {
+        CompiledScriptCache cache = new CompiledScriptCache(2);
+
+        CompiledScript one = compile(cache, "System.print(1);");
+        compile(cache, "System.print(2);");
+        // the first script is used more recently than the second one
+        assertSame(one, compile(cache, "System.print(1);"));
+        compile(cache, "System.print(3);");
+
+        CompiledScriptCache.Statistics statistics = cache.statistics();
+        assertEquals(1, statistics.getEvictions());
+        assertEquals(2, statistics.getSize());
+
+        assertSame(one, compile(cache, "System.print(1);"));
+        assertEquals(3, cache.statistics().getMisses());
+        compile(cache, "System.print(2);");
+        assertEquals(4, cache.statistics().getMisses());
+    }
+
+    @Test
+    void testErrorsAreReplayed() {
+        CompiledScriptCache cache = new CompiledScriptCache(10);
+
+        for (int i = 0; i < 2; i++) {
+            StringWriter errors = new StringWriter();
+            KnishErrorReporter reporter = new KnishErrorReporter(errors);
+            assertNull(cache.compile("var x = 1;\nx + \"world\";\n", reporter));
+            assertTrue(reporter.hadError());
+            assertEquals("[line 2] Error: The value of 0th argument of +(_) has incompatible type.\n",
+                    errors.toString());
+        }
+        assertEquals(1, cache.statistics().getMisses());
+    }
+
+    @Test
+    void testConcurrentCompilationsAreDeduplicated() throws Exception {
+        CompiledScriptCache cache = new CompiledScriptCache(10);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<CompiledScript>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return compile(cache, "System.print(1);");
+                }));
+            }
+            start.countDown();
+
+            CompiledScript script = futures.get(0).get();
+            for (Future<CompiledScript> future : futures) {
+                assertSame(script, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, cache.statistics().getMisses());
+        assertEquals(63, cache.statistics().getHits());
+    }
+
+    @Test
+    void testFailedCompilationIsNotCached() {
+        CompiledScriptCache cache = new CompiledScriptCache(10);
+        // the front end runs out of stack on the nested parentheses
+        String source = "System.print(" + "(".repeat(1 << 16) + "1" + ")".repeat(1 << 16) + ");";
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            for (int i = 0; i < 2; i++) {
+                assertThrows(StackOverflowError.class,
+                        () -> cache.compile(source, new KnishErrorReporter(new StringWriter())));
+            }
+        });
+        assertEquals(0, cache.statistics().getSize());
+    }
+
+    private static CompiledScript compile(CompiledScriptCache cache, String source) {
+        StringWriter errors = new StringWriter();
+        CompiledScript script = cache.compile(source, new KnishErrorReporter(errors));
+        assertNotNull(script, errors.toString());
+        return script;
+    }
+}
@@ -0,0 +1,94 @@
+package org.github.alexanderknop.jknish;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledScriptTest {
+    @Test
+    void testExecuteManyTimes() {
+        CompiledScript script = compile(
+                "class Counter {\n" +
+                "    static init {\n" +
+                "        __count = 0;\n" +
+                "    }\n" +
+                "    static add {\n" +
+                "        __count = __count + 1;\n" +
+                "        return __count;\n" +
+                "    }\n" +
+                "}\n" +
+                "Counter.init;\n" +
+                "Counter.add;\n" +
+                "System.print(Counter.add);\n"
+        );
+
+        // every execution starts with fresh static fields and writes to its own output
+        for (int i = 0; i < 3; i++) {
+            StringWriter output = new StringWriter();
+            StringWriter errors = new StringWriter();
+            KnishErrorReporter reporter = new KnishErrorReporter(errors);
+            script.execute(output, reporter);
+            assertFalse(reporter.hadError(), errors.toString());
+            assertEquals("2\n", output.toString());
+        }
+    }
+
+    @Test
+    void testSaveAndLoad(@TempDir Path directory) throws IOException {
+        CompiledScript script = compile(
+                "class Square {\n" +
+                "    static of(n) {\n" +
+                "        return n * n;\n" +
+                "    }\n" +
+                "    static unused {\n" +
+                "        return 0;\n" +
+                "    }\n" +
+                "}\n" +
+                "System.print(Square.of(7));\n"
+        );
+        Path file = directory.resolve("square.knc");
+        script.save(file);
+
+        CompiledScript loaded = CompiledScript.load(file);
+        assertEquals(script.getResolvedScript(), loaded.getResolvedScript());
+
+        StringWriter output = new StringWriter();
+        StringWriter errors = new StringWriter();
+        loaded.execute(output, new KnishErrorReporter(errors));
+        assertEquals("", errors.toString());
+        assertEquals("49\n", output.toString());
+    }
+
+    @Test
+    void testRuntimeError() {
+        CompiledScript script = compile("System.print(1 / 0);\n");
+
+        for (int i = 0; i < 2; i++) {
+            StringWriter errors = new StringWriter();
+            KnishErrorReporter reporter = new KnishErrorReporter(errors);
+            script.execute(new StringWriter(), reporter);
+            assertTrue(reporter.hadError());
+        }
+    }
+
+    @Test
+    void testIncorrect() {
+        StringWriter errors = new StringWriter();
+        KnishErrorReporter reporter = new KnishErrorReporter(errors);
+        assertNull(Knish.compile("var x = 1;\nx + \"world\";\n", reporter));
+        assertEquals("[line 2] Error: The value of 0th argument of +(_) has incompatible type.\n",
+                errors.toString());
+    }
+
+    private static CompiledScript compile(String source) {
+        StringWriter errors = new StringWriter();
+        CompiledScript script = Knish.compile(source, new KnishErrorReporter(errors));
+        assertNotNull(script, errors.toString());
+        return script;
+    }
+}
@@ -0,0 +1,147 @@
+package org.github.alexanderknop.jknish;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyTest {
+    private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final int EXECUTIONS = 200;
+
+    private static final String[] SOURCES = {
+            "class Fibonacci {\n" +
+            "    static of(n) {\n" +
+            "        if (n < 2) {\n" +
+            "            return n;\n" +
+            "        }\n" +
+            "        return Fibonacci.of(n - 1) + Fibonacci.of(n - 2);\n" +
+            "    }\n" +
+            "}\n" +
+            "System.print(Fibonacci.of(15));\n",
+
+            "class Counter {\n" +
+            "    construct new() {\n" +
+            "        _count = 0;\n" +
+            "    }\n" +
+            "    add() {\n" +
+            "        _count = _count + 1;\n" +
+            "    }\n" +
+            "    count {\n" +
+            "        return _count;\n" +
+            "    }\n" +
+            "}\n" +
+            "var counter = Counter.new();\n" +
+            "var i = 0;\n" +
+            "while (i < 3000) {\n" +
+            "    counter.add();\n" +
+            "    i = i + 1;\n" +
+            "}\n" +
+            "System.print(counter.count);\n",
+
+            "var s = \"\";\n" +
+            "var i = 0;\n" +
+            "while (i < 50) {\n" +
+            "    s = s + i.toString;\n" +
+            "    i = i + 1;\n" +
+            "}\n" +
+            "System.print(s.count);\n" +
+            "System.print(1 === 1 or true);\n"
+    };
+
+    private static final String[] OUTPUTS = {
+            "610\n",
+            "3000\n",
+            "90\ntrue\n"
+    };
+
+    @Test
+    void testCompiledScriptsInParallel() throws Exception {
+        List<CompiledScript> scripts = new ArrayList<>();
+        for (String source : SOURCES) {
+            StringWriter errors = new StringWriter();
+            CompiledScript script = Knish.compile(source, new KnishErrorReporter(errors));
+            assertNotNull(script, errors.toString());
+            scripts.add(script);
+        }
+
+        runInParallel(i -> {
+            int index = i % scripts.size();
+            StringWriter output = new StringWriter();
+            StringWriter errors = new StringWriter();
+            scripts.get(index).execute(output, new KnishErrorReporter(errors));
+            assertEquals("", errors.toString());
+            assertEquals(OUTPUTS[index], output.toString());
+        });
+    }
+
+    @Test
+    void testRunInParallel() throws Exception {
+        // the front end runs concurrently as well
+        runInParallel(i -> {
+            int index = i % SOURCES.length;
+            StringWriter output = new StringWriter();
+            StringWriter errors = new StringWriter();
+            Knish.run(SOURCES[index], output, new KnishErrorReporter(errors));
+            assertEquals("", errors.toString());
+            assertEquals(OUTPUTS[index], output.toString());
+        });
+    }
+
+    @Test
+    void testChecksOfLargeScriptInParallel() throws Exception {
+        // the script is long enough for its checks to run in parallel
+        StringBuilder source = new StringBuilder("var y;\nSystem.print(y); System.print(1 + \"a\");\n");
+        for (int i = 0; i < 600; i++) {
+            source.append("var x").append(i).append(" = ").append(i).append(";\n")
+                    .append("System.print(x").append(i).append(");\n");
+        }
+        source.append("var z;\nSystem.print(z);\nSystem.print(1 + true);\n");
+
+        // the errors of the checks are merged in the order of the lines
+        String expected = "[line 2] Error: Use of unassigned local variable 'y'.\n" +
+                "[line 2] Error: The value of 0th argument of +(_) has incompatible type.\n" +
+                "[line 1204] Error: Use of unassigned local variable 'z'.\n" +
+                "[line 1205] Error: The value of 0th argument of +(_) has incompatible type.\n";
+        runInParallel(i -> {
+            StringWriter errors = new StringWriter();
+            assertNull(Knish.compile(source.toString(), new KnishErrorReporter(errors)));
+            assertEquals(expected, errors.toString());
+        });
+    }
+
+    private interface Execution {
+        void run(int index) throws Exception;
+    }
+
+    private static void runInParallel(Execution execution) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < EXECUTIONS; i++) {
+                int index = i;
+                Callable<Void> task = () -> {
+                    start.await();
+                    execution.run(index);
+                    return null;
+                };
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.github.alexanderknop.jknish;
+
+import org.github.alexanderknop.jknish.knc.KncWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiskCompilationCacheTest {
+    private static final String SOURCE =
+            "class Point {\n" +
+            "    construct new(x, y) {\n" +
+            "        _x = x;\n" +
+            "        _y = y;\n" +
+            "    }\n" +
+            "    x {\n" +
+            "        return _x;\n" +
+            "    }\n" +
+            "}\n" +
+            "var i = 0;\n" +
+            "while (i < 3) {\n" +
+            "    System.print(Point.new(i, 0).x);\n" +
+            "    i = i + 1;\n" +
+            "}\n";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testCachedScript() throws IOException {
+        DiskCompilationCache cache = new DiskCompilationCache(directory);
+
+        CompiledScript compiled = compile(cache, SOURCE);
+        assertEquals(1, files().size());
+        // the files of another version of the format are not reused
+        assertTrue(files().get(0).getFileName().toString().endsWith("-" + KncWriter.version() + ".knc"),
+                files().get(0).toString());
+
+        CompiledScript cached = compile(cache, SOURCE);
+        assertNotSame(compiled, cached);
+        assertEquals(compiled.getResolvedScript(), cached.getResolvedScript());
+        assertEquals("0\n1\n2\n", execute(cached));
+    }
+
+    @Test
+    void testDamagedFile() throws IOException {
+        DiskCompilationCache cache = new DiskCompilationCache(directory);
+        compile(cache, SOURCE);
+
+        Path file = files().get(0);
+        Files.write(file, new byte[]{1, 2, 3});
+
+        assertEquals("0\n1\n2\n", execute(compile(cache, SOURCE)));
+        // the damaged file is replaced
+        assertEquals(compile(cache, SOURCE).getResolvedScript(),
+                Knish.compile(SOURCE, new KnishErrorReporter(new StringWriter())).getResolvedScript());
+    }
+
+    @Test
+    void testDamagedMethod() throws IOException {
+        DiskCompilationCache cache = new DiskCompilationCache(directory);
+        compile(cache, SOURCE);
+
+        // the body of the last method ends the file, it is compiled again instead of failing when called
+        Path file = files().get(0);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file, bytes);
+
+        assertEquals("0\n1\n2\n", execute(compile(cache, SOURCE)));
+    }
+
+    @Test
+    void testIncorrectScriptIsNotCached() throws IOException {
+        DiskCompilationCache cache = new DiskCompilationCache(directory);
+        StringWriter errors = new StringWriter();
+        KnishErrorReporter reporter = new KnishErrorReporter(errors);
+
+        assertNull(cache.compile("var x = 1;\nx + \"world\";\n", reporter));
+        assertTrue(reporter.hadError());
+        assertTrue(files().isEmpty());
+    }
+
+    @Test
+    void testCacheWithoutDirectory() throws IOException {
+        Files.writeString(directory.resolve("--cache"), "System.print(1);\n");
+
+        StringWriter output = new StringWriter();
+        StringWriter errors = new StringWriter();
+        assertEquals(64, Knish.commandLine(new String[]{"--cache"},
+                directory, null, null, output, errors));
+        assertTrue(output.toString().startsWith("Usage: jknish"), output.toString());
+        assertEquals(64, Knish.commandLine(new String[]{"--profile", "profile", "--cache"},
+                directory, null, null, new StringWriter(), errors));
+        assertEquals("", errors.toString());
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+
+    private static CompiledScript compile(DiskCompilationCache cache, String source) {
+        StringWriter errors = new StringWriter();
+        CompiledScript script = cache.compile(source, new KnishErrorReporter(errors));
+        assertNotNull(script, errors.toString());
+        return script;
+    }
+
+    private static String execute(CompiledScript script) {
+        StringWriter output = new StringWriter();
+        StringWriter errors = new StringWriter();
+        script.execute(output, new KnishErrorReporter(errors));
+        assertEquals("", errors.toString());
+        return output.toString();
+    }
+}
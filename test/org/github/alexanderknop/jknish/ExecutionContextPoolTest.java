@@ -0,0 +1,78 @@
+package org.github.alexanderknop.jknish;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExecutionContextPoolTest {
+    @Test
+    void testReuse() {
+        ExecutionContextPool pool = new ExecutionContextPool(1);
+        CompiledScript script = compile("System.print(\"Hello\");");
+
+        StringWriter first = new StringWriter();
+        ExecutionContext firstContext = pool.acquire(first);
+        script.execute(firstContext, reporter(), null);
+        firstContext.close();
+
+        StringWriter second = new StringWriter();
+        ExecutionContext secondContext = pool.acquire(second);
+        assertSame(firstContext, secondContext);
+        script.execute(secondContext, reporter(), null);
+        secondContext.close();
+
+        assertEquals("Hello\n", first.toString());
+        assertEquals("Hello\n", second.toString());
+    }
+
+    @Test
+    void testExhaustedPool() {
+        ExecutionContextPool pool = new ExecutionContextPool(1);
+        CompiledScript script = compile("System.print(1);");
+
+        StringWriter first = new StringWriter();
+        StringWriter second = new StringWriter();
+        try (ExecutionContext firstContext = pool.acquire(first);
+             ExecutionContext secondContext = pool.acquire(second)) {
+            assertNotSame(firstContext, secondContext);
+            script.execute(secondContext, reporter(), null);
+            script.execute(firstContext, reporter(), null);
+        }
+
+        assertEquals("1\n", first.toString());
+        assertEquals("1\n", second.toString());
+        assertEquals(1, pool.available());
+    }
+
+    @Test
+    void testRuntimeError() {
+        ExecutionContextPool pool = new ExecutionContextPool(1);
+        CompiledScript failing = compile("System.print(1 / nil);");
+
+        StringWriter errors = new StringWriter();
+        KnishErrorReporter reporter = new KnishErrorReporter(errors);
+        try (ExecutionContext context = pool.acquire(new StringWriter())) {
+            failing.execute(context, reporter, null);
+        }
+        assertTrue(reporter.hadError());
+
+        // the context is not affected by the failed execution
+        StringWriter output = new StringWriter();
+        try (ExecutionContext context = pool.acquire(output)) {
+            compile("System.print(2);").execute(context, reporter(), null);
+        }
+        assertEquals("2\n", output.toString());
+    }
+
+    private static CompiledScript compile(String source) {
+        CompiledScript script = Knish.compile(source, reporter());
+        assertNotNull(script);
+        return script;
+    }
+
+    private static KnishErrorReporter reporter() {
+        return new KnishErrorReporter(new StringWriter());
+    }
+}
@@ -0,0 +1,184 @@
+package org.github.alexanderknop.jknish;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModuleCacheTest {
+    private static final String POINT =
+            "class Point {\n" +
+            "    construct new(x, y) {\n" +
+            "        _x = x;\n" +
+            "        _y = y;\n" +
+            "    }\n" +
+            "    x {\n" +
+            "        return _x;\n" +
+            "    }\n" +
+            "}\n";
+
+    private static final String SEGMENT =
+            "import \"point.knish\";\n" +
+            "class Segment {\n" +
+            "    construct new(from, to) {\n" +
+            "        _from = from;\n" +
+            "        _to = to;\n" +
+            "    }\n" +
+            "    length {\n" +
+            "        return _to.x - _from.x;\n" +
+            "    }\n" +
+            "}\n";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testImport() throws IOException {
+        write("point.knish", POINT);
+        ModuleCache modules = new ModuleCache();
+
+        assertEquals("3\n", execute(modules, "import \"point.knish\";\nSystem.print(Point.new(3, 4).x);\n"));
+    }
+
+    @Test
+    void testTransitiveImport() throws IOException {
+        write("point.knish", POINT);
+        write("segment.knish", SEGMENT);
+        ModuleCache modules = new ModuleCache();
+
+        assertEquals("2\n", execute(modules,
+                "import \"segment.knish\";\n" +
+                "import \"point.knish\";\n" +
+                "System.print(Segment.new(Point.new(1, 0), Point.new(3, 0)).length);\n"));
+    }
+
+    @Test
+    void testModulesAreCheckedOnce() throws IOException {
+        write("point.knish", POINT);
+        ModuleCache modules = new ModuleCache();
+
+        execute(modules, "import \"point.knish\";\nSystem.print(Point.new(1, 2).x);\n");
+        long misses = modules.summaries().getMisses();
+        execute(modules, "import \"point.knish\";\nSystem.print(Point.new(3, 4).x);\n");
+
+        // the class of the module is neither checked again nor summarized again
+        assertEquals(misses, modules.summaries().getMisses());
+    }
+
+    @Test
+    void testChangedModule() throws IOException {
+        write("point.knish", POINT);
+        write("segment.knish", SEGMENT);
+        ModuleCache modules = new ModuleCache();
+        String script = "import \"segment.knish\";\n" +
+                "System.print(Segment.new(Point.new(1, 0), Point.new(3, 0)).length);\n";
+        assertEquals("2\n", execute(modules, script));
+
+        // the segment module imports the changed module, so it is loaded again
+        write("point.knish", POINT.replace("return _x;", "return _y;"));
+        assertEquals("0\n", execute(modules, script));
+    }
+
+    @Test
+    void testTypeErrorInImporter() throws IOException {
+        write("point.knish", POINT);
+
+        assertEquals("[line 2] Error: An object does not implement y.\n",
+                errors(new ModuleCache(), "import \"point.knish\";\nSystem.print(Point.new(3, 4).y);\n"));
+    }
+
+    @Test
+    void testModuleWithErrors() throws IOException {
+        write("point.knish", POINT.replace("return _x;", "return z;"));
+
+        String errors = errors(new ModuleCache(), "import \"point.knish\";\n");
+        assertTrue(errors.startsWith("[line 1] Error: Cannot import \"point.knish\", it contains errors:\n"),
+                errors);
+    }
+
+    @Test
+    void testModuleWithStatements() throws IOException {
+        write("point.knish", POINT + "System.print(1);\n");
+
+        assertEquals("[line 1] Error: Cannot import \"point.knish\", it contains errors:\n" +
+                        "[line 10] Error: A module can contain only imports and classes.\n",
+                errors(new ModuleCache(), "import \"point.knish\";\n"));
+    }
+
+    @Test
+    void testMissingModule() {
+        String errors = errors(new ModuleCache(), "import \"point.knish\";\n");
+        assertTrue(errors.contains("Cannot read the file"), errors);
+    }
+
+    @Test
+    void testCyclicImport() throws IOException {
+        write("a.knish", "import \"b.knish\";\nclass A {}\n");
+        write("b.knish", "import \"a.knish\";\nclass B {}\n");
+
+        Path a = directory.resolve("a.knish");
+        Path b = directory.resolve("b.knish");
+        String errors = errors(new ModuleCache(), "import \"a.knish\";\n");
+        assertTrue(errors.contains("The import of " + a + " closes an import cycle: " +
+                a + " -> " + b + " -> " + a + "."), errors);
+    }
+
+    @Test
+    void testSelfImport() throws IOException {
+        write("a.knish", "import \"a.knish\";\nclass A {}\n");
+
+        Path a = directory.resolve("a.knish");
+        String errors = errors(new ModuleCache(), "import \"a.knish\";\n");
+        assertTrue(errors.contains("The import of " + a + " closes an import cycle: " + a + " -> " + a + "."),
+                errors);
+    }
+
+    @Test
+    void testRedefinedImportedClass() throws IOException {
+        write("point.knish", POINT);
+
+        assertEquals("[line 2] Error: Cannot redefine the imported class Point.\n",
+                errors(new ModuleCache(), "import \"point.knish\";\nvar Point = 1;\n"));
+    }
+
+    @Test
+    void testImportAfterStatement() {
+        assertEquals("[line 2] Error at 'import': Imports must precede all the other statements.\n",
+                errors(new ModuleCache(), "System.print(1);\nimport \"point.knish\";\n"));
+    }
+
+    @Test
+    void testImportFromSource() {
+        StringWriter errors = new StringWriter();
+        assertNull(Knish.compile("import \"point.knish\";\n", new KnishErrorReporter(errors)));
+        assertEquals("[line 1] Error: Cannot import \"point.knish\", " +
+                "only the scripts compiled from files can import modules.\n", errors.toString());
+    }
+
+    private void write(String name, String source) throws IOException {
+        Files.writeString(directory.resolve(name), source);
+    }
+
+    private String execute(ModuleCache modules, String source) {
+        StringWriter errors = new StringWriter();
+        KnishErrorReporter reporter = new KnishErrorReporter(errors);
+        CompiledScript script = Knish.compile(source, directory, modules, reporter);
+        assertNotNull(script, errors.toString());
+
+        StringWriter output = new StringWriter();
+        script.execute(output, reporter);
+        assertFalse(reporter.hadError(), errors.toString());
+        return output.toString();
+    }
+
+    private String errors(ModuleCache modules, String source) {
+        StringWriter errors = new StringWriter();
+        assertNull(Knish.compile(source, directory, modules, new KnishErrorReporter(errors)));
+        return errors.toString();
+    }
+}
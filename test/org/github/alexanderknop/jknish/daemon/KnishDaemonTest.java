@@ -0,0 +1,95 @@
+package org.github.alexanderknop.jknish.daemon;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KnishDaemonTest {
+    @TempDir
+    Path directory;
+
+    private KnishDaemon daemon;
+
+    @BeforeEach
+    void startDaemon() throws IOException {
+        daemon = KnishDaemon.start(directory.resolve("state"));
+    }
+
+    @AfterEach
+    void stopDaemon() throws IOException {
+        daemon.close();
+    }
+
+    @Test
+    void testRun() throws IOException {
+        Files.writeString(directory.resolve("script.knish"), "System.print(1 + 2);");
+
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ByteArrayOutputStream errors = new ByteArrayOutputStream();
+            int exitCode = KnishDaemonClient.run(directory.resolve("state"),
+                    new String[]{"script.knish"}, directory, output, errors);
+
+            assertEquals(0, exitCode);
+            assertEquals("3\n", output.toString());
+            assertEquals("", errors.toString());
+        }
+
+        // the second run reuses the script compiled by the first one
+        assertEquals(1, daemon.statistics().getHits());
+        assertEquals(1, daemon.statistics().getMisses());
+    }
+
+    @Test
+    void testErrors() throws IOException {
+        Files.writeString(directory.resolve("script.knish"), "System.print(x);");
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int exitCode = KnishDaemonClient.run(directory.resolve("state"),
+                new String[]{"script.knish"}, directory, output, errors);
+
+        assertEquals(65, exitCode);
+        assertEquals("", output.toString());
+        assertNotEquals("", errors.toString());
+    }
+
+    @Test
+    void testStackOverflow() throws IOException {
+        Files.writeString(directory.resolve("script.knish"),
+                "class Loop {\n" +
+                "    static of(n) {\n" +
+                "        return Loop.of(n + 1);\n" +
+                "    }\n" +
+                "}\n" +
+                "System.print(Loop.of(0));\n");
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int exitCode = KnishDaemonClient.run(directory.resolve("state"),
+                new String[]{"script.knish"}, directory, output, errors);
+
+        assertEquals(1, exitCode);
+        assertTrue(errors.toString().contains("StackOverflowError"), errors.toString());
+    }
+
+    @Test
+    void testWrongToken() throws IOException {
+        Path state = directory.resolve("state");
+        String port = Files.readAllLines(state.resolve(DaemonProtocol.ADDRESS_FILE)).get(0);
+        Path forged = Files.createDirectory(directory.resolve("forged"));
+        Files.writeString(forged.resolve(DaemonProtocol.ADDRESS_FILE), port + "\n0123\n");
+
+        assertThrows(IOException.class, () -> KnishDaemonClient.run(forged,
+                new String[]{"script.knish"}, directory,
+                new ByteArrayOutputStream(), new ByteArrayOutputStream()));
+    }
+}
@@ -0,0 +1,96 @@
+package org.github.alexanderknop.jknish.interpreter;
+
+import org.github.alexanderknop.jknish.Knish;
+import org.github.alexanderknop.jknish.KnishErrorReporter;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CallSiteProfilesTest {
+    private static final String SOURCE =
+            "var x = 0;\n" +
+            "while (x < 10) {\n" +
+            "  x = x + 1;\n" +
+            "}\n" +
+            "System.print(x);\n";
+
+    @Test
+    void testSaveAndLoad() throws IOException {
+        CallSiteProfiles profiles = CallSiteProfiles.empty(SOURCE);
+        profiles.record(1, "+(_)",
+                new CallSiteProfiles.Profile(true, OperandType.NUM.mask, OperandType.NUM.mask, false));
+        profiles.record(2, "print(_)",
+                new CallSiteProfiles.Profile(false, OperandType.OTHER.mask, OperandType.STRING.mask, true));
+
+        CallSiteProfiles loaded = reload(profiles, SOURCE);
+        CallSiteProfiles.Profile plus = loaded.get(1, "+(_)");
+        assertTrue(plus.numSpecialized);
+        assertEquals(OperandType.NUM.mask, plus.receiverTypes);
+        assertEquals(OperandType.NUM.mask, plus.argumentTypes);
+        assertFalse(plus.megamorphic);
+
+        CallSiteProfiles.Profile print = loaded.get(2, "print(_)");
+        assertFalse(print.numSpecialized);
+        assertEquals(OperandType.STRING.mask, print.argumentTypes);
+        assertTrue(print.megamorphic);
+
+        assertTrue(reload(profiles, SOURCE + "\n").isEmpty());
+    }
+
+    @Test
+    void testMerge() {
+        CallSiteProfiles profiles = CallSiteProfiles.empty(SOURCE);
+        profiles.record(1, "+(_)",
+                new CallSiteProfiles.Profile(true, OperandType.NUM.mask, OperandType.NUM.mask, false));
+        profiles.record(1, "+(_)",
+                new CallSiteProfiles.Profile(false, OperandType.STRING.mask, OperandType.STRING.mask, false));
+
+        CallSiteProfiles.Profile merged = profiles.get(1, "+(_)");
+        assertFalse(merged.numSpecialized);
+        assertEquals(OperandType.NUM.mask | OperandType.STRING.mask, merged.receiverTypes);
+    }
+
+    @Test
+    void testDamagedFile() throws IOException {
+        String damaged = "knish-profiles 1\n" + hashLine() + "1\t+(_)\ttrue\n";
+        assertTrue(CallSiteProfiles.read(new BufferedReader(new StringReader(damaged)), SOURCE).isEmpty());
+    }
+
+    @Test
+    void testWarmStart() throws IOException {
+        CallSiteProfiles profiles = CallSiteProfiles.empty(SOURCE);
+        assertEquals("10\n", run(profiles));
+        assertFalse(profiles.isEmpty());
+        assertTrue(profiles.get(2, "<(_)").numSpecialized);
+        assertTrue(profiles.get(3, "+(_)").numSpecialized);
+
+        CallSiteProfiles loaded = reload(profiles, SOURCE);
+        assertEquals("10\n", run(loaded));
+    }
+
+    private static String run(CallSiteProfiles profiles) {
+        StringWriter output = new StringWriter();
+        StringWriter errors = new StringWriter();
+        KnishErrorReporter reporter = new KnishErrorReporter(errors);
+        Knish.run(SOURCE, output, reporter, profiles);
+        assertFalse(reporter.hadError(), errors.toString());
+        return output.toString();
+    }
+
+    private static String hashLine() throws IOException {
+        StringWriter writer = new StringWriter();
+        CallSiteProfiles.empty(SOURCE).write(writer);
+        return writer.toString().split("\n")[1] + "\n";
+    }
+
+    private static CallSiteProfiles reload(CallSiteProfiles profiles, String source) throws IOException {
+        StringWriter writer = new StringWriter();
+        profiles.write(writer);
+        return CallSiteProfiles.read(new BufferedReader(new StringReader(writer.toString())), source);
+    }
+}
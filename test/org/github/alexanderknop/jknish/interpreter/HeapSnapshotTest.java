@@ -0,0 +1,173 @@
+package org.github.alexanderknop.jknish.interpreter;
+
+import org.github.alexanderknop.jknish.CompiledScript;
+import org.github.alexanderknop.jknish.Knish;
+import org.github.alexanderknop.jknish.KnishErrorReporter;
+import org.github.alexanderknop.jknish.SourceHash;
+import org.github.alexanderknop.jknish.objects.KnishStandardModule;
+import org.github.alexanderknop.jknish.parser.Parser;
+import org.github.alexanderknop.jknish.resolver.ResolvedScript;
+import org.github.alexanderknop.jknish.resolver.Resolver;
+import org.github.alexanderknop.jknish.scanner.Scanner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeapSnapshotTest {
+    private static final String SOURCE =
+            "class Counter {\n" +
+            "    construct new(name) {\n" +
+            "        _name = name;\n" +
+            "        _next = this;\n" +
+            "        _hits = 0;\n" +
+            "    }\n" +
+            "    hit {\n" +
+            "        _hits = _hits + 1;\n" +
+            "        return _hits;\n" +
+            "    }\n" +
+            "    name {\n" +
+            "        return _name;\n" +
+            "    }\n" +
+            "    next {\n" +
+            "        return _next;\n" +
+            "    }\n" +
+            "    static total {\n" +
+            "        return __total;\n" +
+            "    }\n" +
+            "    static total=(total) {\n" +
+            "        __total = total;\n" +
+            "    }\n" +
+            "}\n" +
+            "System.print(\"initialization\");\n" +
+            "var counter = Counter.new(\"a\");\n" +
+            "var flag = true;\n" +
+            "Counter.total = 40;\n" +
+            "counter.hit;\n" +
+            "System.checkpoint;\n" +
+            "System.print(counter.hit);\n" +
+            "System.print(counter.next.name);\n" +
+            "System.print(counter.next === counter);\n" +
+            "System.print(Counter.total + 2);\n" +
+            "System.print(flag);\n";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRestore() throws IOException {
+        CompiledScript script = compile(SOURCE);
+        HeapSnapshot snapshot = HeapSnapshot.empty(SOURCE);
+
+        assertEquals("initialization\n2\na\ntrue\n42\ntrue\n", execute(script, snapshot));
+        assertFalse(snapshot.isEmpty());
+
+        Path file = directory.resolve("snapshot");
+        snapshot.save(file);
+        HeapSnapshot loaded = HeapSnapshot.load(file, SOURCE);
+        assertFalse(loaded.isEmpty());
+
+        // the initialization is skipped and the state is the one at the checkpoint
+        assertEquals("2\na\ntrue\n42\ntrue\n", execute(script, loaded));
+        assertEquals("2\na\ntrue\n42\ntrue\n", execute(script, loaded));
+    }
+
+    @Test
+    void testWithoutSnapshot() {
+        assertEquals("initialization\n2\na\ntrue\n42\ntrue\n", execute(compile(SOURCE), null));
+    }
+
+    @Test
+    void testOtherSource() throws IOException {
+        HeapSnapshot snapshot = HeapSnapshot.empty(SOURCE);
+        execute(compile(SOURCE), snapshot);
+
+        Path file = directory.resolve("snapshot");
+        snapshot.save(file);
+        assertTrue(HeapSnapshot.load(file, SOURCE + "\n").isEmpty());
+        assertTrue(HeapSnapshot.load(directory.resolve("missing"), SOURCE).isEmpty());
+    }
+
+    @Test
+    void testUnknownReferences() throws IOException {
+        CompiledScript script = compile(SOURCE);
+        KnishErrorReporter reporter = new KnishErrorReporter(new StringWriter());
+        ResolvedScript resolved = Resolver.resolve(Parser.parse(Scanner.tokens(SOURCE, reporter), reporter),
+                reporter, new KnishStandardModule(new StringWriter()));
+        int flag = resolved.code.names.entrySet().stream()
+                .filter(entry -> entry.getValue().equals("flag"))
+                .findFirst().orElseThrow().getKey();
+
+        // a global and a class the script does not have
+        for (byte tag : new byte[]{5, 6}) {
+            Path file = directory.resolve("snapshot");
+            try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(file))) {
+                output.writeUTF("knish-snapshot");
+                output.writeInt(1);
+                output.writeUTF(SourceHash.of(SOURCE));
+                output.writeInt(6);
+                output.writeInt(0);
+                output.writeInt(0);
+                output.writeInt(1);
+                output.writeInt(flag);
+                output.writeByte(tag);
+                output.writeInt(1 << 20);
+            }
+
+            HeapSnapshot snapshot = HeapSnapshot.load(file, SOURCE);
+            assertFalse(snapshot.isEmpty());
+            // the damaged snapshot is dropped and the script runs from the start
+            assertEquals("initialization\n2\na\ntrue\n42\ntrue\n", execute(script, snapshot));
+        }
+    }
+
+    @Test
+    void testUnsupportedObject() {
+        String source =
+                "class Box {\n" +
+                "    construct new(value) {\n" +
+                "        _value = value;\n" +
+                "    }\n" +
+                "}\n" +
+                "var box = Box.new(1);\n" +
+                "{\n" +
+                "    class Inner {\n" +
+                "        construct new() {\n" +
+                "        }\n" +
+                "    }\n" +
+                "    box = Box.new(Inner.new());\n" +
+                "}\n" +
+                "System.checkpoint;\n" +
+                "System.print(box === box);\n";
+        HeapSnapshot snapshot = HeapSnapshot.empty(source);
+
+        StringWriter errors = new StringWriter();
+        KnishErrorReporter reporter = new KnishErrorReporter(errors);
+        compile(source).execute(new StringWriter(), reporter, null, snapshot);
+
+        assertTrue(reporter.hadError());
+        assertTrue(errors.toString().contains("cannot be saved"));
+        assertTrue(snapshot.isEmpty());
+    }
+
+    private static CompiledScript compile(String source) {
+        StringWriter errors = new StringWriter();
+        CompiledScript script = Knish.compile(source, new KnishErrorReporter(errors));
+        assertNotNull(script, errors.toString());
+        return script;
+    }
+
+    private static String execute(CompiledScript script, HeapSnapshot snapshot) {
+        StringWriter output = new StringWriter();
+        StringWriter errors = new StringWriter();
+        script.execute(output, new KnishErrorReporter(errors), null, snapshot);
+        assertEquals("", errors.toString());
+        return output.toString();
+    }
+}
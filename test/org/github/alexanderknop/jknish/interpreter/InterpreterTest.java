@@ -14,6 +14,7 @@ import org.github.alexanderknop.jknish.resolver.ResolvedStatement.Method;
 import org.junit.jupiter.api.Test;
 
 import java.io.StringWriter;
+import java.util.List;
 import java.util.Map;
 
 import static java.util.Collections.emptyList;
@@ -608,6 +609,289 @@ class InterpreterTest {
         );
     }
 
+    @Test
+    void testAccessors() {
+        final int valueField = 4;
+        final int valueArgument = 5;
+        final int instanceVariable = 6;
+        ResolvedStatement.Class testClass =
+                new ResolvedStatement.Class(1,
+                        emptyMap(),
+                        Map.of(
+                                new MethodId("new", 0),
+                                new Method(2,
+                                        emptyList(),
+                                        new Block(2),
+                                        emptyMap()
+                                )
+                        ),
+                        Map.of(
+                                new MethodId("value", null),
+                                new Method(3,
+                                        null,
+                                        new Block(3,
+                                                new ResolvedStatement.Return(3,
+                                                        new Variable(3, valueField)
+                                                )
+                                        ),
+                                        emptyMap()
+                                ),
+                                new MethodId("value=", 1),
+                                new Method(4,
+                                        List.of(valueArgument),
+                                        new Block(4,
+                                                new Expression(4,
+                                                        new Assign(4,
+                                                                valueField,
+                                                                new Variable(4, valueArgument)
+                                                        )
+                                                )
+                                        ),
+                                        Map.of(valueArgument, "value")
+                                )
+                        ),
+                        Map.of(THIS_VARIABLE, "this", valueField, "_value"),
+                        Map.of(STATIC_THIS_VARIABLE, "this"),
+                        THIS_VARIABLE, STATIC_THIS_VARIABLE
+                );
+        testCorrect(
+                new ResolvedScript(
+                        new Block(0,
+                                Map.of(TEST_VARIABLE, "Test", instanceVariable, "x"),
+                                Map.of(
+                                        TEST_VARIABLE,
+                                        testClass
+                                ),
+                                new Expression(5,
+                                        new Assign(5,
+                                                instanceVariable,
+                                                new Call(5,
+                                                        new Variable(5, TEST_VARIABLE),
+                                                        "new",
+                                                        emptyList()
+                                                )
+                                        )
+                                ),
+                                new Expression(6,
+                                        new Call(6,
+                                                new Variable(6, instanceVariable),
+                                                "value=",
+                                                new Literal(6, 1L)
+                                        )
+                                ),
+                                new Expression(7,
+                                        new Call(7,
+                                                new Variable(7, SYSTEM_VARIABLE),
+                                                "print",
+                                                new Call(7,
+                                                        new Variable(7, instanceVariable),
+                                                        "value"
+                                                )
+                                        )
+                                ),
+                                new Expression(8,
+                                        new Call(8,
+                                                new Variable(8, instanceVariable),
+                                                "value=",
+                                                new Literal(8, "2")
+                                        )
+                                ),
+                                new Expression(9,
+                                        new Call(9,
+                                                new Variable(9, SYSTEM_VARIABLE),
+                                                "print",
+                                                new Call(9,
+                                                        new Variable(9, instanceVariable),
+                                                        "value"
+                                                )
+                                        )
+                                )
+                        ),
+                        Map.of(SYSTEM_VARIABLE, "System")
+                ),
+                "1\n2"
+        );
+    }
+
+    @Test
+    void testLazyClass() {
+        // the class object is created when the class is used for the first time,
+        // after the first statement, and keeps its static fields afterwards
+        final int valueField = 4;
+        final int valueArgument = 5;
+        ResolvedStatement.Class testClass =
+                new ResolvedStatement.Class(1,
+                        Map.of(
+                                new MethodId("value", null),
+                                new Method(2,
+                                        null,
+                                        new Block(2,
+                                                new ResolvedStatement.Return(2,
+                                                        new Variable(2, valueField)
+                                                )
+                                        ),
+                                        emptyMap()
+                                ),
+                                new MethodId("value=", 1),
+                                new Method(3,
+                                        List.of(valueArgument),
+                                        new Block(3,
+                                                new Expression(3,
+                                                        new Assign(3,
+                                                                valueField,
+                                                                new Variable(3, valueArgument)
+                                                        )
+                                                )
+                                        ),
+                                        Map.of(valueArgument, "value")
+                                )
+                        ),
+                        emptyMap(),
+                        emptyMap(),
+                        Map.of(THIS_VARIABLE, "this"),
+                        Map.of(STATIC_THIS_VARIABLE, "this", valueField, "_value"),
+                        THIS_VARIABLE, STATIC_THIS_VARIABLE
+                );
+        testCorrect(
+                new ResolvedScript(
+                        new Block(0,
+                                Map.of(TEST_VARIABLE, "Test"),
+                                Map.of(
+                                        TEST_VARIABLE,
+                                        testClass
+                                ),
+                                new Expression(5,
+                                        new Call(5,
+                                                new Variable(5, SYSTEM_VARIABLE),
+                                                "print",
+                                                new Literal(5, "before")
+                                        )
+                                ),
+                                new Expression(6,
+                                        new Call(6,
+                                                new Variable(6, TEST_VARIABLE),
+                                                "value=",
+                                                new Literal(6, 1L)
+                                        )
+                                ),
+                                new Expression(7,
+                                        new Call(7,
+                                                new Variable(7, SYSTEM_VARIABLE),
+                                                "print",
+                                                new Literal(7, "after")
+                                        )
+                                ),
+                                new Expression(8,
+                                        new Call(8,
+                                                new Variable(8, SYSTEM_VARIABLE),
+                                                "print",
+                                                new Call(8,
+                                                        new Variable(8, TEST_VARIABLE),
+                                                        "value"
+                                                )
+                                        )
+                                ),
+                                new Expression(9,
+                                        new Call(9,
+                                                new Variable(9, TEST_VARIABLE),
+                                                "value=",
+                                                new Literal(9, "2")
+                                        )
+                                ),
+                                new Expression(10,
+                                        new Call(10,
+                                                new Variable(10, SYSTEM_VARIABLE),
+                                                "print",
+                                                new Call(10,
+                                                        new Variable(10, TEST_VARIABLE),
+                                                        "value"
+                                                )
+                                        )
+                                )
+                        ),
+                        Map.of(SYSTEM_VARIABLE, "System")
+                ),
+                "before\nafter\n1\n2"
+        );
+    }
+
+    @Test
+    void testSpeculation() {
+        final int leftArgument = 4;
+        final int rightArgument = 5;
+        ResolvedStatement.Class testClass =
+                new ResolvedStatement.Class(1,
+                        Map.of(
+                                new MethodId("add", 2),
+                                new Method(2,
+                                        List.of(leftArgument, rightArgument),
+                                        new Block(2,
+                                                new ResolvedStatement.Return(2,
+                                                        new Call(2,
+                                                                new Variable(2, leftArgument),
+                                                                "+",
+                                                                new Variable(2, rightArgument)
+                                                        )
+                                                )
+                                        ),
+                                        Map.of(leftArgument, "left", rightArgument, "right")
+                                )
+                        ),
+                        emptyMap(),
+                        emptyMap(),
+                        Map.of(THIS_VARIABLE, "this"),
+                        Map.of(STATIC_THIS_VARIABLE, "this"),
+                        THIS_VARIABLE, STATIC_THIS_VARIABLE
+                );
+        // the call site of + is specialized for numbers and then deoptimized by strings
+        testCorrect(
+                new ResolvedScript(
+                        new Block(0,
+                                Map.of(TEST_VARIABLE, "Test"),
+                                Map.of(TEST_VARIABLE, testClass),
+                                new Expression(3,
+                                        new Call(3,
+                                                new Variable(3, SYSTEM_VARIABLE),
+                                                "print",
+                                                new Call(3,
+                                                        new Variable(3, TEST_VARIABLE),
+                                                        "add",
+                                                        new Literal(3, 1L),
+                                                        new Literal(3, 2L)
+                                                )
+                                        )
+                                ),
+                                new Expression(4,
+                                        new Call(4,
+                                                new Variable(4, SYSTEM_VARIABLE),
+                                                "print",
+                                                new Call(4,
+                                                        new Variable(4, TEST_VARIABLE),
+                                                        "add",
+                                                        new Literal(4, "a"),
+                                                        new Literal(4, "b")
+                                                )
+                                        )
+                                ),
+                                new Expression(5,
+                                        new Call(5,
+                                                new Variable(5, SYSTEM_VARIABLE),
+                                                "print",
+                                                new Call(5,
+                                                        new Variable(5, TEST_VARIABLE),
+                                                        "add",
+                                                        new Literal(5, 3L),
+                                                        new Literal(5, 4L)
+                                                )
+                                        )
+                                )
+                        ),
+                        Map.of(SYSTEM_VARIABLE, "System")
+                ),
+                "3\nab\n7"
+        );
+    }
+
     @Test
     void testAddition() {
         testCorrect(
@@ -1208,6 +1492,53 @@ class InterpreterTest {
         );
     }
 
+    @Test
+    void testHotLoop() {
+        // the loop becomes hot and is replaced by the compiled one in the middle of execution
+        testCorrect(
+                new ResolvedScript(
+                        new Block(0,
+                                Map.of(X_VARIABLE, "x"),
+                                new Expression(1,
+                                        new Assign(1,
+                                                X_VARIABLE,
+                                                new Literal(1, 0L)
+                                        )
+                                ),
+                                new While(2,
+                                        new Call(2,
+                                                new Variable(2, X_VARIABLE),
+                                                "<",
+                                                new Literal(2, 100000L)),
+                                        new Block(3,
+                                                new Expression(4,
+                                                        new Assign(4,
+                                                                X_VARIABLE,
+                                                                new Call(4,
+                                                                        new Variable(4,
+                                                                                X_VARIABLE),
+                                                                        "+",
+                                                                        new Literal(4,
+                                                                                1L)
+                                                                )
+                                                        )
+                                                )
+                                        )
+                                ),
+                                new Expression(5,
+                                        new Call(5,
+                                                new Variable(5, SYSTEM_VARIABLE),
+                                                "print",
+                                                new Variable(5, X_VARIABLE)
+                                        )
+                                )
+                        ),
+                        Map.of(SYSTEM_VARIABLE, "System")
+                ),
+                "100000"
+        );
+    }
+
     @Test
     void testLogical() {
         testCorrect(
@@ -0,0 +1,124 @@
+package org.github.alexanderknop.jknish.knc;
+
+import org.github.alexanderknop.jknish.KnishErrorReporter;
+import org.github.alexanderknop.jknish.objects.KnishStandardModule;
+import org.github.alexanderknop.jknish.parser.MethodId;
+import org.github.alexanderknop.jknish.parser.Parser;
+import org.github.alexanderknop.jknish.resolver.ResolvedScript;
+import org.github.alexanderknop.jknish.resolver.ResolvedStatement;
+import org.github.alexanderknop.jknish.resolver.Resolver;
+import org.github.alexanderknop.jknish.scanner.Scanner;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KncTest {
+    private static final String SOURCE =
+            "class Point {\n" +
+            "    construct new(x, y) {\n" +
+            "        _x = x;\n" +
+            "        _y = y;\n" +
+            "    }\n" +
+            "    x {\n" +
+            "        return _x;\n" +
+            "    }\n" +
+            "    x=(value) {\n" +
+            "        _x = value;\n" +
+            "    }\n" +
+            "    #memoize\n" +
+            "    static origin(n) {\n" +
+            "        return n * 2 - 1;\n" +
+            "    }\n" +
+            "    static init {\n" +
+            "        __count = 0;\n" +
+            "    }\n" +
+            "}\n" +
+            "var p = Point.new(1, \"\u00e9t\u00e9\");\n" +
+            "var i = 0;\n" +
+            "while (i < 3 and true or false) {\n" +
+            "    if (i == 1) {\n" +
+            "        class Inner {\n" +
+            "            static value {\n" +
+            "                return nil;\n" +
+            "            }\n" +
+            "        }\n" +
+            "        System.print(Inner.value === nil);\n" +
+            "    } else System.print(p.x);\n" +
+            "    i = i + 1;\n" +
+            "}\n" +
+            "System.print(Point.origin(-4));\n" +
+            "System.print;\n";
+
+    @Test
+    void testRoundTrip() throws IOException {
+        ResolvedScript script = resolve(SOURCE);
+        assertEquals(script, KncReader.read(ByteBuffer.wrap(write(script))));
+    }
+
+    @Test
+    void testDamagedFile() throws IOException {
+        byte[] bytes = write(resolve(SOURCE));
+        bytes[bytes.length / 2] ^= 1;
+        assertThrows(IOException.class, () -> KncReader.read(ByteBuffer.wrap(bytes)));
+    }
+
+    @Test
+    void testDamagedMethod() throws IOException {
+        ResolvedScript script = resolve("class Point {\n" +
+                "    static x {\n        return 1;\n    }\n" +
+                "    static y {\n        return 2;\n    }\n" +
+                "}\n" +
+                "System.print(Point.x);\n");
+        byte[] bytes = write(script);
+        // the body of the last method ends the file
+        bytes[bytes.length - 1] ^= 1;
+
+        // the body of a method is checked only when it is decoded
+        ResolvedScript damaged = KncReader.read(ByteBuffer.wrap(bytes));
+        assertEquals(script.code.resolvedStatements, damaged.code.resolvedStatements);
+        int damagedMethods = 0;
+        for (ResolvedStatement.Class klass : damaged.code.classes.values()) {
+            for (MethodId methodId : klass.staticMethods.keySet()) {
+                ResolvedStatement.Method method = klass.staticMethods.get(methodId);
+                try {
+                    ResolvedStatement.Class original = script.code.classes.values().iterator().next();
+                    assertEquals(original.staticMethods.get(methodId).body(), method.body());
+                } catch (IllegalStateException e) {
+                    damagedMethods++;
+                }
+            }
+        }
+        assertEquals(1, damagedMethods);
+
+        assertThrows(IOException.class, () -> KncReader.read(ByteBuffer.wrap(bytes), true));
+    }
+
+    @Test
+    void testNotKnc() {
+        assertThrows(IOException.class, () -> KncReader.read(ByteBuffer.wrap(SOURCE.getBytes())));
+        assertThrows(IOException.class, () -> KncReader.read(ByteBuffer.wrap(new byte[3])));
+    }
+
+    private static byte[] write(ResolvedScript script) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        KncWriter.write(script, output);
+        return output.toByteArray();
+    }
+
+    private static ResolvedScript resolve(String source) {
+        StringWriter errors = new StringWriter();
+        KnishErrorReporter reporter = new KnishErrorReporter(errors);
+        ResolvedScript script = Resolver.resolve(
+                Parser.parse(Scanner.tokens(source, reporter), reporter),
+                reporter,
+                new KnishStandardModule(Writer.nullWriter()));
+        assertFalse(reporter.hadError(), errors.toString());
+        return script;
+    }
+}
@@ -430,6 +430,70 @@ class ParserTest {
         testIncorrect(builder.tokens(), "[line 0] Error at '{': Expect class name.");
     }
 
+    @Test
+    void testMemoizeAttribute() {
+        TokenBuilder builder = new TokenBuilder();
+        builder.hash().identifier("memoize").nextLine()
+                .aClass().identifier("T").leftBrace().nextLine()
+                .identifier("method").leftBrace().nextLine()
+                .rightBrace().nextLine()
+                .rightBrace().nextLine().eof();
+        List<Statement> expected =
+                List.of(
+                        new Statement.Class(1,
+                                "T",
+                                emptyList(), emptyList(),
+                                List.of(
+                                        new Statement.Method(2,
+                                                "method",
+                                                null,
+                                                emptyList(),
+                                                false
+                                        )
+                                ),
+                                true
+                        )
+                );
+        testCorrect(expected, builder.tokens());
+
+        builder = new TokenBuilder();
+        builder.aClass().identifier("T").leftBrace().nextLine()
+                .hash().identifier("memoize").nextLine()
+                .aStatic().identifier("method").leftBrace().nextLine()
+                .rightBrace().nextLine()
+                .rightBrace().nextLine().eof();
+        expected =
+                List.of(
+                        new Statement.Class(0,
+                                "T",
+                                List.of(
+                                        new Statement.Method(2,
+                                                "method",
+                                                null,
+                                                emptyList(),
+                                                true
+                                        )
+                                ),
+                                emptyList(), emptyList()
+                        )
+                );
+        testCorrect(expected, builder.tokens());
+
+        builder = new TokenBuilder();
+        builder.aClass().identifier("T").leftBrace().nextLine()
+                .hash().identifier("memoize").nextLine()
+                .construct().identifier("new").leftParen().rightParen().leftBrace().nextLine()
+                .rightBrace().nextLine()
+                .rightBrace().nextLine().eof();
+        testIncorrect(builder.tokens(), "[line 2] Error at 'construct': Constructors cannot be memoized.");
+
+        builder = new TokenBuilder();
+        builder.hash().identifier("inline").nextLine()
+                .aClass().identifier("T").leftBrace().nextLine()
+                .rightBrace().nextLine().eof();
+        testIncorrect(builder.tokens(), "[line 0] Error at 'inline': Unknown attribute.");
+    }
+
     private void testCorrect(List<Statement> expected, List<Token> tokens) {
         StringWriter writer = new StringWriter();
         KnishErrorReporter reporter = new KnishErrorReporter(writer);
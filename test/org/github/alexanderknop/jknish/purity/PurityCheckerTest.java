@@ -0,0 +1,172 @@
+package org.github.alexanderknop.jknish.purity;
+
+import org.github.alexanderknop.jknish.KnishErrorReporter;
+import org.github.alexanderknop.jknish.objects.KnishStandardModule;
+import org.github.alexanderknop.jknish.parser.MethodId;
+import org.github.alexanderknop.jknish.resolver.ResolvedExpression.Call;
+import org.github.alexanderknop.jknish.resolver.ResolvedExpression.Variable;
+import org.github.alexanderknop.jknish.resolver.ResolvedScript;
+import org.github.alexanderknop.jknish.resolver.ResolvedStatement;
+import org.github.alexanderknop.jknish.resolver.ResolvedStatement.Block;
+import org.github.alexanderknop.jknish.resolver.ResolvedStatement.Expression;
+import org.github.alexanderknop.jknish.resolver.ResolvedStatement.Method;
+import org.github.alexanderknop.jknish.resolver.ResolvedStatement.Return;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.emptyMap;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PurityCheckerTest {
+    private static final int SYSTEM_VARIABLE = 0;
+    private static final int TEST_VARIABLE = 1;
+    private static final int THIS_VARIABLE = 2;
+    private static final int STATIC_THIS_VARIABLE = 3;
+    private static final int STATIC_FIELD_VARIABLE = 4;
+    private static final int X_ARGUMENT_VARIABLE = 5;
+
+    @Test
+    void testPureMethod() {
+        Method twice = new Method(2,
+                List.of(X_ARGUMENT_VARIABLE),
+                new Block(2,
+                        new Return(2,
+                                new Call(2,
+                                        new Variable(2, X_ARGUMENT_VARIABLE),
+                                        "+",
+                                        new Variable(2, X_ARGUMENT_VARIABLE)
+                                )
+                        )
+                ),
+                Map.of(X_ARGUMENT_VARIABLE, "x"),
+                true
+        );
+        Method recursive = new Method(3,
+                List.of(X_ARGUMENT_VARIABLE),
+                new Block(3,
+                        new Return(3,
+                                new Call(3,
+                                        new Variable(3, TEST_VARIABLE),
+                                        "recursive",
+                                        new Variable(3, X_ARGUMENT_VARIABLE)
+                                )
+                        )
+                ),
+                Map.of(X_ARGUMENT_VARIABLE, "x"),
+                true
+        );
+
+        testCorrect(script(Map.of(
+                new MethodId("twice", 1), twice,
+                new MethodId("recursive", 1), recursive
+        )));
+    }
+
+    @Test
+    void testImpureMethod() {
+        Method print = new Method(2,
+                List.of(X_ARGUMENT_VARIABLE),
+                new Block(2,
+                        new Expression(2,
+                                new Call(2,
+                                        new Variable(2, SYSTEM_VARIABLE),
+                                        "print",
+                                        new Variable(2, X_ARGUMENT_VARIABLE)
+                                )
+                        )
+                ),
+                Map.of(X_ARGUMENT_VARIABLE, "x"),
+                true
+        );
+        testIncorrect(script(Map.of(new MethodId("print", 1), print)),
+                "[line 2] Error: The method 'print(_)' is marked with #memoize, but it is not pure.");
+
+        Method field = new Method(2,
+                null,
+                new Block(2,
+                        new Return(2,
+                                new Variable(2, STATIC_FIELD_VARIABLE)
+                        )
+                ),
+                emptyMap(),
+                true
+        );
+        testIncorrect(script(Map.of(new MethodId("field", null), field)),
+                "[line 2] Error: The method 'field' is marked with #memoize, but it is not pure.");
+    }
+
+    @Test
+    void testTransitivelyImpureMethod() {
+        Method memoized = new Method(2,
+                List.of(X_ARGUMENT_VARIABLE),
+                new Block(2,
+                        new Return(2,
+                                new Call(2,
+                                        new Variable(2, TEST_VARIABLE),
+                                        "print",
+                                        new Variable(2, X_ARGUMENT_VARIABLE)
+                                )
+                        )
+                ),
+                Map.of(X_ARGUMENT_VARIABLE, "x"),
+                true
+        );
+        Method print = new Method(3,
+                null,
+                new Block(3,
+                        new Expression(3,
+                                new Call(3,
+                                        new Variable(3, SYSTEM_VARIABLE),
+                                        "print",
+                                        new Variable(3, STATIC_FIELD_VARIABLE)
+                                )
+                        )
+                ),
+                emptyMap()
+        );
+        testIncorrect(script(Map.of(
+                new MethodId("memoized", 1), memoized,
+                new MethodId("print", null), print
+        )), "[line 2] Error: The method 'memoized(_)' is marked with #memoize, but it is not pure.");
+    }
+
+    private static ResolvedScript script(Map<MethodId, Method> staticMethods) {
+        return new ResolvedScript(
+                new Block(0,
+                        Map.of(TEST_VARIABLE, "Test"),
+                        Map.of(TEST_VARIABLE,
+                                new ResolvedStatement.Class(1,
+                                        staticMethods,
+                                        emptyMap(),
+                                        emptyMap(),
+                                        Map.of(THIS_VARIABLE, "this"),
+                                        Map.of(STATIC_THIS_VARIABLE, "this",
+                                                STATIC_FIELD_VARIABLE, "__field"),
+                                        THIS_VARIABLE, STATIC_THIS_VARIABLE
+                                )
+                        )
+                ),
+                Map.of(SYSTEM_VARIABLE, "System")
+        );
+    }
+
+    private void testCorrect(ResolvedScript script) {
+        StringWriter errors = new StringWriter();
+        KnishErrorReporter reporter = new KnishErrorReporter(errors);
+        PurityChecker.check(script, reporter, new KnishStandardModule(new StringWriter()));
+
+        assertFalse(reporter.hadError(), "The script is supposed to be correct:\n" + errors);
+    }
+
+    private void testIncorrect(ResolvedScript script, String message) {
+        StringWriter errors = new StringWriter();
+        KnishErrorReporter reporter = new KnishErrorReporter(errors);
+        PurityChecker.check(script, reporter, new KnishStandardModule(new StringWriter()));
+
+        assertTrue(reporter.hadError());
+        assertEquals(message.strip(), errors.toString().strip());
+    }
+}
@@ -509,6 +509,20 @@ class ResolverTest {
                 "[line 2] Error: Cannot assign a new value to the class variable Test.\n" +
                         "[line 1] Error: The class Test is defined, but never used."
         );
+
+        testIncorrect(
+                new Statement.Block(0,
+                        List.of(
+                                new Statement.Expression(1,
+                                        new Expression.Assign(1,
+                                                "Num",
+                                                new Expression.Literal(1, null)
+                                        )
+                                )
+                        )
+                ),
+                "[line 1] Error: Cannot assign a new value to the global object Num."
+        );
     }
 
     @Test
@@ -52,6 +52,13 @@ class ScannerTest {
                 "Was not able to scan 'class Test { test {return 1} }'");
     }
 
+    @Test
+    void testAttribute() {
+        test("#memoize class Test {}",
+                List.of(HASH, IDENTIFIER, CLASS, IDENTIFIER, LEFT_BRACE, RIGHT_BRACE, EOF),
+                "Was not able to scan '#memoize class Test {}'");
+    }
+
     private void test(String source, List<TokenType> expected, String message) {
         List<Token> actualTokens = Scanner.tokens(source, null);
         assertNotNull(actualTokens, "The list of tokens cannot be null.");
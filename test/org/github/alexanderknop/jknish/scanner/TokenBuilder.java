@@ -129,6 +129,11 @@ public class TokenBuilder {
         return this;
     }
 
+    public TokenBuilder hash() {
+        tokensList.add(new Token(HASH, "#", null, line));
+        return this;
+    }
+
     public void eof() {
         tokensList.add(new Token(EOF, null, null, line));
     }
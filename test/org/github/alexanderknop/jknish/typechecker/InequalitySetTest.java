@@ -0,0 +1,43 @@
+package org.github.alexanderknop.jknish.typechecker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InequalitySetTest {
+    @Test
+    void testAdd() {
+        InequalitySet set = new InequalitySet();
+        SimpleType left = SimpleType.variable();
+        SimpleType right = SimpleType.variable();
+
+        assertTrue(set.add(left, right));
+        assertFalse(set.add(left, right));
+        assertTrue(set.contains(left, right));
+        // the pairs are ordered
+        assertFalse(set.contains(right, left));
+        assertTrue(set.add(right, left));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    void testResize() {
+        InequalitySet set = new InequalitySet();
+        List<SimpleType> types = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            types.add(SimpleType.variable());
+        }
+
+        for (int i = 0; i < types.size(); i++) {
+            assertTrue(set.add(types.get(i), types.get((i + 1) % types.size())));
+        }
+        for (int i = 0; i < types.size(); i++) {
+            assertTrue(set.contains(types.get(i), types.get((i + 1) % types.size())));
+            assertFalse(set.contains(types.get(i), types.get((i + 2) % types.size())));
+        }
+        assertEquals(types.size(), set.size());
+    }
+}
@@ -1,8 +1,10 @@
 package org.github.alexanderknop.jknish.typechecker;
 
+import org.github.alexanderknop.jknish.Knish;
 import org.github.alexanderknop.jknish.KnishErrorReporter;
 import org.github.alexanderknop.jknish.objects.KnishStandardModule;
 import org.github.alexanderknop.jknish.parser.MethodId;
+import org.github.alexanderknop.jknish.parser.Parser;
 import org.github.alexanderknop.jknish.resolver.ResolvedExpression.Assign;
 import org.github.alexanderknop.jknish.resolver.ResolvedExpression.Call;
 import org.github.alexanderknop.jknish.resolver.ResolvedExpression.Literal;
@@ -10,12 +12,17 @@ import org.github.alexanderknop.jknish.resolver.ResolvedExpression.Variable;
 import org.github.alexanderknop.jknish.resolver.ResolvedScript;
 import org.github.alexanderknop.jknish.resolver.ResolvedStatement;
 import org.github.alexanderknop.jknish.resolver.ResolvedStatement.*;
+import org.github.alexanderknop.jknish.resolver.Resolver;
+import org.github.alexanderknop.jknish.scanner.Scanner;
 import org.junit.jupiter.api.Test;
 
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
@@ -1217,6 +1224,222 @@ class TypeCheckerTest {
     }
 
 
+    @Test
+    void testSharedHostTypes() {
+        KnishStandardModule module = new KnishStandardModule(new StringWriter());
+        assertSame(HostTypes.of(module), HostTypes.of(module));
+        HostTypes.of(module).values().forEach(type -> {
+            SimpleType variable = type instanceof SimpleType.Labeled ? ((SimpleType.Labeled) type).type : type;
+            assertTrue(((SimpleType.Variable) variable).isFrozen());
+        });
+
+        // the bounds added by a check do not leak into the next checks
+        assertNull(Knish.compile("var x = 1 + \"a\";\nSystem.print(x);", new KnishErrorReporter(new StringWriter())));
+        StringWriter errors = new StringWriter();
+        assertNotNull(Knish.compile("var x = 1 + 2;\nSystem.print(x);", new KnishErrorReporter(errors)),
+                errors.toString());
+    }
+
+    @Test
+    void testCycleOfVariables() {
+        String cycle = "var a = 1;\nvar b = a;\nvar c = b;\na = c;\n";
+
+        StringWriter errors = new StringWriter();
+        assertNotNull(Knish.compile(cycle + "System.print(a + 1);", new KnishErrorReporter(errors)),
+                errors.toString());
+        // a bound added to any variable of the cycle reaches all the others
+        assertNull(Knish.compile(cycle + "b = \"s\";\nSystem.print(a + 1);",
+                new KnishErrorReporter(new StringWriter())));
+        assertNull(Knish.compile(cycle + "System.print(b + \"s\");",
+                new KnishErrorReporter(new StringWriter())));
+    }
+
+    @Test
+    void testLongChainOfConstraints() {
+        testCorrect(chainScript(new Literal(3, 1L)));
+        testIncorrect(chainScript(new Literal(3, "s")),
+                "[line 3] Error: Wrong type of the value assigned to v0.");
+    }
+
+    // v1 = v0; ... vn = vn-1; vn + 1; v0 = value; with a chain much longer than the stack
+    private static ResolvedScript chainScript(Literal value) {
+        int length = 100_000;
+        Map<Integer, String> names = new HashMap<>();
+        List<ResolvedStatement> statements = new ArrayList<>();
+        names.put(0, "v0");
+        for (int i = 1; i <= length; i++) {
+            names.put(i, "v" + i);
+            statements.add(new Expression(1, new Assign(1, i, new Variable(1, i - 1))));
+        }
+        statements.add(new Expression(2, new Call(2, new Variable(2, length), "+", new Literal(2, 1L))));
+        statements.add(new Expression(3, new Assign(3, 0, value)));
+        return new ResolvedScript(new Block(0, names, emptyMap(), statements), emptyMap());
+    }
+
+    @Test
+    void testSimplifiedConstraints() {
+        // every statement adds fresh variables, so the constraints are simplified several times
+        String statements = "var x = 1;\nvar y = x;\n" + "x = x + y;\n".repeat(20_000);
+
+        StringWriter errors = new StringWriter();
+        assertNotNull(Knish.compile(statements + "System.print(x - 1);", new KnishErrorReporter(errors)),
+                errors.toString());
+        // the bounds of the variables in scope survive the simplifications
+        assertNull(Knish.compile(statements + "y = \"s\";\n",
+                new KnishErrorReporter(new StringWriter())));
+        assertNull(Knish.compile(statements + "System.print(x + \"s\");",
+                new KnishErrorReporter(new StringWriter())));
+    }
+
+    @Test
+    void testSimplifiedErrors() {
+        // the error of the first line is reported once, although its constraint is simplified in between
+        StringBuilder repeated = new StringBuilder("var a = 1;\nSystem.print(a + \"x\");\n");
+        for (int i = 0; i < 1500; i++) {
+            repeated.append("var p").append(i).append(" = a + ").append(i).append(";\n")
+                    .append("System.print(p").append(i).append(");\n");
+        }
+        repeated.append("System.print(a + \"x\");\n");
+        assertEquals("[line 2] Error: The value of 0th argument of +(_) has incompatible type.\n",
+                simplifiedErrors(repeated.toString()));
+
+        // the classes with the same methods are not merged, so their errors are not merged either
+        for (int seed = 0; seed < 3; seed++) {
+            simplifiedErrors(randomScript(new Random(seed), 700));
+        }
+    }
+
+    // checks the script with and without the simplification, the errors must be the same
+    private static String simplifiedErrors(String source) {
+        KnishErrorReporter reporter = new KnishErrorReporter(new StringWriter());
+        KnishStandardModule module = new KnishStandardModule(new StringWriter());
+        ResolvedScript script = Resolver.resolve(Parser.parse(Scanner.tokens(source, reporter), reporter),
+                reporter, module);
+
+        StringWriter simplified = new StringWriter();
+        TypeChecker.check(script, new KnishErrorReporter(simplified), module);
+        StringWriter expected = new StringWriter();
+        TypeChecker.checkWithoutSimplification(script, new KnishErrorReporter(expected), module);
+        assertEquals(expected.toString(), simplified.toString());
+        return simplified.toString();
+    }
+
+    // a script long enough to be simplified several times, with many type errors
+    private static String randomScript(Random random, int length) {
+        StringBuilder source = new StringBuilder(
+                "class Box {\n  construct new(v) { _v = v; }\n  v { return _v; }\n}\n" +
+                "class Pair {\n  construct new(a, b) { _a = a; _b = b; }\n  a { return _a; }\n}\n" +
+                "class F {\n  static foo(w) { return w.v; }\n  static bar(w) { return w + 1; }\n" +
+                "  static id(w) { return w; }\n}\n");
+        String[] literals = {"1", "\"s\"", "true"};
+        List<String> variables = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            variables.add("v" + i);
+            source.append("var v").append(i).append(" = ").append(literals[random.nextInt(3)]).append(";\n");
+        }
+        for (int i = 0; i < length; i++) {
+            String x = variables.get(random.nextInt(variables.size()));
+            String y = variables.get(random.nextInt(variables.size()));
+            switch (random.nextInt(8)) {
+                case 0:
+                    source.append("var p").append(i).append(" = ").append(x).append(" + ").append(y).append(";\n");
+                    variables.add("p" + i);
+                    break;
+                case 1:
+                    source.append(x).append(" = ").append(literals[random.nextInt(3)]).append(";\n");
+                    break;
+                case 2:
+                    source.append("var b").append(i).append(" = Box.new(").append(x).append(");\n");
+                    variables.add("b" + i);
+                    break;
+                case 3:
+                    source.append("var r").append(i).append(" = Pair.new(").append(x).append(", ").append(y)
+                            .append(").a;\n");
+                    variables.add("r" + i);
+                    break;
+                case 4:
+                    source.append("var q").append(i).append(" = F.id(").append(x).append(");\n");
+                    variables.add("q" + i);
+                    break;
+                case 5:
+                    source.append("System.print(F.foo(").append(x).append("));\n");
+                    break;
+                case 6:
+                    source.append("System.print(F.bar(").append(x).append("));\n");
+                    break;
+                default:
+                    source.append("System.print(").append(x).append(".count);\n");
+                    break;
+            }
+        }
+        return source.toString();
+    }
+
+    @Test
+    void testTypeSummaries() {
+        String adder = "class Adder {\n  static add(x, y) {\n    return Twice.of(x) + y;\n  }\n}\n";
+        String twice = "class Twice {\n  static of(x) {\n    return x + x;\n  }\n}\n";
+        TypeSummaries summaries = new TypeSummaries(16);
+
+        StringWriter errors = new StringWriter();
+        assertNotNull(Knish.compile(adder + twice + "System.print(Adder.add(1, 2));",
+                new KnishErrorReporter(errors), summaries), errors.toString());
+        assertEquals(0, summaries.getHits());
+        assertEquals(2, summaries.getMisses());
+
+        // the classes keep their summaries when the code around them changes
+        assertNotNull(Knish.compile("var a = 1;\n" + twice + adder + "System.print(Adder.add(a, 2));",
+                new KnishErrorReporter(errors), summaries), errors.toString());
+        assertEquals(2, summaries.getHits());
+        assertEquals(2, summaries.getMisses());
+
+        // the summaries are combined with the uses of the classes
+        assertNull(Knish.compile(adder + twice + "System.print(Adder.add(1, \"s\"));",
+                new KnishErrorReporter(new StringWriter()), summaries));
+        assertEquals(4, summaries.getHits());
+
+        // and with the classes they refer to
+        String strings = "class Twice {\n  static of(x) {\n    return x + \"s\";\n  }\n}\n";
+        assertNull(Knish.compile(adder + strings + "System.print(Adder.add(1, 2));",
+                new KnishErrorReporter(new StringWriter()), summaries));
+        assertEquals(5, summaries.getHits());
+        assertEquals(3, summaries.getMisses());
+        assertNotNull(Knish.compile(adder + strings + "System.print(Adder.add(\"a\", \"b\"));",
+                new KnishErrorReporter(errors), summaries), errors.toString());
+
+        // the errors between the classes are the same as without the summaries
+        String caller = "class B {\n  static h { return A.f(\"s\"); }\n}\n";
+        String callee = "class A {\n  static f(v) { return v + 1; }\n}\n";
+        for (String source : List.of(caller + callee + "System.print(B.h);\n",
+                callee + caller + "System.print(B.h);\n")) {
+            StringWriter expected = new StringWriter();
+            assertNull(Knish.compile(source, new KnishErrorReporter(expected)));
+            for (int i = 0; i < 2; i++) {
+                StringWriter summarized = new StringWriter();
+                assertNull(Knish.compile(source, new KnishErrorReporter(summarized), summaries));
+                assertEquals(expected.toString(), summarized.toString());
+            }
+        }
+
+        // the summarized check of a script long enough to be simplified finds the same errors
+        StringBuilder filler = new StringBuilder("var a = 1;\n");
+        for (int i = 0; i < 1500; i++) {
+            filler.append("var p").append(i).append(" = a + ").append(i).append(";\n")
+                    .append("System.print(Adder.add(p").append(i).append(", ").append(i).append("));\n");
+        }
+        String correct = adder + twice + filler;
+        assertNotNull(Knish.compile(correct, new KnishErrorReporter(errors), summaries), errors.toString());
+        for (String source : List.of(correct + "System.print(Adder.add(a, \"s\"));\n",
+                adder + twice + "var s = \"s\";\nSystem.print(Adder.add(s, s));\n" + filler,
+                adder + strings + filler)) {
+            StringWriter expected = new StringWriter();
+            assertNull(Knish.compile(source, new KnishErrorReporter(expected)));
+            StringWriter summarized = new StringWriter();
+            assertNull(Knish.compile(source, new KnishErrorReporter(summarized), summaries));
+            assertEquals(expected.toString(), summarized.toString());
+        }
+    }
+
     private void testCorrect(ResolvedScript script) {
         Writer errors = new StringWriter();
         KnishErrorReporter reporter = new KnishErrorReporter(errors);